@@ -31,15 +31,25 @@
 package org.gdms.gdmstopology;
 
 import org.gdms.data.DataSourceFactory;
+import org.gdms.gdmstopology.function.ST_AllPairsDistances;
+import org.gdms.gdmstopology.function.ST_ArticulationPoints;
+import org.gdms.gdmstopology.function.ST_Betweenness;
 import org.gdms.gdmstopology.function.ST_BlockIdentity;
+import org.gdms.gdmstopology.function.ST_Bridges;
+import org.gdms.gdmstopology.function.ST_Closeness;
+import org.gdms.gdmstopology.function.ST_ConnectedComponents;
 import org.gdms.gdmstopology.function.ST_FindReachableEdges;
 import org.gdms.gdmstopology.function.ST_Graph;
+import org.gdms.gdmstopology.function.ST_GraphStatistics;
 import org.gdms.gdmstopology.function.ST_MFindReachableEdges;
+import org.gdms.gdmstopology.function.ST_MaxFlow;
 import org.gdms.gdmstopology.function.ST_MShortestPath;
+import org.gdms.gdmstopology.function.ST_MinimumSpanningTree;
 import org.gdms.gdmstopology.function.ST_MShortestPathLength;
 import org.gdms.gdmstopology.function.ST_PlanarGraph;
 import org.gdms.gdmstopology.function.ST_ShortestPath;
 import org.gdms.gdmstopology.function.ST_ShortestPathLength;
+import org.gdms.gdmstopology.function.ST_StronglyConnectedComponents;
 import org.gdms.gdmstopology.function.ST_SubGraphStatistics;
 import org.gdms.gdmstopology.function.ST_ToLineNoder;
 
@@ -70,5 +80,15 @@ public class GdmsTopologyFunctionRegister {
                 dsf.getFunctionManager().addFunction(ST_MFindReachableEdges.class);
                 dsf.getFunctionManager().addFunction(ST_MShortestPath.class);
                 dsf.getFunctionManager().addFunction(ST_SubGraphStatistics.class);
+                dsf.getFunctionManager().addFunction(ST_StronglyConnectedComponents.class);
+                dsf.getFunctionManager().addFunction(ST_ConnectedComponents.class);
+                dsf.getFunctionManager().addFunction(ST_Betweenness.class);
+                dsf.getFunctionManager().addFunction(ST_Closeness.class);
+                dsf.getFunctionManager().addFunction(ST_AllPairsDistances.class);
+                dsf.getFunctionManager().addFunction(ST_MinimumSpanningTree.class);
+                dsf.getFunctionManager().addFunction(ST_Bridges.class);
+                dsf.getFunctionManager().addFunction(ST_ArticulationPoints.class);
+                dsf.getFunctionManager().addFunction(ST_GraphStatistics.class);
+                dsf.getFunctionManager().addFunction(ST_MaxFlow.class);
         }
 }
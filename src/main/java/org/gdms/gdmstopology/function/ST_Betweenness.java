@@ -0,0 +1,113 @@
+/**
+ * GDMS-Topology  is a library dedicated to graph analysis. It is based on the JGraphT
+ * library available at <http://www.jgrapht.org/>. It enables computing and processing
+ * large graphs using spatial and alphanumeric indexes.
+ *
+ * This version is developed at French IRSTV institut as part of the
+ * EvalPDU project, funded by the French Agence Nationale de la Recherche
+ * (ANR) under contract ANR-08-VILL-0005-01 and GEBD project
+ * funded by the French Ministery of Ecology and Sustainable Development.
+ *
+ * GDMS-Topology  is distributed under GPL 3 license. It is produced by the "Atelier SIG"
+ * team of the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2009-2012 IRSTV (FR CNRS 2488)
+ *
+ * GDMS-Topology is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * GDMS-Topology is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * GDMS-Topology. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://wwwc.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.gdmstopology.function;
+
+import org.gdms.data.DataSourceFactory;
+import org.gdms.data.values.Value;
+import org.gdms.driver.DataSet;
+import org.gdms.driver.DriverException;
+import org.gdms.gdmstopology.model.GraphException;
+import org.gdms.gdmstopology.model.GraphSchema;
+import org.gdms.gdmstopology.process.GraphCentrality;
+import org.gdms.sql.function.FunctionException;
+import org.gdms.sql.function.FunctionSignature;
+import org.gdms.sql.function.ScalarArgument;
+import org.gdms.sql.function.executor.AbstractExecutorFunction;
+import org.gdms.sql.function.executor.ExecutorFunctionSignature;
+import org.gdms.sql.function.table.TableArgument;
+import org.gdms.sql.function.table.TableDefinition;
+import org.orbisgis.progress.ProgressMonitor;
+
+/**
+ *
+ * @author Erwan Bocher
+ */
+public class ST_Betweenness extends AbstractExecutorFunction {
+
+        @Override
+        public String getName() {
+                return "ST_Betweenness";
+        }
+
+        @Override
+        public String getSqlOrder() {
+                return "EXECUTE ST_Betweenness(table, costField [,1, 1000, 'output_table_name']);";
+        }
+
+        @Override
+        public String getDescription() {
+                return "Compute the betweenness centrality of the nodes and of the edges of a graph.\n"
+                        + "The results are written in the tables output_table_name.nodes and output_table_name.edges.\n"
+                        + "Optional arguments : \n"
+                        + "1 if the graph is directed\n"
+                        + "2 if the graph is directed and edges are reversed."
+                        + "3 if the graph is undirected\n"
+                        + "The number of sources drawn at random to approximate the centrality, -1 to use all the nodes.\n"
+                        + "The name of the output table.";
+        }
+
+        @Override
+        public void evaluate(DataSourceFactory dsf, DataSet[] tables,
+                Value[] values, ProgressMonitor pm) throws FunctionException {
+                try {
+                        String costField = values[0].getAsString();
+                        int graphType = GraphSchema.DIRECT;
+                        int sampleCount = -1;
+                        String outputName = dsf.getUID();
+                        if (values.length >= 2) {
+                                graphType = values[1].getAsInt();
+                        }
+                        if (values.length >= 3) {
+                                sampleCount = values[2].getAsInt();
+                        }
+                        if (values.length >= 4) {
+                                outputName = values[3].getAsString();
+                        }
+                        GraphCentrality.getBetweenness(dsf, tables[0], costField, graphType, sampleCount, outputName, pm);
+                } catch (DriverException e) {
+                        throw new FunctionException(e);
+                } catch (GraphException e) {
+                        throw new FunctionException(e);
+                }
+        }
+
+        @Override
+        public FunctionSignature[] getFunctionSignatures() {
+                return new FunctionSignature[]{
+                                new ExecutorFunctionSignature(new TableArgument(TableDefinition.GEOMETRY), ScalarArgument.STRING),
+                                new ExecutorFunctionSignature(new TableArgument(TableDefinition.GEOMETRY), ScalarArgument.STRING,
+                                ScalarArgument.INT),
+                                new ExecutorFunctionSignature(new TableArgument(TableDefinition.GEOMETRY), ScalarArgument.STRING,
+                                ScalarArgument.INT, ScalarArgument.INT),
+                                new ExecutorFunctionSignature(new TableArgument(TableDefinition.GEOMETRY), ScalarArgument.STRING,
+                                ScalarArgument.INT, ScalarArgument.INT, ScalarArgument.STRING)};
+        }
+}
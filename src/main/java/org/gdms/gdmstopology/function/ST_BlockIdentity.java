@@ -30,16 +30,18 @@
  */
 package org.gdms.gdmstopology.function;
 
-import com.vividsolutions.jts.algorithm.CGAlgorithms;
 import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.operation.distance.DistanceOp;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
-import org.gdms.data.NoSuchTableException;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.gdms.data.DataSourceFactory;
-import org.gdms.data.indexes.DefaultSpatialIndexQuery;
-import org.gdms.data.indexes.IndexException;
 import org.gdms.data.schema.DefaultMetadata;
 import org.gdms.data.schema.Metadata;
 import org.gdms.data.types.Type;
@@ -49,6 +51,7 @@ import org.gdms.data.values.ValueFactory;
 import org.gdms.driver.DiskBufferDriver;
 import org.gdms.driver.DriverException;
 import org.gdms.driver.DataSet;
+import org.gdms.gdmstopology.utils.ConcurrentUnionFind;
 import org.gdms.sql.function.FunctionException;
 import org.gdms.sql.function.FunctionSignature;
 import org.gdms.sql.function.ScalarArgument;
@@ -66,27 +69,46 @@ import org.orbisgis.progress.ProgressMonitor;
  * then these fields are returned in the output for the selected geometries. Unique IDs are best suited for this
  * use, but anything can be used. By default if nothing is specified, all field of the input table is kept.
  *
- * The algorithm uses an index to get the nearest geometries of a fixed geometry and then uses {@link DistanceOp}
- * to check if the (smallest) distance between the two is 0. If it is, the two are grouped and the same
- * algorithm is computed on the newly added geometries, until the group does not expand anymore.
+ * The algorithm reads the geometries once and indexes their envelopes in a
+ * STRtree. For each geometry, the index gives the geometries whose envelope
+ * intersects its envelope and only the ones with a greater row index, that
+ * are not already in the same block, are tested, so each pair is tested at
+ * most once. Two geometries are in the same block if they intersect, i.e.
+ * their distance is 0, which is tested on a prepared geometry.
  *
- * Note: BRUT-FORCE & NON-ROBUST algorithm.
- *
- * Using {@link DistanceOp} is MUCH faster than <code>geom1.touches(geom2)</code>, because it does not need
- * to compute the DE-9IM intersection matrix. However it is still a brut-force algorithm on the lines and points
- * of both geometry, that uses a non-robust CG algorithm in {@link  CGAlgorithms}. This could be improved
- * by writing a custom JTS TouchesOp dedicated to that effect.
+ * The rows are split in ranges tested in parallel and the blocks are merged
+ * in a concurrent union-find on the row indexes, whose representative is the
+ * smallest row of each block. The rows are then written in their order, with
+ * a block id numbered by the first row of each block, so the result does not
+ * depend on the order in which the threads run.
  *
  * @author Antoine Gourlay, Erwan Bocher
  */
 public class ST_BlockIdentity extends AbstractTableFunction {
 
-        private HashSet<Integer> idsToProcess;
         private int[] fieldIds;
         private DataSet dataSet;
         private int geomFieldIndex;
         private String geomField;
         private DiskBufferDriver diskBufferDriver;
+        private static final int RANGE_SIZE = 1000;
+        private int threadCount = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Set the number of threads used to find the blocks.
+         * @param threadCount 
+         */
+        public void setThreadCount(int threadCount) {
+                this.threadCount = threadCount;
+        }
+
+        /**
+         * 
+         * @return the number of threads used to find the blocks.
+         */
+        public int getThreadCount() {
+                return threadCount;
+        }
 
         @Override
         public DataSet evaluate(DataSourceFactory dsf, DataSet[] tables,
@@ -113,22 +135,8 @@ public class ST_BlockIdentity extends AbstractTableFunction {
                                         fieldIds[i] = metadata.getFieldIndex(fieldNames[i]);
                                 }
 
-
-
-
-                                pm.startTask("Building indexes", 100);
-                                // build indexes
-                                if (!dsf.getIndexManager().isIndexed(dataSet, geomField)) {
-                                        dsf.getIndexManager().buildIndex(dataSet, geomField, pm);
-                                }
-                                pm.endTask();
-
-
-                                //Populate a hashset with all row ids
-                                idsToProcess = new HashSet<Integer>();
-                                for (int i = 0; i < dataSet.getRowCount(); i++) {
-                                        idsToProcess.add(i);
-                                }
+                                int rowCount = (int) dataSet.getRowCount();
+                                ConcurrentUnionFind blocks = findBlocks(readGeometries(rowCount, pm), pm);
 
                                 // results
                                 DefaultMetadata met = new DefaultMetadata();
@@ -139,38 +147,22 @@ public class ST_BlockIdentity extends AbstractTableFunction {
 
                                 diskBufferDriver = new DiskBufferDriver(dsf, met);
 
-
+                                // number the blocks by their first row and write the rows
+                                int[] blockIds = new int[rowCount];
                                 int blockId = 1;
-                                while (!idsToProcess.isEmpty()) {
-
-                                        // starts the block
-                                        int start = idsToProcess.iterator().next();
-                                        HashSet<Integer> block = new HashSet<Integer>();
-                                        block.add(start);
-
-                                        // aggregates the block
-                                        aggregateNeighbours(dsf, start, block);
-
-                                        // writes the block
-                                        Iterator<Integer> it = block.iterator();
-                                        while (it.hasNext()) {
-                                                final Integer next = it.next();
-                                                Value[] res = new Value[fieldIds.length + 1];
-                                                for (int i = 0; i < fieldIds.length; i++) {
-                                                        res[i] = dataSet.getFieldValue(next, fieldIds[i]);
-                                                }
-                                                res[fieldIds.length] = ValueFactory.createValue(blockId);
-                                                diskBufferDriver.addValues(res);
+                                Value[] res = new Value[fieldIds.length + 1];
+                                for (int row = 0; row < rowCount; row++) {
+                                        int root = blocks.find(row);
+                                        if (blockIds[root] == 0) {
+                                                blockIds[root] = blockId++;
                                         }
-
-                                        // mark all those geometries as processed
-                                        idsToProcess.removeAll(block);
-
-                                        blockId++;
+                                        for (int i = 0; i < fieldIds.length; i++) {
+                                                res[i] = dataSet.getFieldValue(row, fieldIds[i]);
+                                        }
+                                        res[fieldIds.length] = ValueFactory.createValue(blockIds[root]);
+                                        diskBufferDriver.addValues(res);
                                 }
-                                pm.endTask();
                                 diskBufferDriver.writingFinished();
-                                pm.endTask();
                                 diskBufferDriver.open();
                                 return diskBufferDriver;
                         } else {
@@ -179,10 +171,6 @@ public class ST_BlockIdentity extends AbstractTableFunction {
 
                 } catch (DriverException ex) {
                         throw new FunctionException(ex);
-                } catch (NoSuchTableException ex) {
-                        throw new FunctionException(ex);
-                } catch (IndexException ex) {
-                        throw new FunctionException(ex);
                 }
         }
 
@@ -193,45 +181,112 @@ public class ST_BlockIdentity extends AbstractTableFunction {
                 }
         }
 
-        private void aggregateNeighbours(DataSourceFactory dsf, int id, Set<Integer> agg) throws DriverException {
-                int size = agg.size();
-
-                Set<Integer> re = relativesOf(dsf, id, agg);
-                agg.addAll(re);
-                int nSize = agg.size();
-
-
-                if (nSize == size) {
-                        // blockSize has not changed, there is no more blocks to add
-                        return;
-                } else {
-                        Iterator<Integer> it = re.iterator();
-                        while (it.hasNext()) {
-                                aggregateNeighbours(dsf, it.next(), agg);
+        /**
+         * Read the geometries and index their envelopes.
+         * @param rowCount
+         * @param pm
+         * @return the geometries, null for the null values
+         * @throws DriverException if the reading has been cancelled
+         */
+        private Geometry[] readGeometries(int rowCount, ProgressMonitor pm) throws DriverException {
+                Geometry[] geometries = new Geometry[rowCount];
+                pm.startTask("Read the geometries", 100);
+                for (int id = 0; id < rowCount; id++) {
+                        if (id >= 100 && id % 100 == 0) {
+                                if (pm.isCancelled()) {
+                                        throw new DriverException("The reading of the geometries has been cancelled");
+                                } else {
+                                        pm.progressTo((int) (100L * id / rowCount));
+                                }
+                        }
+                        Value value = dataSet.getFieldValue(id, geomFieldIndex);
+                        if (!value.isNull()) {
+                                geometries[id] = value.getAsGeometry();
                         }
                 }
+                pm.endTask();
+                return geometries;
         }
 
-        private Set<Integer> relativesOf(DataSourceFactory dsf, int id, Set<Integer> excluded) throws DriverException {
-                Geometry geom = dataSet.getFieldValue(id, geomFieldIndex).getAsGeometry();
-
-                // query index
-                DefaultSpatialIndexQuery query = new DefaultSpatialIndexQuery(geomField, geom.getEnvelopeInternal());
-                Iterator<Integer> s = dataSet.queryIndex(dsf, query);
+        /**
+         * Merge the rows whose geometries intersect. The ranges of rows are
+         * tested in parallel.
+         * @param geometries
+         * @param pm
+         * @return the union-find of the rows
+         * @throws DriverException if the search has been cancelled
+         */
+        private ConcurrentUnionFind findBlocks(final Geometry[] geometries, ProgressMonitor pm) throws DriverException {
+                final ConcurrentUnionFind blocks = new ConcurrentUnionFind(geometries.length);
+                final STRtree tree = new STRtree();
+                for (int id = 0; id < geometries.length; id++) {
+                        if (geometries[id] != null) {
+                                tree.insert(geometries[id].getEnvelopeInternal(), id);
+                        }
+                }
+                // the tree must be built before being queried by several threads
+                tree.build();
 
-                HashSet<Integer> h = new HashSet<Integer>();
-                while (s.hasNext()) {
-                        int i = s.next();
+                pm.startTask("Find the blocks", 100);
+                ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threadCount));
+                try {
+                        List<Future<Object>> futures = new ArrayList<Future<Object>>();
+                        for (int rangeStart = 0; rangeStart < geometries.length; rangeStart += RANGE_SIZE) {
+                                final int start = rangeStart;
+                                final int end = Math.min(rangeStart + RANGE_SIZE, geometries.length);
+                                futures.add(executor.submit(new Callable<Object>() {
+
+                                        @Override
+                                        public Object call() {
+                                                findBlocks(geometries, tree, blocks, start, end);
+                                                return null;
+                                        }
+                                }));
+                        }
+                        for (int i = 0; i < futures.size(); i++) {
+                                if (pm.isCancelled()) {
+                                        throw new DriverException("The search of the blocks has been cancelled");
+                                }
+                                pm.progressTo(100 * i / futures.size());
+                                futures.get(i).get();
+                        }
+                } catch (InterruptedException e) {
+                        throw new DriverException("The search of the blocks has been interrupted", e);
+                } catch (ExecutionException e) {
+                        throw new DriverException("Cannot find the blocks", e.getCause());
+                } finally {
+                        executor.shutdownNow();
+                }
+                pm.endTask();
+                return blocks;
+        }
 
-                        // i != id to prevent adding itself
-                        // !excluded.contains(i) to filter already added geometries
-                        //      (this is O(1) while the next test is far from it...)
-                        // test if both geoms are at 0 distance, i.e. touches
-                        if (i != id && !excluded.contains(i) && DistanceOp.isWithinDistance(geom, dataSet.getFieldValue(i, geomFieldIndex).getAsGeometry(), 0)) {
-                                h.add(i);
+        /**
+         * Merge the rows of [start, end[ with the rows after them whose
+         * geometries intersect.
+         */
+        private static void findBlocks(Geometry[] geometries, STRtree tree, ConcurrentUnionFind blocks, int start, int end) {
+                PreparedGeometryFactory preparedGeometryFactory = new PreparedGeometryFactory();
+                for (int id = start; id < end; id++) {
+                        Geometry geom = geometries[id];
+                        if (geom == null) {
+                                continue;
+                        }
+                        PreparedGeometry preparedGeom = null;
+                        List candidates = tree.query(geom.getEnvelopeInternal());
+                        for (Object candidate : candidates) {
+                                int i = (Integer) candidate;
+                                // i > id so each pair is tested once
+                                if (i > id && !blocks.connected(id, i)) {
+                                        if (preparedGeom == null) {
+                                                preparedGeom = preparedGeometryFactory.create(geom);
+                                        }
+                                        if (preparedGeom.intersects(geometries[i])) {
+                                                blocks.union(id, i);
+                                        }
+                                }
                         }
                 }
-                return h;
         }
 
         @Override
@@ -32,8 +32,10 @@ package org.gdms.gdmstopology.function;
 
 import org.gdms.gdmstopology.process.NetworkGraphBuilder;
 import java.io.IOException;
+import org.gdms.data.NoSuchTableException;
 import org.gdms.data.NonEditableDataSourceException;
 import org.gdms.data.DataSourceFactory;
+import org.gdms.data.indexes.IndexException;
 import org.gdms.data.values.Value;
 import org.gdms.driver.DriverException;
 import org.gdms.driver.driverManager.DriverLoadException;
@@ -60,15 +62,22 @@ public class ST_Graph extends AbstractExecutorFunction {
 
         @Override
         public String getSqlOrder() {
-                return "EXECUTE ST_Graph(table [,tolerance, true, 'output_table_name']);";
+                return "EXECUTE ST_Graph(table [,tolerance, orderBySlope, 'output_table_name', 'options']);";
         }
 
         @Override
         public String getDescription() {
-                return "Build a graph based on geometries order. "
-                        + "A tolerance can be used to snap vertex\n."
-                        + "True if the edge is ordered according its slope.\n"+
-                        "The name of the output table can be set.";
+                return "Build a graph based on geometries order.\n"
+                        + "tolerance : a tolerance used to snap the vertexes.\n"
+                        + "orderBySlope : true if the edge is ordered according its slope.\n"
+                        + "output_table_name : the prefix of the output tables.\n"
+                        + "options : a comma separated list of options :\n"
+                        + "sort to order the edges by start and end nodes and index them,\n"
+                        + "hilbert to renumber the nodes following a Hilbert curve,\n"
+                        + "3d to use the z values to snap the nodes and add the 3D length and the slope of the edges,\n"
+                        + "noattributes to write only the geometry and the graph fields in the edges,\n"
+                        + "clean to remove the zero length, self-loop and duplicate edges.\n"
+                        + "Example : EXECUTE ST_Graph(roads, 0.1, false, 'network', 'sort,hilbert,clean');";
         }
 
         @Override
@@ -78,17 +87,18 @@ public class ST_Graph extends AbstractExecutorFunction {
                         final DataSet dataSet = tables[0];
                         NetworkGraphBuilder graphNetwork = new NetworkGraphBuilder(dsf, pm);
                         graphNetwork.setOutput_name(dsf.getUID());
-                        if (values.length == 1) {
-                                graphNetwork.setTolerance(values[0].getAsDouble());
-                        } else if (values.length == 2) {
-                                graphNetwork.setZDirection(values[1].getAsBoolean());
-                                graphNetwork.setTolerance(values[0].getAsDouble());
-
-                        } else if (values.length == 3) {
+                        if (values.length >= 1) {
                                 graphNetwork.setTolerance(values[0].getAsDouble());
+                        }
+                        if (values.length >= 2) {
                                 graphNetwork.setZDirection(values[1].getAsBoolean());
+                        }
+                        if (values.length >= 3) {
                                 graphNetwork.setOutput_name(values[2].getAsString());
                         }
+                        if (values.length >= 4) {
+                                setOptions(graphNetwork, values[3].getAsString());
+                        }
                         graphNetwork.buildGraph(dataSet);
                 } catch (IOException e) {
                         throw new FunctionException(e);
@@ -98,6 +108,38 @@ public class ST_Graph extends AbstractExecutorFunction {
                         throw new FunctionException(e);
                 } catch (NonEditableDataSourceException e) {
                         throw new FunctionException(e);
+                } catch (IndexException e) {
+                        throw new FunctionException(e);
+                } catch (NoSuchTableException e) {
+                        throw new FunctionException(e);
+                }
+        }
+
+        /**
+         * Set the options of the builder from a comma separated list.
+         * @param graphNetwork
+         * @param options
+         * @throws FunctionException if an option is unknown
+         */
+        private void setOptions(NetworkGraphBuilder graphNetwork, String options) throws FunctionException {
+                for (String option : options.split(",")) {
+                        option = option.trim().toLowerCase();
+                        if (option.isEmpty()) {
+                                continue;
+                        } else if (option.equals("sort")) {
+                                graphNetwork.setSortEdges(true);
+                        } else if (option.equals("hilbert")) {
+                                graphNetwork.setHilbertOrder(true);
+                        } else if (option.equals("3d")) {
+                                graphNetwork.setDim3(true);
+                        } else if (option.equals("noattributes")) {
+                                graphNetwork.setKeepAttributes(false);
+                        } else if (option.equals("clean")) {
+                                graphNetwork.setCleanEdges(true);
+                        } else {
+                                throw new FunctionException("Unknown option " + option
+                                        + ". The options are sort, hilbert, 3d, noattributes and clean.");
+                        }
                 }
         }
 
@@ -110,6 +152,8 @@ public class ST_Graph extends AbstractExecutorFunction {
                                 new ExecutorFunctionSignature(new TableArgument(TableDefinition.GEOMETRY),
                                 ScalarArgument.DOUBLE, ScalarArgument.BOOLEAN),
                                 new ExecutorFunctionSignature(new TableArgument(TableDefinition.GEOMETRY),
-                                ScalarArgument.DOUBLE, ScalarArgument.BOOLEAN, ScalarArgument.STRING)};
+                                ScalarArgument.DOUBLE, ScalarArgument.BOOLEAN, ScalarArgument.STRING),
+                                new ExecutorFunctionSignature(new TableArgument(TableDefinition.GEOMETRY),
+                                ScalarArgument.DOUBLE, ScalarArgument.BOOLEAN, ScalarArgument.STRING, ScalarArgument.STRING)};
         }
 }
@@ -0,0 +1,98 @@
+/**
+ * GDMS-Topology  is a library dedicated to graph analysis. It is based on the JGraphT
+ * library available at <http://www.jgrapht.org/>. It enables computing and processing
+ * large graphs using spatial and alphanumeric indexes.
+ *
+ * This version is developed at French IRSTV institut as part of the
+ * EvalPDU project, funded by the French Agence Nationale de la Recherche
+ * (ANR) under contract ANR-08-VILL-0005-01 and GEBD project
+ * funded by the French Ministery of Ecology and Sustainable Development.
+ *
+ * GDMS-Topology  is distributed under GPL 3 license. It is produced by the "Atelier SIG"
+ * team of the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2009-2012 IRSTV (FR CNRS 2488)
+ *
+ * GDMS-Topology is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * GDMS-Topology is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * GDMS-Topology. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://wwwc.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.gdmstopology.function;
+
+import org.gdms.data.DataSourceFactory;
+import org.gdms.data.values.Value;
+import org.gdms.driver.DataSet;
+import org.gdms.driver.DriverException;
+import org.gdms.gdmstopology.model.GraphException;
+import org.gdms.gdmstopology.process.NetworkStatistics;
+import org.gdms.sql.function.FunctionException;
+import org.gdms.sql.function.FunctionSignature;
+import org.gdms.sql.function.ScalarArgument;
+import org.gdms.sql.function.executor.AbstractExecutorFunction;
+import org.gdms.sql.function.executor.ExecutorFunctionSignature;
+import org.gdms.sql.function.table.TableArgument;
+import org.gdms.sql.function.table.TableDefinition;
+import org.orbisgis.progress.ProgressMonitor;
+
+/**
+ *
+ * @author Erwan Bocher
+ */
+public class ST_GraphStatistics extends AbstractExecutorFunction {
+
+        @Override
+        public String getName() {
+                return "ST_GraphStatistics";
+        }
+
+        @Override
+        public String getSqlOrder() {
+                return "EXECUTE ST_GraphStatistics(table [, 'output_table_name']);";
+        }
+
+        @Override
+        public String getDescription() {
+                return "Compute the statistics of the connected components of a graph : the number of nodes and "
+                        + "of edges, the density, an estimation of the diameter in number of edges, the degeneracy "
+                        + "and the histogram of the degrees written as degree:count pairs.\n"
+                        + "The degree and the core number of each node are also computed.\n"
+                        + "The results are written in the tables output_table_name.components and output_table_name.nodes.\n"
+                        + "The direction of the edges is ignored.\n"
+                        + "Optional argument : \n"
+                        + "The name of the output table.";
+        }
+
+        @Override
+        public void evaluate(DataSourceFactory dsf, DataSet[] tables,
+                Value[] values, ProgressMonitor pm) throws FunctionException {
+                try {
+                        String outputName = dsf.getUID();
+                        if (values.length >= 1) {
+                                outputName = values[0].getAsString();
+                        }
+                        NetworkStatistics.getNetworkStatistics(dsf, tables[0], outputName, pm);
+                } catch (DriverException e) {
+                        throw new FunctionException(e);
+                } catch (GraphException e) {
+                        throw new FunctionException(e);
+                }
+        }
+
+        @Override
+        public FunctionSignature[] getFunctionSignatures() {
+                return new FunctionSignature[]{
+                                new ExecutorFunctionSignature(new TableArgument(TableDefinition.GEOMETRY)),
+                                new ExecutorFunctionSignature(new TableArgument(TableDefinition.GEOMETRY), ScalarArgument.STRING)};
+        }
+}
@@ -31,15 +31,10 @@
 package org.gdms.gdmstopology.function;
 
 import java.io.IOException;
-import org.gdms.data.DataSourceCreationException;
-import org.gdms.data.NoSuchTableException;
-import org.gdms.data.NonEditableDataSourceException;
 import org.gdms.data.DataSourceFactory;
-import org.gdms.data.indexes.IndexException;
 import org.gdms.data.values.Value;
 import org.gdms.driver.DataSet;
 import org.gdms.driver.DriverException;
-import org.gdms.driver.driverManager.DriverLoadException;
 import org.gdms.gdmstopology.process.PlanarGraphBuilder;
 import org.gdms.sql.function.FunctionException;
 import org.gdms.sql.function.FunctionSignature;
@@ -63,13 +58,17 @@ public class ST_PlanarGraph extends AbstractExecutorFunction {
 
         @Override
         public String getSqlOrder() {
-                return "EXECUTE ST_PlanarGraph(mytable, 'output_table_name');";
+                return "EXECUTE ST_PlanarGraph(mytable, 'output_table_name' [, true, true, true]);";
         }
 
         @Override
         public String getDescription() {
                 return "Build a planar graph based on geometries.\n"
-                        +"Output table name can be set.";
+                        +"Output table name can be set.\n"
+                        + "True if the nodes are renumbered following a Hilbert curve.\n"
+                        + "True if the lines are spilled on disk and noded tile by tile, then merged and polygonized "
+                        + "component by component : the largest connected component must fit in memory.\n"
+                        + "True if the rows of the input table each edge comes from are kept in the table output_table_name.sources.";
         }
 
         @Override
@@ -77,27 +76,25 @@ public class ST_PlanarGraph extends AbstractExecutorFunction {
                 Value[] values, ProgressMonitor pm) throws FunctionException {
                 try {
                         PlanarGraphBuilder planarGraph = new PlanarGraphBuilder(dsf, pm);
-                        if (values.length == 1) {
+                        if (values.length >= 1) {
                                 planarGraph.setOutput_name(values[0].getAsString());
                         } else {
                                 planarGraph.setOutput_name(dsf.getUID());
                         }
+                        if (values.length >= 2) {
+                                planarGraph.setHilbertOrder(values[1].getAsBoolean());
+                        }
+                        if (values.length >= 3) {
+                                planarGraph.setOutOfCore(values[2].getAsBoolean());
+                        }
+                        if (values.length >= 4) {
+                                planarGraph.setKeepSourceRows(values[3].getAsBoolean());
+                        }
                         planarGraph.buildGraph(tables[0]);
-                        planarGraph.createPolygonAndTopology();
                 } catch (IOException e) {
                         throw new FunctionException(e);
-                } catch (DriverLoadException e) {
-                        throw new FunctionException(e);
                 } catch (DriverException e) {
                         throw new FunctionException(e);
-                } catch (NonEditableDataSourceException e) {
-                        throw new FunctionException(e);
-                } catch (NoSuchTableException e) {
-                        throw new FunctionException(e);
-                } catch (IndexException e) {
-                        throw new FunctionException(e);
-                } catch (DataSourceCreationException e) {
-                        throw new FunctionException(e);
                 }
         }
 
@@ -105,6 +102,12 @@ public class ST_PlanarGraph extends AbstractExecutorFunction {
         public FunctionSignature[] getFunctionSignatures() {
                 return new FunctionSignature[]{
                                 new ExecutorFunctionSignature(new TableArgument(TableDefinition.GEOMETRY)),
-                                new ExecutorFunctionSignature(new TableArgument(TableDefinition.GEOMETRY), ScalarArgument.STRING)};
+                                new ExecutorFunctionSignature(new TableArgument(TableDefinition.GEOMETRY), ScalarArgument.STRING),
+                                new ExecutorFunctionSignature(new TableArgument(TableDefinition.GEOMETRY), ScalarArgument.STRING,
+                                ScalarArgument.BOOLEAN),
+                                new ExecutorFunctionSignature(new TableArgument(TableDefinition.GEOMETRY), ScalarArgument.STRING,
+                                ScalarArgument.BOOLEAN, ScalarArgument.BOOLEAN),
+                                new ExecutorFunctionSignature(new TableArgument(TableDefinition.GEOMETRY), ScalarArgument.STRING,
+                                ScalarArgument.BOOLEAN, ScalarArgument.BOOLEAN, ScalarArgument.BOOLEAN)};
         }
 }
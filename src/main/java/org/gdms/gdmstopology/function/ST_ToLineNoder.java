@@ -31,8 +31,6 @@
 package org.gdms.gdmstopology.function;
 
 import com.vividsolutions.jts.geom.Geometry;
-import java.util.Collection;
-import java.util.List;
 
 import org.gdms.data.DataSourceFactory;
 import org.gdms.data.schema.DefaultMetadata;
@@ -43,10 +41,11 @@ import org.gdms.data.values.Value;
 import org.gdms.data.values.ValueFactory;
 import org.gdms.driver.DriverException;
 import org.gdms.driver.DataSet;
-import org.gdms.driver.driverManager.DriverLoadException;
-import org.gdms.driver.memory.MemoryDataSetDriver;
+import org.gdms.driver.DiskBufferDriver;
 import org.gdms.gdmstopology.process.LineNoder;
+import org.gdms.gdmstopology.process.TiledLineNoder;
 import org.gdms.sql.function.FunctionSignature;
+import org.gdms.sql.function.ScalarArgument;
 import org.orbisgis.progress.ProgressMonitor;
 
 import org.gdms.sql.function.FunctionException;
@@ -61,52 +60,55 @@ import org.gdms.sql.function.table.TableFunctionSignature;
  */
 public class ST_ToLineNoder extends AbstractTableFunction {
 
-        @SuppressWarnings({"unchecked", "static-access"})
+        private DiskBufferDriver diskBufferDriver;
+
         @Override
         public DataSet evaluate(DataSourceFactory dsf, DataSet[] tables,
                 Value[] values, ProgressMonitor pm) throws FunctionException {
                 try {
                         final DataSet inSds = tables[0];
-                        final LineNoder lineNoder = new LineNoder(inSds);
+                        final LineNoder lineNoder = new LineNoder(inSds, pm);
+                        if (values.length == 1) {
+                                lineNoder.setTiledThreshold(values[0].getAsInt());
+                        }
 
-                        final Collection lines = lineNoder.getLines();
-                        final Geometry nodedGeom = lineNoder.getNodeLines((List) lines);
-                        final Collection<Geometry> nodedLines = lineNoder.toLines(nodedGeom);
+                        // the noded lines are written as soon as they are ready
+                        diskBufferDriver = new DiskBufferDriver(dsf, getMetadata(null));
+                        lineNoder.nodeLines(new TiledLineNoder.LineSink() {
 
-                        // build and populate the resulting driver
-                        final MemoryDataSetDriver driver = new MemoryDataSetDriver(
-                                getMetadata(null));
+                                private int k = 0;
 
-                        int k = 0;
-                        final int rowCount = nodedLines.size();
-                        for (Geometry geometry : nodedLines) {
-                                if (k / 100 == k / 100.0) {
-                                        if (pm.isCancelled()) {
-                                                break;
-                                        } else {
-                                                pm.progressTo((int) (100 * k / rowCount));
-                                        }
+                                @Override
+                                public void add(Geometry line) throws DriverException {
+                                        diskBufferDriver.addValues(new Value[]{ValueFactory.createValue(k),
+                                                        ValueFactory.createValue(line)});
+                                        k++;
                                 }
-                                driver.addValues(new Value[]{ValueFactory.createValue(k),
-                                                ValueFactory.createValue(geometry)});
-                                k++;
-                        }
-                        return driver;
+                        });
+                        diskBufferDriver.writingFinished();
+                        diskBufferDriver.open();
+                        return diskBufferDriver;
                 } catch (DriverException e) {
                         throw new FunctionException(e);
-                } catch (DriverLoadException e) {
-                        throw new FunctionException(e);
+                }
+        }
+
+        @Override
+        public void workFinished() throws DriverException {
+                if (diskBufferDriver != null) {
+                        diskBufferDriver.close();
                 }
         }
 
         @Override
         public String getDescription() {
-                return "Build all intersection and convert the geometries into lines ";
+                return "Build all intersection and convert the geometries into lines.\n"
+                        + "The optional argument is the number of lines above which the lines are noded by tiles, in parallel.";
         }
 
         @Override
         public String getSqlOrder() {
-                return "select * from  ST_ToLineNoder(table) from myTable;";
+                return "select * from  ST_ToLineNoder(table [, 100000]) from myTable;";
         }
 
         @Override
@@ -124,6 +126,7 @@ public class ST_ToLineNoder extends AbstractTableFunction {
 
         @Override
         public FunctionSignature[] getFunctionSignatures() {
-                return new FunctionSignature[]{new TableFunctionSignature(TableDefinition.GEOMETRY, new TableArgument(TableDefinition.GEOMETRY))};
+                return new FunctionSignature[]{new TableFunctionSignature(TableDefinition.GEOMETRY, new TableArgument(TableDefinition.GEOMETRY)),
+                                new TableFunctionSignature(TableDefinition.GEOMETRY, new TableArgument(TableDefinition.GEOMETRY), ScalarArgument.INT)};
         }
 }
@@ -0,0 +1,404 @@
+/**
+ * GDMS-Topology  is a library dedicated to graph analysis. It is based on the JGraphT
+ * library available at <http://www.jgrapht.org/>. It enables computing and processing
+ * large graphs using spatial and alphanumeric indexes.
+ *
+ * This version is developed at French IRSTV institut as part of the
+ * EvalPDU project, funded by the French Agence Nationale de la Recherche
+ * (ANR) under contract ANR-08-VILL-0005-01 and GEBD project
+ * funded by the French Ministery of Ecology and Sustainable Development.
+ *
+ * GDMS-Topology  is distributed under GPL 3 license. It is produced by the "Atelier SIG"
+ * team of the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2009-2012 IRSTV (FR CNRS 2488)
+ *
+ * GDMS-Topology is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * GDMS-Topology is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * GDMS-Topology. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://wwwc.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.gdmstopology.model;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import org.gdms.data.schema.Metadata;
+import org.gdms.data.values.Value;
+import org.gdms.driver.DataSet;
+import org.gdms.driver.DriverException;
+import org.orbisgis.progress.ProgressMonitor;
+
+/**
+ * A read-only graph loaded in primitive arrays from an edges table, in one
+ * sequential scan, without any index.
+ *
+ * The edge i is the row i of the table. The node ids of the start_node and
+ * end_node columns are renumbered in [0, nodeCount[ following their order, so
+ * the node index of an id is found with a binary search in the sorted ids.
+ * The weight of an edge is 1 unless a weight field is set. The id of an edge
+ * is the value of its id field, or its row index if there is no id field.
+ *
+ * The adjacency is stored in compressed rows : the edges that can be
+ * followed from the node n are in adjacentEdges[firstEdge[n], firstEdge[n + 1][.
+ * It is built for a graph type : the outgoing edges for a directed graph, the
+ * incoming edges for a directed graph whose edges are reversed and both for an
+ * undirected graph.
+ *
+ * The algorithms that visit the whole graph use it instead of a
+ * {@link GDMSGraph}, whose index queries box every node and edge.
+ *
+ * @author Erwan Bocher
+ */
+public class ArrayGraph {
+
+        private final DataSet dataSet;
+        private final ProgressMonitor pm;
+        private final int[] nodeIds;
+        private final int[] sources;
+        private final int[] targets;
+        private int[] edgeIds;
+        private double[] weights;
+        private final String weightFieldName;
+        private int graphType = -1;
+        private int[] firstEdge;
+        private int[] adjacentEdges;
+
+        /**
+         * Load the nodes of the edges.
+         * Be carefull the schema of the input datasource must contain the
+         * fields start_node and end_node.
+         * @param dataSet
+         * @param pm
+         * @throws DriverException if the table cannot be read or if the
+         * loading is cancelled
+         */
+        public ArrayGraph(DataSet dataSet, ProgressMonitor pm) throws DriverException {
+                this(dataSet, null, pm);
+        }
+
+        /**
+         * Load the nodes and the weights of the edges.
+         * Be carefull the schema of the input datasource must contain the
+         * fields start_node and end_node.
+         * @param dataSet
+         * @param weightFieldName the field of the weights, null if all the
+         * weights are 1
+         * @param pm
+         * @throws DriverException if the table cannot be read or if the
+         * loading is cancelled
+         */
+        public ArrayGraph(DataSet dataSet, String weightFieldName, ProgressMonitor pm) throws DriverException {
+                this.dataSet = dataSet;
+                this.pm = pm;
+                this.weightFieldName = weightFieldName;
+                Metadata metadata = dataSet.getMetadata();
+                int startIndex = metadata.getFieldIndex(GraphSchema.START_NODE);
+                int endIndex = metadata.getFieldIndex(GraphSchema.END_NODE);
+                if (startIndex == -1) {
+                        throw new IllegalArgumentException("The table must contains a field named start_node");
+                }
+                if (endIndex == -1) {
+                        throw new IllegalArgumentException("The table must contains a field named end_node");
+                }
+                int weightIndex = -1;
+                if (weightFieldName != null) {
+                        weightIndex = metadata.getFieldIndex(weightFieldName);
+                        if (weightIndex == -1) {
+                                throw new IllegalArgumentException("The table must contains a field named " + weightFieldName);
+                        }
+                }
+                int idIndex = metadata.getFieldIndex(GraphSchema.ID);
+                int edgeCount = (int) dataSet.getRowCount();
+                sources = new int[edgeCount];
+                targets = new int[edgeCount];
+                if (idIndex != -1) {
+                        edgeIds = new int[edgeCount];
+                }
+                if (weightIndex != -1) {
+                        weights = new double[edgeCount];
+                }
+                pm.startTask("Load the graph", 100);
+                Iterator<Value[]> it = dataSet.iterator();
+                int count = 0;
+                while (it.hasNext()) {
+                        if (count >= 100 && count % 100 == 0) {
+                                if (pm.isCancelled()) {
+                                        throw new DriverException("The loading of the graph has been cancelled");
+                                } else {
+                                        pm.progressTo((int) (100L * count / edgeCount));
+                                }
+                        }
+                        Value[] row = it.next();
+                        sources[count] = row[startIndex].getAsInt();
+                        targets[count] = row[endIndex].getAsInt();
+                        if (edgeIds != null) {
+                                edgeIds[count] = row[idIndex].getAsInt();
+                        }
+                        if (weights != null) {
+                                weights[count] = row[weightIndex].getAsDouble();
+                        }
+                        count++;
+                }
+                pm.endTask();
+                nodeIds = renumber(sources, targets);
+        }
+
+        /**
+         * Build a graph from the arrays of its edges, which are not copied.
+         * The edge ids are the indexes of the edges.
+         * @param sources the start node ids, replaced by the node indexes
+         * @param targets the end node ids, replaced by the node indexes
+         * @param weights the weights of the edges, null if all the weights are 1
+         * @param pm
+         */
+        public ArrayGraph(int[] sources, int[] targets, double[] weights, ProgressMonitor pm) {
+                this.dataSet = null;
+                this.pm = pm;
+                this.sources = sources;
+                this.targets = targets;
+                this.weights = weights;
+                this.weightFieldName = null;
+                nodeIds = renumber(sources, targets);
+        }
+
+        /**
+         * Replace the node ids of the edges by their index in the sorted
+         * distinct ids.
+         * @param sources
+         * @param targets
+         * @return the sorted distinct ids
+         */
+        private static int[] renumber(int[] sources, int[] targets) {
+                int edgeCount = sources.length;
+                int[] ids = new int[2 * edgeCount];
+                System.arraycopy(sources, 0, ids, 0, edgeCount);
+                System.arraycopy(targets, 0, ids, edgeCount, edgeCount);
+                Arrays.sort(ids);
+                int nodeCount = 0;
+                for (int i = 0; i < ids.length; i++) {
+                        if (i == 0 || ids[i] != ids[i - 1]) {
+                                ids[nodeCount++] = ids[i];
+                        }
+                }
+                int[] nodeIds = Arrays.copyOf(ids, nodeCount);
+                for (int i = 0; i < edgeCount; i++) {
+                        sources[i] = Arrays.binarySearch(nodeIds, sources[i]);
+                        targets[i] = Arrays.binarySearch(nodeIds, targets[i]);
+                }
+                return nodeIds;
+        }
+
+        /**
+         * 
+         * @return the name of the field of the weights, null if no weight
+         * field is set
+         */
+        public String getWeightFieldName() {
+                return weightFieldName;
+        }
+
+        /**
+         * Check that the weights can be used by a shortest path search.
+         * @throws GraphException if a weight is negative or not a number
+         */
+        public void checkWeights() throws GraphException {
+                for (int i = 0; i < sources.length; i++) {
+                        double weight = getWeight(i);
+                        if (!(weight >= 0)) {
+                                throw new GraphException("The weight of the edge " + getEdgeId(i)
+                                        + " must be a positive number");
+                        }
+                }
+        }
+
+        /**
+         * Build the adjacency of the nodes for a type of graph.
+         * @param graphType {@link GraphSchema#DIRECT}, {@link GraphSchema#DIRECT_REVERSED}
+         * or {@link GraphSchema#UNDIRECT}
+         * @throws GraphException 
+         */
+        public void buildAdjacency(int graphType) throws GraphException {
+                if (graphType != GraphSchema.DIRECT && graphType != GraphSchema.DIRECT_REVERSED
+                        && graphType != GraphSchema.UNDIRECT) {
+                        throw new GraphException("Only 3 type of graphs are allowed."
+                                + "1 if the path is computing using a directed graph.\n"
+                                + "2 if the path is computing using a directed graph and edges are reversed\n"
+                                + "3 if the path is computing using a undirected.");
+                }
+                if (this.graphType == graphType) {
+                        return;
+                }
+                boolean fromSource = graphType != GraphSchema.DIRECT_REVERSED;
+                boolean fromTarget = graphType != GraphSchema.DIRECT;
+                int nodeCount = nodeIds.length;
+                int edgeCount = sources.length;
+                int[] offsets = new int[nodeCount + 1];
+                for (int i = 0; i < edgeCount; i++) {
+                        if (fromSource) {
+                                offsets[sources[i] + 1]++;
+                        }
+                        if (fromTarget) {
+                                offsets[targets[i] + 1]++;
+                        }
+                }
+                for (int n = 0; n < nodeCount; n++) {
+                        offsets[n + 1] += offsets[n];
+                }
+                int[] edges = new int[offsets[nodeCount]];
+                int[] positions = Arrays.copyOf(offsets, nodeCount);
+                for (int i = 0; i < edgeCount; i++) {
+                        if (fromSource) {
+                                edges[positions[sources[i]]++] = i;
+                        }
+                        if (fromTarget) {
+                                edges[positions[targets[i]]++] = i;
+                        }
+                }
+                this.firstEdge = offsets;
+                this.adjacentEdges = edges;
+                this.graphType = graphType;
+        }
+
+        /**
+         * 
+         * @return the type of graph of the adjacency or -1 if it is not built
+         */
+        public int getGraphType() {
+                return graphType;
+        }
+
+        /**
+         * 
+         * @param node
+         * @return the position of the first edge of the node in the adjacency
+         */
+        public int getFirstEdge(int node) {
+                return firstEdge[node];
+        }
+
+        /**
+         * 
+         * @param node
+         * @return the position after the last edge of the node in the adjacency
+         */
+        public int getLastEdge(int node) {
+                return firstEdge[node + 1];
+        }
+
+        /**
+         * 
+         * @param position
+         * @return the edge at this position in the adjacency
+         */
+        public int getAdjacentEdge(int position) {
+                return adjacentEdges[position];
+        }
+
+        /**
+         * 
+         * @param edge
+         * @param node
+         * @return the node reached when the edge is followed from the node
+         */
+        public int getOpposite(int edge, int node) {
+                return sources[edge] == node ? targets[edge] : sources[edge];
+        }
+
+        /**
+         * 
+         * @return the number of nodes
+         */
+        public int getNodeCount() {
+                return nodeIds.length;
+        }
+
+        /**
+         * 
+         * @return the number of edges, which is the number of rows
+         */
+        public int getEdgeCount() {
+                return sources.length;
+        }
+
+        /**
+         * 
+         * @param edge
+         * @return the index of the start node of the edge
+         */
+        public int getSource(int edge) {
+                return sources[edge];
+        }
+
+        /**
+         * 
+         * @param edge
+         * @return the index of the end node of the edge
+         */
+        public int getTarget(int edge) {
+                return targets[edge];
+        }
+
+        /**
+         * 
+         * @param edge
+         * @return the weight of the edge, 1 if no weight field is set
+         */
+        public double getWeight(int edge) {
+                return weights == null ? 1 : weights[edge];
+        }
+
+        /**
+         * 
+         * @param edge
+         * @return the value of the id field of the edge or its row index
+         */
+        public int getEdgeId(int edge) {
+                return edgeIds == null ? edge : edgeIds[edge];
+        }
+
+        /**
+         * 
+         * @param node
+         * @return the id of the node in the edges table
+         */
+        public int getNodeId(int node) {
+                return nodeIds[node];
+        }
+
+        /**
+         * 
+         * @param nodeId
+         * @return the index of the node with this id or -1 if the graph does
+         * not contain it
+         */
+        public int getNodeIndex(int nodeId) {
+                int index = Arrays.binarySearch(nodeIds, nodeId);
+                return index < 0 ? -1 : index;
+        }
+
+        /**
+         * 
+         * @return the edges table, null if the graph is built from arrays
+         */
+        public DataSet getDataSet() {
+                return dataSet;
+        }
+
+        /**
+         * 
+         * @return the progress monitor
+         */
+        public ProgressMonitor getProgressMonitor() {
+                return pm;
+        }
+}
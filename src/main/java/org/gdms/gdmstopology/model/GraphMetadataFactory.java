@@ -116,4 +116,182 @@ public final class GraphMetadataFactory {
                         new String[]{GraphSchema.ID, "count", GraphSchema.SUM});
                 return md;
         }
+
+        /**
+         * Metadata for the edges removed when a graph is cleaned.
+         * @return 
+         */
+        public static Metadata createRemovedEdgesMetadata() {
+                return new DefaultMetadata(
+                        new Type[]{TypeFactory.createType(Type.GEOMETRY), TypeFactory.createType(Type.INT),
+                                TypeFactory.createType(Type.STRING)},
+                        new String[]{"the_geom", GraphSchema.ID, GraphSchema.TYPE});
+        }
+
+        /**
+         * Create the metadata of the edges of a planar graph.
+         * @return 
+         */
+        public static Metadata createPlanarEdgesMetadata() {
+                return new DefaultMetadata(new Type[]{
+                                TypeFactory.createType(Type.GEOMETRY,
+                                new Constraint[]{new GeometryDimensionConstraint(1)}),
+                                TypeFactory.createType(Type.INT), TypeFactory.createType(Type.INT), TypeFactory.createType(Type.INT), TypeFactory.createType(Type.INT), TypeFactory.createType(Type.INT)}, new String[]{
+                                "the_geom", GraphSchema.ID, GraphSchema.START_NODE, GraphSchema.END_NODE, GraphSchema.RIGHT_FACE, GraphSchema.LEFT_FACE});
+        }
+
+        /**
+         * Create the metadata of the polygons of a planar graph.
+         * @return 
+         */
+        public static Metadata createPolygonsMetadata() {
+                return new DefaultMetadata(new Type[]{
+                                TypeFactory.createType(Type.POLYGON),
+                                TypeFactory.createType(Type.INT)}, new String[]{"the_geom",
+                                GraphSchema.ID});
+        }
+
+        /**
+         * Create the metadata of the table that links the edges of a graph
+         * to the rows of the input table.
+         * @return 
+         */
+        public static Metadata createEdgeSourcesMetadata() {
+                return new DefaultMetadata(new Type[]{
+                                TypeFactory.createType(Type.INT),
+                                TypeFactory.createType(Type.INT)}, new String[]{GraphSchema.EDGE_ID,
+                                GraphSchema.ROW_ID});
+        }
+
+        /**
+         * Create the metadata of the component of each node.
+         * @return 
+         */
+        public static Metadata createNodeComponentsMetadata() {
+                return new DefaultMetadata(new Type[]{
+                                TypeFactory.createType(Type.INT),
+                                TypeFactory.createType(Type.INT),
+                                TypeFactory.createType(Type.INT),
+                                TypeFactory.createType(Type.INT)}, new String[]{GraphSchema.ID,
+                                GraphSchema.COMPONENT_ID, GraphSchema.COMPONENT_SIZE, GraphSchema.COMPONENT_EDGES});
+        }
+
+        /**
+         * Create the metadata of the component of each edge.
+         * @return 
+         */
+        public static Metadata createEdgeComponentsMetadata() {
+                return new DefaultMetadata(new Type[]{
+                                TypeFactory.createType(Type.INT),
+                                TypeFactory.createType(Type.INT),
+                                TypeFactory.createType(Type.INT)}, new String[]{GraphSchema.ID,
+                                GraphSchema.COMPONENT_ID, GraphSchema.COMPONENT_SIZE});
+        }
+
+        /**
+         * Create the metadata of the betweenness of the nodes or of the edges.
+         * @return 
+         */
+        public static Metadata createBetweennessMetadata() {
+                return new DefaultMetadata(new Type[]{
+                                TypeFactory.createType(Type.INT),
+                                TypeFactory.createType(Type.DOUBLE)}, new String[]{GraphSchema.ID,
+                                GraphSchema.BETWEENNESS});
+        }
+
+        /**
+         * Create the metadata of the closeness of the nodes.
+         * @return 
+         */
+        public static Metadata createClosenessMetadata() {
+                return new DefaultMetadata(new Type[]{
+                                TypeFactory.createType(Type.INT),
+                                TypeFactory.createType(Type.INT),
+                                TypeFactory.createType(Type.DOUBLE),
+                                TypeFactory.createType(Type.DOUBLE)}, new String[]{GraphSchema.ID,
+                                GraphSchema.REACHED, GraphSchema.CLOSENESS, GraphSchema.HARMONIC_CLOSENESS});
+        }
+
+        /**
+         * Create the metadata of the distances between the nodes.
+         * @return 
+         */
+        public static Metadata createAllPairsDistancesMetadata() {
+                return new DefaultMetadata(new Type[]{
+                                TypeFactory.createType(Type.INT),
+                                TypeFactory.createType(Type.INT),
+                                TypeFactory.createType(Type.DOUBLE)}, new String[]{GraphSchema.SOURCE_NODE,
+                                GraphSchema.TARGET_NODE, GraphSchema.DISTANCE});
+        }
+
+        /**
+         * Create the metadata of the edges of a spanning tree.
+         * @return 
+         */
+        public static Metadata createSpanningTreeMetadata() {
+                return new DefaultMetadata(
+                        new Type[]{TypeFactory.createType(Type.GEOMETRY), TypeFactory.createType(Type.INT),
+                                TypeFactory.createType(Type.DOUBLE)},
+                        new String[]{"the_geom", GraphSchema.ID, GraphSchema.WEIGHT});
+        }
+
+        /**
+         * Create the metadata of the bridges of a graph.
+         * @return 
+         */
+        public static Metadata createBridgesMetadata() {
+                return new DefaultMetadata(
+                        new Type[]{TypeFactory.createType(Type.GEOMETRY), TypeFactory.createType(Type.INT)},
+                        new String[]{"the_geom", GraphSchema.ID});
+        }
+
+        /**
+         * Create the metadata of the articulation points of a graph.
+         * @return 
+         */
+        public static Metadata createArticulationPointsMetadata() {
+                return new DefaultMetadata(
+                        new Type[]{TypeFactory.createType(Type.INT)},
+                        new String[]{GraphSchema.ID});
+        }
+
+        /**
+         * Create the metadata of the statistics of the components of a graph.
+         * @return 
+         */
+        public static Metadata createComponentStatisticsMetadata() {
+                return new DefaultMetadata(
+                        new Type[]{TypeFactory.createType(Type.INT), TypeFactory.createType(Type.INT),
+                                TypeFactory.createType(Type.INT), TypeFactory.createType(Type.DOUBLE),
+                                TypeFactory.createType(Type.INT), TypeFactory.createType(Type.INT),
+                                TypeFactory.createType(Type.STRING)},
+                        new String[]{GraphSchema.COMPONENT_ID, GraphSchema.NODE_COUNT, GraphSchema.EDGE_COUNT,
+                                GraphSchema.DENSITY, GraphSchema.DIAMETER, GraphSchema.DEGENERACY,
+                                GraphSchema.DEGREE_HISTOGRAM});
+        }
+
+        /**
+         * Create the metadata of the statistics of the nodes of a graph.
+         * @return 
+         */
+        public static Metadata createNodeStatisticsMetadata() {
+                return new DefaultMetadata(
+                        new Type[]{TypeFactory.createType(Type.INT), TypeFactory.createType(Type.INT),
+                                TypeFactory.createType(Type.INT), TypeFactory.createType(Type.INT)},
+                        new String[]{GraphSchema.ID, GraphSchema.COMPONENT_ID, GraphSchema.DEGREE,
+                                GraphSchema.CORE_NUMBER});
+        }
+
+        /**
+         * Create the metadata of the flow of the edges of a graph.
+         * @return 
+         */
+        public static Metadata createMaximumFlowMetadata() {
+                return new DefaultMetadata(
+                        new Type[]{TypeFactory.createType(Type.GEOMETRY), TypeFactory.createType(Type.INT),
+                                TypeFactory.createType(Type.DOUBLE), TypeFactory.createType(Type.DOUBLE),
+                                TypeFactory.createType(Type.BOOLEAN)},
+                        new String[]{"the_geom", GraphSchema.ID, GraphSchema.CAPACITY, GraphSchema.FLOW,
+                                GraphSchema.MIN_CUT});
+        }
 }
@@ -47,6 +47,29 @@ public final class GraphSchema {
         public static final String SOURCE_NODE = "source";
         public static final String TARGET_NODE = "target";
         public static final String DISTANCE = "distance";
+        public static final String LENGTH_3D = "length_3d";
+        public static final String SLOPE = "slope";
+        public static final String TYPE = "type";
+        public static final String EDGE_ID = "edge_id";
+        public static final String ROW_ID = "row_id";
+        public static final String COMPONENT_ID = "component_id";
+        public static final String COMPONENT_SIZE = "component_size";
+        public static final String COMPONENT_EDGES = "component_edges";
+        public static final String BETWEENNESS = "betweenness";
+        public static final String REACHED = "reached";
+        public static final String CLOSENESS = "closeness";
+        public static final String HARMONIC_CLOSENESS = "harmonic";
+        public static final String NODE_COUNT = "node_count";
+        public static final String EDGE_COUNT = "edge_count";
+        public static final String DENSITY = "density";
+        public static final String DIAMETER = "diameter";
+        public static final String DEGENERACY = "degeneracy";
+        public static final String DEGREE_HISTOGRAM = "degree_histogram";
+        public static final String DEGREE = "degree";
+        public static final String CORE_NUMBER = "core_number";
+        public static final String CAPACITY = "capacity";
+        public static final String FLOW = "flow";
+        public static final String MIN_CUT = "min_cut";
 
         //Constants used in the functions to specify the type of graph
         public static int DIRECT = 1;
@@ -0,0 +1,328 @@
+/**
+ * GDMS-Topology  is a library dedicated to graph analysis. It is based on the JGraphT
+ * library available at <http://www.jgrapht.org/>. It enables computing and processing
+ * large graphs using spatial and alphanumeric indexes.
+ *
+ * This version is developed at French IRSTV institut as part of the
+ * EvalPDU project, funded by the French Agence Nationale de la Recherche
+ * (ANR) under contract ANR-08-VILL-0005-01 and GEBD project
+ * funded by the French Ministery of Ecology and Sustainable Development.
+ *
+ * GDMS-Topology  is distributed under GPL 3 license. It is produced by the "Atelier SIG"
+ * team of the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2009-2012 IRSTV (FR CNRS 2488)
+ *
+ * GDMS-Topology is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * GDMS-Topology is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * GDMS-Topology. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://wwwc.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.gdmstopology.process;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.gdms.data.values.Value;
+import org.gdms.data.values.ValueFactory;
+import org.gdms.driver.DiskBufferDriver;
+import org.gdms.driver.DriverException;
+import org.gdms.gdmstopology.model.ArrayGraph;
+import org.gdms.gdmstopology.model.GraphMetadataFactory;
+import org.orbisgis.progress.ProgressMonitor;
+
+/**
+ * Computes the distances between all the nodes of a graph, tile by tile.
+ *
+ * The sources are split in tiles of consecutive nodes. Each tile is written in
+ * its own GDMS file (source, target, distance) of the output directory. A
+ * tile is first written in a temporary file and renamed once it is complete,
+ * so the files that exist are the checkpoints of the job : when it is run
+ * again on the same graph with the same tile size, after a cancel or a
+ * crash, the tiles already written are skipped.
+ *
+ * The graph of the tiles is identified by a fingerprint saved in the file
+ * distances.properties of the directory : the number of nodes and of edges,
+ * the type of graph, the cost field, the radius and the tile size. The job
+ * refuses to resume in a directory whose fingerprint is different, so the
+ * tiles of two graphs are never mixed.
+ *
+ * The graph is loaded once and shared by the threads, each one taking the
+ * next tile to compute with its own {@link ShortestPathSearch}.
+ *
+ * @author Erwan Bocher
+ */
+public class AllPairsDistances {
+
+        public static final String FINGERPRINT_FILE = "distances.properties";
+        private final ArrayGraph graph;
+        private final ProgressMonitor pm;
+        private int threadCount = Runtime.getRuntime().availableProcessors();
+        private int tileSize = 1000;
+        private double radius = Double.POSITIVE_INFINITY;
+
+        /**
+         * 
+         * @param graph a graph whose adjacency is built
+         * @param pm 
+         */
+        public AllPairsDistances(ArrayGraph graph, ProgressMonitor pm) {
+                this.graph = graph;
+                this.pm = pm;
+        }
+
+        /**
+         * Set the number of threads.
+         * @param threadCount 
+         */
+        public void setThreadCount(int threadCount) {
+                this.threadCount = threadCount;
+        }
+
+        /**
+         * Set the number of sources of a tile.
+         * @param tileSize at least 1
+         */
+        public void setTileSize(int tileSize) {
+                if (tileSize < 1) {
+                        throw new IllegalArgumentException("The size of a tile must be at least 1");
+                }
+                this.tileSize = tileSize;
+        }
+
+        /**
+         * 
+         * @return the number of sources of a tile
+         */
+        public int getTileSize() {
+                return tileSize;
+        }
+
+        /**
+         * Set the maximum distance written.
+         * @param radius 
+         */
+        public void setRadius(double radius) {
+                this.radius = radius;
+        }
+
+        /**
+         * 
+         * @return the number of tiles
+         */
+        public int getTileCount() {
+                return (graph.getNodeCount() + tileSize - 1) / tileSize;
+        }
+
+        /**
+         * 
+         * @param directory
+         * @param tile
+         * @return the file of a complete tile
+         */
+        public File getTileFile(File directory, int tile) {
+                return new File(directory, "distances_" + tileSize + "_" + tile + ".gdms");
+        }
+
+        private File getPartialTileFile(File directory, int tile) {
+                return new File(directory, "distances_" + tileSize + "_" + tile + "_part.gdms");
+        }
+
+        /**
+         * Compute the tiles that are not in the directory yet.
+         * @param directory
+         * @return the number of tiles computed by this run
+         * @throws DriverException if the computation has been cancelled. The
+         * complete tiles are kept, so the next run resumes from them.
+         */
+        public int compute(final File directory) throws DriverException {
+                if (!directory.isDirectory() && !directory.mkdirs()) {
+                        throw new DriverException("Cannot create the directory " + directory);
+                }
+                checkFingerprint(directory);
+                final List<Integer> tiles = new ArrayList<Integer>();
+                for (int tile = 0; tile < getTileCount(); tile++) {
+                        if (!getTileFile(directory, tile).exists()) {
+                                tiles.add(tile);
+                        }
+                }
+                if (tiles.isEmpty()) {
+                        return 0;
+                }
+                final AtomicInteger nextTile = new AtomicInteger();
+                final AtomicInteger computed = new AtomicInteger();
+                final AtomicBoolean cancelled = new AtomicBoolean();
+                int workers = Math.max(1, Math.min(threadCount, tiles.size()));
+                pm.startTask("Compute the distances", 100);
+                ExecutorService executor = Executors.newFixedThreadPool(workers);
+                try {
+                        List<Future<Object>> futures = new ArrayList<Future<Object>>(workers);
+                        for (int w = 0; w < workers; w++) {
+                                futures.add(executor.submit(new Callable<Object>() {
+
+                                        @Override
+                                        public Object call() throws DriverException {
+                                                ShortestPathSearch search = new ShortestPathSearch(graph, false);
+                                                int next;
+                                                while (!cancelled.get() && (next = nextTile.getAndIncrement()) < tiles.size()) {
+                                                        if (computeTile(search, directory, tiles.get(next), cancelled)) {
+                                                                computed.incrementAndGet();
+                                                        }
+                                                }
+                                                return null;
+                                        }
+                                }));
+                        }
+                        for (Future<Object> future : futures) {
+                                while (true) {
+                                        try {
+                                                future.get(100, TimeUnit.MILLISECONDS);
+                                                break;
+                                        } catch (TimeoutException e) {
+                                                if (pm.isCancelled()) {
+                                                        cancelled.set(true);
+                                                } else {
+                                                        pm.progressTo(100 * computed.get() / tiles.size());
+                                                }
+                                        }
+                                }
+                        }
+                } catch (InterruptedException e) {
+                        throw new DriverException("The computation of the distances has been interrupted", e);
+                } catch (ExecutionException e) {
+                        throw new DriverException("Cannot compute the distances", e.getCause());
+                } finally {
+                        executor.shutdownNow();
+                }
+                if (cancelled.get()) {
+                        throw new DriverException("The computation of the distances has been cancelled after "
+                                + computed.get() + " tiles");
+                }
+                pm.endTask();
+                return computed.get();
+        }
+
+        /**
+         * 
+         * @return the properties that identify the graph and the parameters
+         * of the tiles
+         */
+        Properties getFingerprint() {
+                Properties fingerprint = new Properties();
+                fingerprint.setProperty("nodes", Integer.toString(graph.getNodeCount()));
+                fingerprint.setProperty("edges", Integer.toString(graph.getEdgeCount()));
+                fingerprint.setProperty("type", Integer.toString(graph.getGraphType()));
+                String costField = graph.getWeightFieldName();
+                fingerprint.setProperty("cost", costField == null ? "" : costField);
+                fingerprint.setProperty("radius", Double.toString(radius));
+                fingerprint.setProperty("tileSize", Integer.toString(tileSize));
+                return fingerprint;
+        }
+
+        /**
+         * Save the fingerprint in a new directory, or check that the tiles of
+         * the directory have been computed with the same graph and parameters.
+         * @param directory
+         * @throws DriverException if the directory contains the tiles of
+         * another graph or tiles without a fingerprint
+         */
+        private void checkFingerprint(File directory) throws DriverException {
+                Properties fingerprint = getFingerprint();
+                File file = new File(directory, FINGERPRINT_FILE);
+                try {
+                        if (file.exists()) {
+                                Properties saved = new Properties();
+                                InputStream in = new FileInputStream(file);
+                                try {
+                                        saved.load(in);
+                                } finally {
+                                        in.close();
+                                }
+                                if (!saved.equals(fingerprint)) {
+                                        throw new DriverException("The directory " + directory
+                                                + " contains the distances of another graph or of other parameters : "
+                                                + saved + " instead of " + fingerprint);
+                                }
+                        } else {
+                                String[] names = directory.list();
+                                if (names != null) {
+                                        for (String name : names) {
+                                                if (name.startsWith("distances_") && name.endsWith(".gdms")) {
+                                                        throw new DriverException("The directory " + directory
+                                                                + " contains distances without a fingerprint");
+                                                }
+                                        }
+                                }
+                                OutputStream out = new FileOutputStream(file);
+                                try {
+                                        fingerprint.store(out, "All pairs distances");
+                                } finally {
+                                        out.close();
+                                }
+                        }
+                } catch (IOException e) {
+                        throw new DriverException("Cannot read or write the fingerprint " + file, e);
+                }
+        }
+
+        /**
+         * Compute the distances from the sources of a tile.
+         * @return false if the tile has been cancelled
+         */
+        private boolean computeTile(ShortestPathSearch search, File directory, int tile,
+                AtomicBoolean cancelled) throws DriverException {
+                File partialFile = getPartialTileFile(directory, tile);
+                partialFile.delete();
+                DiskBufferDriver driver = new DiskBufferDriver(partialFile, GraphMetadataFactory.createAllPairsDistancesMetadata());
+                int end = Math.min((tile + 1) * tileSize, graph.getNodeCount());
+                boolean complete = true;
+                for (int source = tile * tileSize; source < end; source++) {
+                        if (cancelled.get()) {
+                                complete = false;
+                                break;
+                        }
+                        search.search(source, radius);
+                        Value sourceId = ValueFactory.createValue(graph.getNodeId(source));
+                        // the first settled node is the source
+                        for (int i = 1; i < search.getSettledCount(); i++) {
+                                int target = search.getSettledNode(i);
+                                driver.addValues(new Value[]{sourceId, ValueFactory.createValue(graph.getNodeId(target)),
+                                                ValueFactory.createValue(search.getDistance(target))});
+                        }
+                }
+                driver.writingFinished();
+                if (!complete) {
+                        partialFile.delete();
+                        return false;
+                }
+                if (!partialFile.renameTo(getTileFile(directory, tile))) {
+                        throw new DriverException("Cannot write the tile " + getTileFile(directory, tile));
+                }
+                return true;
+        }
+}
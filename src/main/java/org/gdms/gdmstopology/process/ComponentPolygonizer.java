@@ -0,0 +1,327 @@
+/**
+ * GDMS-Topology  is a library dedicated to graph analysis. It is based on the JGraphT
+ * library available at <http://www.jgrapht.org/>. It enables computing and processing
+ * large graphs using spatial and alphanumeric indexes.
+ *
+ * This version is developed at French IRSTV institut as part of the
+ * EvalPDU project, funded by the French Agence Nationale de la Recherche
+ * (ANR) under contract ANR-08-VILL-0005-01 and GEBD project
+ * funded by the French Ministery of Ecology and Sustainable Development.
+ *
+ * GDMS-Topology  is distributed under GPL 3 license. It is produced by the "Atelier SIG"
+ * team of the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2009-2012 IRSTV (FR CNRS 2488)
+ *
+ * GDMS-Topology is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * GDMS-Topology is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * GDMS-Topology. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://wwwc.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.gdmstopology.process;
+
+import com.vividsolutions.jts.algorithm.CGAlgorithms;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import com.vividsolutions.jts.operation.polygonize.Polygonizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.gdms.driver.DriverException;
+import org.gdms.gdmstopology.utils.UnionFind;
+import org.orbisgis.progress.ProgressMonitor;
+
+/**
+ * Polygonizes the edges of a planar graph by connected component.
+ *
+ * The faces of two connected components are independent, so each component
+ * is polygonized on its own, in parallel. A component that lies inside a face
+ * of another component (an island) is then added as a hole to the smallest
+ * face that contains it.
+ * The faces of a single component may already have holes, when a cut edge
+ * links an outer ring to an inner ring, so the containing face is tested with
+ * its holes and keeps them.
+ *
+ * The faces are returned normalized, ordered by component (following the
+ * smallest edge index of the component) then in the order of the polygonizer,
+ * so their ids do not depend on the number of threads.
+ *
+ * @author Erwan Bocher
+ */
+public class ComponentPolygonizer {
+
+        private final List<? extends Geometry> edges;
+        private final ProgressMonitor pm;
+        private GeometryFactory gf = new GeometryFactory();
+        private int threadCount = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * 
+         * @param edges the noded and merged edges of the graph
+         * @param pm 
+         */
+        public ComponentPolygonizer(List<? extends Geometry> edges, ProgressMonitor pm) {
+                this.edges = edges;
+                this.pm = pm;
+        }
+
+        /**
+         * Set the number of threads used to polygonize the components.
+         * @param threadCount 
+         */
+        public void setThreadCount(int threadCount) {
+                this.threadCount = threadCount;
+        }
+
+        /**
+         * 
+         * @return the number of threads used to polygonize the components.
+         */
+        public int getThreadCount() {
+                return threadCount;
+        }
+
+        /**
+         * Polygonize the edges.
+         * @return the normalized faces
+         * @throws DriverException if the polygonization has been cancelled
+         */
+        public List<Geometry> getPolygons() throws DriverException {
+                pm.startTask("Polygonize the components", 100);
+                List<List<Geometry>> components = getComponents();
+                List<ComponentFaces> results = new ArrayList<ComponentFaces>(components.size());
+                ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threadCount));
+                try {
+                        List<Future<ComponentFaces>> futures = new ArrayList<Future<ComponentFaces>>(components.size());
+                        for (final List<Geometry> component : components) {
+                                futures.add(executor.submit(new Callable<ComponentFaces>() {
+
+                                        @Override
+                                        public ComponentFaces call() {
+                                                return polygonize(component);
+                                        }
+                                }));
+                        }
+                        for (int i = 0; i < futures.size(); i++) {
+                                if (pm.isCancelled()) {
+                                        throw new DriverException("The polygonization has been cancelled");
+                                }
+                                pm.progressTo(100 * i / futures.size());
+                                results.add(futures.get(i).get());
+                        }
+                } catch (InterruptedException e) {
+                        throw new DriverException("The polygonization has been interrupted", e);
+                } catch (ExecutionException e) {
+                        throw new DriverException("Cannot polygonize the edges", e.getCause());
+                } finally {
+                        executor.shutdownNow();
+                }
+                List<Geometry> faces = addIslands(results);
+                pm.endTask();
+                return faces;
+        }
+
+        /**
+         * Group the edges by connected component.
+         * The components are ordered by their smallest edge index and the
+         * components that cannot make a face (a single open edge) are not returned.
+         * @return 
+         */
+        private List<List<Geometry>> getComponents() {
+                UnionFind unionFind = new UnionFind(edges.size());
+                Map<Coordinate, Integer> edgeByNode = new HashMap<Coordinate, Integer>();
+                for (int i = 0; i < edges.size(); i++) {
+                        Coordinate[] cc = edges.get(i).getCoordinates();
+                        addNode(cc[0], i, edgeByNode, unionFind);
+                        addNode(cc[cc.length - 1], i, edgeByNode, unionFind);
+                }
+
+                Map<Integer, List<Geometry>> componentByRoot = new HashMap<Integer, List<Geometry>>();
+                List<List<Geometry>> components = new ArrayList<List<Geometry>>();
+                for (int i = 0; i < edges.size(); i++) {
+                        int root = unionFind.find(i);
+                        List<Geometry> component = componentByRoot.get(root);
+                        if (component == null) {
+                                component = new ArrayList<Geometry>(unionFind.getSetSize(root));
+                                componentByRoot.put(root, component);
+                                components.add(component);
+                        }
+                        component.add(edges.get(i));
+                }
+                List<List<Geometry>> result = new ArrayList<List<Geometry>>(components.size());
+                for (List<Geometry> component : components) {
+                        if (component.size() > 1 || ((LineString) component.get(0)).isClosed()) {
+                                result.add(component);
+                        }
+                }
+                return result;
+        }
+
+        private static void addNode(Coordinate node, int edge, Map<Coordinate, Integer> edgeByNode, UnionFind unionFind) {
+                Integer other = edgeByNode.get(node);
+                if (other == null) {
+                        edgeByNode.put(node, edge);
+                } else {
+                        unionFind.union(other, edge);
+                }
+        }
+
+        /**
+         * Polygonize one component and compute its outer boundary, used when
+         * the component is an island.
+         * The faces of the edges are found with local face ids, starting at 1.
+         * @param component
+         * @return 
+         */
+        static ComponentFaces polygonize(List<? extends Geometry> component) {
+                ComponentFaces result = new ComponentFaces();
+                Polygonizer polygonizer = new Polygonizer();
+                polygonizer.add(component);
+                for (Iterator it = polygonizer.getPolygons().iterator(); it.hasNext();) {
+                        Polygon face = (Polygon) it.next();
+                        face.normalize();
+                        result.faces.add(face);
+                }
+                EdgeFaceLocator faceLocator = new EdgeFaceLocator(component, result.faces);
+                faceLocator.locate();
+                result.rightFaces = faceLocator.getRightFaces();
+                result.leftFaces = faceLocator.getLeftFaces();
+                if (!result.faces.isEmpty()) {
+                        //The edges with a face on one side only are the outer boundary
+                        Polygonizer boundaryPolygonizer = new Polygonizer();
+                        for (int i = 0; i < component.size(); i++) {
+                                if ((result.rightFaces[i] == -1) != (result.leftFaces[i] == -1)) {
+                                        boundaryPolygonizer.add(component.get(i));
+                                }
+                        }
+                        for (Iterator it = boundaryPolygonizer.getPolygons().iterator(); it.hasNext();) {
+                                result.outerRings.add((LinearRing) ((Polygon) it.next()).getExteriorRing());
+                        }
+                }
+                return result;
+        }
+
+        /**
+         * Add each island as holes to the smallest face of another component
+         * that contains it.
+         * A face contains the island when its shell contains a point of the
+         * island and none of its holes does.
+         * @param components
+         * @return 
+         */
+        private List<Geometry> addIslands(List<ComponentFaces> components) {
+                List<Geometry> faces = new ArrayList<Geometry>();
+                List<Integer> faceComponents = new ArrayList<Integer>();
+                STRtree faceIndex = new STRtree();
+                for (int c = 0; c < components.size(); c++) {
+                        for (Polygon face : components.get(c).faces) {
+                                faceIndex.insert(face.getEnvelopeInternal(), faces.size());
+                                faces.add(face);
+                                faceComponents.add(c);
+                        }
+                }
+                if (components.size() < 2) {
+                        return faces;
+                }
+
+                Map<Integer, List<LinearRing>> holesByFace = new HashMap<Integer, List<LinearRing>>();
+                for (int c = 0; c < components.size(); c++) {
+                        List<LinearRing> outerRings = components.get(c).outerRings;
+                        if (outerRings.isEmpty()) {
+                                continue;
+                        }
+                        Coordinate point = outerRings.get(0).getCoordinateN(0);
+                        int container = -1;
+                        double containerArea = Double.MAX_VALUE;
+                        List candidates = faceIndex.query(new Envelope(point));
+                        for (Iterator it = candidates.iterator(); it.hasNext();) {
+                                int faceIndexId = (Integer) it.next();
+                                if (faceComponents.get(faceIndexId) != c) {
+                                        Polygon face = (Polygon) faces.get(faceIndexId);
+                                        if (contains(face, point)) {
+                                                double area = face.getArea();
+                                                if (area < containerArea || (area == containerArea && faceIndexId < container)) {
+                                                        container = faceIndexId;
+                                                        containerArea = area;
+                                                }
+                                        }
+                                }
+                        }
+                        if (container != -1) {
+                                List<LinearRing> holes = holesByFace.get(container);
+                                if (holes == null) {
+                                        holes = new ArrayList<LinearRing>();
+                                        holesByFace.put(container, holes);
+                                }
+                                holes.addAll(outerRings);
+                        }
+                }
+
+                for (Map.Entry<Integer, List<LinearRing>> entry : holesByFace.entrySet()) {
+                        Polygon face = (Polygon) faces.get(entry.getKey());
+                        List<LinearRing> holes = entry.getValue();
+                        for (int i = 0; i < face.getNumInteriorRing(); i++) {
+                                holes.add((LinearRing) face.getInteriorRingN(i));
+                        }
+                        Polygon faceWithHoles = gf.createPolygon((LinearRing) face.getExteriorRing(),
+                                holes.toArray(new LinearRing[holes.size()]));
+                        faceWithHoles.normalize();
+                        faces.set(entry.getKey(), faceWithHoles);
+                }
+                return faces;
+        }
+
+        /**
+         * Return true if the point is inside the shell of the face and outside
+         * its holes.
+         * @param face
+         * @param point
+         * @return 
+         */
+        static boolean contains(Polygon face, Coordinate point) {
+                if (!CGAlgorithms.isPointInRing(point, face.getExteriorRing().getCoordinates())) {
+                        return false;
+                }
+                for (int i = 0; i < face.getNumInteriorRing(); i++) {
+                        if (CGAlgorithms.isPointInRing(point, face.getInteriorRingN(i).getCoordinates())) {
+                                return false;
+                        }
+                }
+                return true;
+        }
+
+        /**
+         * The faces of a component, the local faces of its edges and the
+         * exterior rings of its outer boundary.
+         */
+        static final class ComponentFaces {
+
+                final List<Polygon> faces = new ArrayList<Polygon>();
+                final List<LinearRing> outerRings = new ArrayList<LinearRing>();
+                int[] rightFaces;
+                int[] leftFaces;
+        }
+}
@@ -0,0 +1,277 @@
+/**
+ * GDMS-Topology  is a library dedicated to graph analysis. It is based on the JGraphT
+ * library available at <http://www.jgrapht.org/>. It enables computing and processing
+ * large graphs using spatial and alphanumeric indexes.
+ *
+ * This version is developed at French IRSTV institut as part of the
+ * EvalPDU project, funded by the French Agence Nationale de la Recherche
+ * (ANR) under contract ANR-08-VILL-0005-01 and GEBD project
+ * funded by the French Ministery of Ecology and Sustainable Development.
+ *
+ * GDMS-Topology  is distributed under GPL 3 license. It is produced by the "Atelier SIG"
+ * team of the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2009-2012 IRSTV (FR CNRS 2488)
+ *
+ * GDMS-Topology is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * GDMS-Topology is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * GDMS-Topology. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://wwwc.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.gdmstopology.process;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.gdms.data.DataSourceFactory;
+import org.gdms.data.indexes.rtree.DiskRTree;
+import org.gdms.data.schema.DefaultMetadata;
+import org.gdms.data.types.Type;
+import org.gdms.data.types.TypeFactory;
+import org.gdms.data.values.Value;
+import org.gdms.data.values.ValueFactory;
+import org.gdms.driver.DiskBufferDriver;
+import org.gdms.driver.DriverException;
+import org.orbisgis.progress.ProgressMonitor;
+
+/**
+ * Nodes a set of lines larger than the memory using a regular grid of tiles.
+ *
+ * The lines are written in a temporary gdms file as they are added, and their
+ * envelopes are indexed with a disk RTree. Only the tile of each line is kept
+ * in memory, in an int array. The tiles are then read back one at a time with
+ * the lines of their halo and noded as in the {@link TiledLineNoder}, so the
+ * pieces of two neighbouring tiles share the same nodes. The memory used is
+ * bounded by the lines of the tiles being noded.
+ *
+ * The tiles are read by the calling thread and noded in parallel.
+ *
+ * @author Erwan Bocher
+ */
+public class DiskTiledLineNoder {
+
+        private final DataSourceFactory dsf;
+        private final ProgressMonitor pm;
+        private GeometryFactory gf = new GeometryFactory();
+        private int linesPerTile = 10000;
+        private int threadCount = Runtime.getRuntime().availableProcessors();
+        private DiskBufferDriver linesDriver;
+        private String treePath;
+        private DiskRTree tree;
+        private Envelope fullExtent = new Envelope();
+        private int lineCount = 0;
+
+        /**
+         * Create an empty noder. The lines are added with {@link #add(Geometry, int)}.
+         * @param dsf used to create the temporary files
+         * @param pm
+         * @throws DriverException 
+         */
+        public DiskTiledLineNoder(DataSourceFactory dsf, ProgressMonitor pm) throws DriverException {
+                this.dsf = dsf;
+                this.pm = pm;
+                linesDriver = new DiskBufferDriver(dsf.getResultFile("gdms"),
+                        new DefaultMetadata(new Type[]{TypeFactory.createType(Type.GEOMETRY), TypeFactory.createType(Type.INT)},
+                        new String[]{"the_geom", "row"}));
+                treePath = dsf.getTempFile();
+                tree = new DiskRTree();
+                try {
+                        tree.newIndex(new File(treePath));
+                } catch (IOException e) {
+                        throw new DriverException("Cannot create the index of the lines", e);
+                }
+        }
+
+        /**
+         * Add the linear components of a geometry read at the given row.
+         * The noded lines keep the sorted rows of all the lines they come from,
+         * as an int array in their user data.
+         * @param geom
+         * @param row the row of the geometry, -1 if it is unknown
+         * @throws DriverException 
+         */
+        public void add(Geometry geom, int row) throws DriverException {
+                Value rowValue = ValueFactory.createValue(row);
+                for (Iterator it = LineNoder.toLines(geom).iterator(); it.hasNext();) {
+                        LineString line = (LineString) it.next();
+                        Envelope env = line.getEnvelopeInternal();
+                        fullExtent.expandToInclude(env);
+                        try {
+                                tree.insert(env, lineCount);
+                        } catch (IOException e) {
+                                throw new DriverException("Cannot index the lines", e);
+                        }
+                        linesDriver.addValues(new Value[]{ValueFactory.createValue(line), rowValue});
+                        lineCount++;
+                }
+        }
+
+        /**
+         * 
+         * @return the number of lines to node.
+         */
+        public int size() {
+                return lineCount;
+        }
+
+        /**
+         * Set the mean number of lines owned by a tile.
+         * @param linesPerTile 
+         */
+        public void setLinesPerTile(int linesPerTile) {
+                this.linesPerTile = linesPerTile;
+        }
+
+        /**
+         * Set the number of threads used to node the tiles.
+         * @param threadCount 
+         */
+        public void setThreadCount(int threadCount) {
+                this.threadCount = threadCount;
+        }
+
+        /**
+         * Node the lines and give the noded lines to the sink, tile after tile,
+         * as soon as they are ready. The temporary files are deleted at the end.
+         * @param sink
+         * @throws DriverException 
+         */
+        public void node(TiledLineNoder.LineSink sink) throws DriverException {
+                linesDriver.writingFinished();
+                linesDriver.open();
+                try {
+                        if (lineCount > 0) {
+                                nodeTiles(sink);
+                        }
+                } finally {
+                        linesDriver.close();
+                        linesDriver.getFile().delete();
+                        new File(treePath).delete();
+                }
+        }
+
+        private void nodeTiles(TiledLineNoder.LineSink sink) throws DriverException {
+                pm.startTask("Node the lines", 100);
+                //The lines sorted by tile
+                int side = (int) Math.max(1, Math.ceil(Math.sqrt(lineCount / (double) Math.max(1, linesPerTile))));
+                int[] tileOfLine = new int[lineCount];
+                int[] tileStarts = new int[side * side + 1];
+                for (int i = 0; i < lineCount; i++) {
+                        Envelope env = linesDriver.getGeometry(i, 0).getEnvelopeInternal();
+                        int col = TiledLineNoder.getCell((env.getMinX() + env.getMaxX()) / 2, fullExtent.getMinX(), fullExtent.getWidth(), side);
+                        int row = TiledLineNoder.getCell((env.getMinY() + env.getMaxY()) / 2, fullExtent.getMinY(), fullExtent.getHeight(), side);
+                        tileOfLine[i] = row * side + col;
+                        tileStarts[tileOfLine[i] + 1]++;
+                }
+                for (int t = 0; t < side * side; t++) {
+                        tileStarts[t + 1] += tileStarts[t];
+                }
+                int[] linesByTile = new int[lineCount];
+                int[] positions = Arrays.copyOf(tileStarts, side * side);
+                for (int i = 0; i < lineCount; i++) {
+                        linesByTile[positions[tileOfLine[i]]++] = i;
+                }
+                tileOfLine = null;
+                positions = null;
+
+                int tileCount = side * side;
+                int nbThreads = Math.max(1, threadCount);
+                ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+                try {
+                        LinkedList<Future<List<LineString>>> results = new LinkedList<Future<List<LineString>>>();
+                        int submitted = 0;
+                        for (int t = 0; t < tileCount; t++) {
+                                while (submitted < tileCount && submitted < t + 2 * nbThreads) {
+                                        //The lines are read by this thread, the driver and
+                                        //the index are not shared with the workers
+                                        final int[] tile = Arrays.copyOfRange(linesByTile, tileStarts[submitted], tileStarts[submitted + 1]);
+                                        final int[] haloIndexes = getHalo(tile);
+                                        final LineString[] haloLines = new LineString[haloIndexes.length];
+                                        final int[] haloRows = new int[haloIndexes.length];
+                                        for (int i = 0; i < haloIndexes.length; i++) {
+                                                haloLines[i] = (LineString) linesDriver.getGeometry(haloIndexes[i], 0);
+                                                haloRows[i] = linesDriver.getFieldValue(haloIndexes[i], 1).getAsInt();
+                                        }
+                                        results.add(executor.submit(new Callable<List<LineString>>() {
+
+                                                @Override
+                                                public List<LineString> call() {
+                                                        return TiledLineNoder.nodeTile(gf, tile, haloIndexes, haloLines, haloRows);
+                                                }
+                                        }));
+                                        submitted++;
+                                }
+                                if (pm.isCancelled()) {
+                                        throw new DriverException("The noding of the lines has been cancelled");
+                                }
+                                pm.progressTo(100 * t / tileCount);
+                                for (LineString piece : results.removeFirst().get()) {
+                                        sink.add(piece);
+                                }
+                        }
+                } catch (InterruptedException e) {
+                        throw new DriverException("The noding of the lines has been interrupted", e);
+                } catch (ExecutionException e) {
+                        throw new DriverException("Cannot node the lines", e.getCause());
+                } finally {
+                        executor.shutdownNow();
+                }
+                pm.endTask();
+        }
+
+        /**
+         * Find the lines whose envelope intersects the envelope of a line of
+         * the tile.
+         * @param tile
+         * @return the sorted indexes of the lines
+         * @throws DriverException 
+         */
+        private int[] getHalo(int[] tile) throws DriverException {
+                int[] halo = new int[Math.max(16, tile.length)];
+                int haloSize = 0;
+                try {
+                        for (int lineIndex : tile) {
+                                Envelope env = linesDriver.getGeometry(lineIndex, 0).getEnvelopeInternal();
+                                int[] candidates = tree.query(env);
+                                if (haloSize + candidates.length > halo.length) {
+                                        halo = Arrays.copyOf(halo, Math.max(2 * halo.length, haloSize + candidates.length));
+                                }
+                                System.arraycopy(candidates, 0, halo, haloSize, candidates.length);
+                                haloSize += candidates.length;
+                        }
+                } catch (IOException e) {
+                        throw new DriverException("Cannot query the index of the lines", e);
+                }
+                //The lines are always given to the noder in the same order
+                Arrays.sort(halo, 0, haloSize);
+                int k = 0;
+                for (int i = 0; i < haloSize; i++) {
+                        if (k == 0 || halo[i] != halo[k - 1]) {
+                                halo[k++] = halo[i];
+                        }
+                }
+                return Arrays.copyOf(halo, k);
+        }
+}
@@ -0,0 +1,211 @@
+/**
+ * GDMS-Topology  is a library dedicated to graph analysis. It is based on the JGraphT
+ * library available at <http://www.jgrapht.org/>. It enables computing and processing
+ * large graphs using spatial and alphanumeric indexes.
+ *
+ * This version is developed at French IRSTV institut as part of the
+ * EvalPDU project, funded by the French Agence Nationale de la Recherche
+ * (ANR) under contract ANR-08-VILL-0005-01 and GEBD project
+ * funded by the French Ministery of Ecology and Sustainable Development.
+ *
+ * GDMS-Topology  is distributed under GPL 3 license. It is produced by the "Atelier SIG"
+ * team of the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2009-2012 IRSTV (FR CNRS 2488)
+ *
+ * GDMS-Topology is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * GDMS-Topology is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * GDMS-Topology. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://wwwc.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.gdmstopology.process;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the faces on the right and on the left of the edges of a planar graph.
+ *
+ * The faces must be normalized polygons built from the edges, so the shells
+ * are clockwise and the holes counter-clockwise : the face is always on the
+ * right of its rings. Each edge is identified by its first segment. When a ring
+ * goes through this segment in the direction of the edge the face is on the
+ * right of the edge, otherwise it is on its left.
+ *
+ * The edges that are not on the boundary of a face (dangles and cut edges)
+ * are located with a spatial index of the prepared faces : they get the face
+ * that covers them on both sides.
+ *
+ * @author Erwan Bocher
+ */
+public class EdgeFaceLocator {
+
+        private final List<? extends Geometry> edges;
+        private final List<? extends Geometry> faces;
+        private int[] rightFaces;
+        private int[] leftFaces;
+
+        /**
+         * 
+         * @param edges the edges of the planar graph
+         * @param faces the normalized faces of the planar graph
+         */
+        public EdgeFaceLocator(List<? extends Geometry> edges, List<? extends Geometry> faces) {
+                this.edges = edges;
+                this.faces = faces;
+        }
+
+        /**
+         * The face of index i in the list of faces gets the id i + 1.
+         * The edges without a face get -1.
+         */
+        public void locate() {
+                rightFaces = new int[edges.size()];
+                leftFaces = new int[edges.size()];
+                Arrays.fill(rightFaces, -1);
+                Arrays.fill(leftFaces, -1);
+
+                Map<Segment, Integer> firstSegments = new HashMap<Segment, Integer>(2 * edges.size());
+                for (int i = 0; i < edges.size(); i++) {
+                        Coordinate[] cc = edges.get(i).getCoordinates();
+                        for (int j = 0; j < cc.length - 1; j++) {
+                                if (!cc[j].equals2D(cc[j + 1])) {
+                                        firstSegments.put(new Segment(cc[j], cc[j + 1]), i);
+                                        break;
+                                }
+                        }
+                }
+
+                Segment probe = new Segment();
+                for (int i = 0; i < faces.size(); i++) {
+                        Polygon face = (Polygon) faces.get(i);
+                        locateRing(face.getExteriorRing(), i + 1, firstSegments, probe);
+                        for (int k = 0; k < face.getNumInteriorRing(); k++) {
+                                locateRing(face.getInteriorRingN(k), i + 1, firstSegments, probe);
+                        }
+                }
+
+                STRtree faceIndex = null;
+                for (int i = 0; i < edges.size(); i++) {
+                        if (rightFaces[i] == -1 && leftFaces[i] == -1) {
+                                if (faceIndex == null) {
+                                        faceIndex = createFaceIndex();
+                                }
+                                Geometry edge = edges.get(i);
+                                List candidates = faceIndex.query(edge.getEnvelopeInternal());
+                                for (Iterator it = candidates.iterator(); it.hasNext();) {
+                                        PreparedGeometry face = (PreparedGeometry) it.next();
+                                        if (face.covers(edge)) {
+                                                int faceId = (Integer) face.getGeometry().getUserData();
+                                                rightFaces[i] = faceId;
+                                                leftFaces[i] = faceId;
+                                                break;
+                                        }
+                                }
+                        }
+                }
+        }
+
+        private void locateRing(LineString ring, int faceId, Map<Segment, Integer> firstSegments, Segment probe) {
+                Coordinate[] cc = ring.getCoordinates();
+                for (int j = 0; j < cc.length - 1; j++) {
+                        probe.set(cc[j], cc[j + 1]);
+                        Integer edge = firstSegments.get(probe);
+                        if (edge != null) {
+                                rightFaces[edge] = faceId;
+                        }
+                        probe.set(cc[j + 1], cc[j]);
+                        edge = firstSegments.get(probe);
+                        if (edge != null) {
+                                leftFaces[edge] = faceId;
+                        }
+                }
+        }
+
+        private STRtree createFaceIndex() {
+                STRtree faceIndex = new STRtree();
+                for (int i = 0; i < faces.size(); i++) {
+                        Geometry face = faces.get(i);
+                        Geometry copy = (Geometry) face.clone();
+                        copy.setUserData(i + 1);
+                        faceIndex.insert(face.getEnvelopeInternal(), PreparedGeometryFactory.prepare(copy));
+                }
+                return faceIndex;
+        }
+
+        /**
+         * 
+         * @return the id of the face on the right of each edge
+         */
+        public int[] getRightFaces() {
+                return rightFaces;
+        }
+
+        /**
+         * 
+         * @return the id of the face on the left of each edge
+         */
+        public int[] getLeftFaces() {
+                return leftFaces;
+        }
+
+        /**
+         * A directed segment.
+         */
+        private static final class Segment {
+
+                private double x0, y0, x1, y1;
+
+                Segment() {
+                }
+
+                Segment(Coordinate p0, Coordinate p1) {
+                        set(p0, p1);
+                }
+
+                void set(Coordinate p0, Coordinate p1) {
+                        x0 = p0.x;
+                        y0 = p0.y;
+                        x1 = p1.x;
+                        y1 = p1.y;
+                }
+
+                @Override
+                public int hashCode() {
+                        long h = Double.doubleToLongBits(x0);
+                        h = 31 * h + Double.doubleToLongBits(y0);
+                        h = 31 * h + Double.doubleToLongBits(x1);
+                        h = 31 * h + Double.doubleToLongBits(y1);
+                        return (int) (h ^ (h >>> 32));
+                }
+
+                @Override
+                public boolean equals(Object obj) {
+                        if (!(obj instanceof Segment)) {
+                                return false;
+                        }
+                        Segment other = (Segment) obj;
+                        return x0 == other.x0 && y0 == other.y0 && x1 == other.x1 && y1 == other.y1;
+                }
+        }
+}
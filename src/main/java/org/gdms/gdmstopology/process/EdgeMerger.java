@@ -0,0 +1,221 @@
+/**
+ * GDMS-Topology  is a library dedicated to graph analysis. It is based on the JGraphT
+ * library available at <http://www.jgrapht.org/>. It enables computing and processing
+ * large graphs using spatial and alphanumeric indexes.
+ *
+ * This version is developed at French IRSTV institut as part of the
+ * EvalPDU project, funded by the French Agence Nationale de la Recherche
+ * (ANR) under contract ANR-08-VILL-0005-01 and GEBD project
+ * funded by the French Ministery of Ecology and Sustainable Development.
+ *
+ * GDMS-Topology  is distributed under GPL 3 license. It is produced by the "Atelier SIG"
+ * team of the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2009-2012 IRSTV (FR CNRS 2488)
+ *
+ * GDMS-Topology is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * GDMS-Topology is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * GDMS-Topology. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://wwwc.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.gdmstopology.process;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateList;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges noded lines between the nodes of degree other than 2, like the JTS
+ * LineMerger, and keeps the rows the merged lines come from.
+ *
+ * The rows of a noded line are read as a sorted int array in its user data.
+ * The merged line gets the sorted and distinct rows of all its pieces in its
+ * user data, so the attributes of the source can be found by row instead of
+ * by a spatial join.
+ *
+ * The merged lines follow the order of their first piece. A chain starts at
+ * a node of degree other than 2, the rings made only of nodes of degree 2
+ * start at their first piece.
+ *
+ * @author Erwan Bocher
+ */
+public class EdgeMerger {
+
+        private final GeometryFactory gf = new GeometryFactory();
+        private final List<LineString> pieces = new ArrayList<LineString>();
+
+        /**
+         * Add the noded lines to merge.
+         * @param lines 
+         */
+        public void add(Collection<? extends Geometry> lines) {
+                for (Geometry line : lines) {
+                        add(line);
+                }
+        }
+
+        /**
+         * Add a noded line to merge.
+         * @param line 
+         */
+        public void add(Geometry line) {
+                if (line.getNumPoints() > 1) {
+                        pieces.add((LineString) line);
+                }
+        }
+
+        /**
+         * 
+         * @return the merged lines with their rows in the user data
+         */
+        public List<LineString> getMergedLineStrings() {
+                int n = pieces.size();
+                //Number the nodes
+                Map<Coordinate, Integer> nodeIds = new HashMap<Coordinate, Integer>();
+                int[] startNodes = new int[n];
+                int[] endNodes = new int[n];
+                for (int i = 0; i < n; i++) {
+                        LineString piece = pieces.get(i);
+                        startNodes[i] = getNodeId(nodeIds, piece.getCoordinateN(0));
+                        endNodes[i] = getNodeId(nodeIds, piece.getCoordinateN(piece.getNumPoints() - 1));
+                }
+                int nodeCount = nodeIds.size();
+                nodeIds = null;
+
+                //The piece ends of each node, stored in compressed rows.
+                //An end is 2 * piece for the start, 2 * piece + 1 for the end.
+                int[] offsets = new int[nodeCount + 1];
+                for (int i = 0; i < n; i++) {
+                        offsets[startNodes[i] + 1]++;
+                        offsets[endNodes[i] + 1]++;
+                }
+                for (int i = 0; i < nodeCount; i++) {
+                        offsets[i + 1] += offsets[i];
+                }
+                int[] ends = new int[2 * n];
+                int[] positions = Arrays.copyOf(offsets, nodeCount);
+                for (int i = 0; i < n; i++) {
+                        ends[positions[startNodes[i]]++] = 2 * i;
+                        ends[positions[endNodes[i]]++] = 2 * i + 1;
+                }
+
+                boolean[] visited = new boolean[n];
+                List<LineString> merged = new ArrayList<LineString>();
+                for (int i = 0; i < n; i++) {
+                        if (!visited[i]) {
+                                int startDegree = offsets[startNodes[i] + 1] - offsets[startNodes[i]];
+                                int endDegree = offsets[endNodes[i] + 1] - offsets[endNodes[i]];
+                                if (startDegree != 2) {
+                                        merged.add(walk(i, true, startNodes, endNodes, offsets, ends, visited));
+                                } else if (endDegree != 2) {
+                                        merged.add(walk(i, false, startNodes, endNodes, offsets, ends, visited));
+                                }
+                        }
+                }
+                //The remaining pieces are on rings of nodes of degree 2
+                for (int i = 0; i < n; i++) {
+                        if (!visited[i]) {
+                                merged.add(walk(i, true, startNodes, endNodes, offsets, ends, visited));
+                        }
+                }
+                return merged;
+        }
+
+        private static int getNodeId(Map<Coordinate, Integer> nodeIds, Coordinate c) {
+                Integer id = nodeIds.get(c);
+                if (id == null) {
+                        id = nodeIds.size();
+                        nodeIds.put(c, id);
+                }
+                return id;
+        }
+
+        /**
+         * Merge the pieces from the given piece through the nodes of degree 2.
+         * @param first the first piece
+         * @param forward true if the first piece is read from its start
+         * @return the merged line
+         */
+        private LineString walk(int first, boolean forward, int[] startNodes, int[] endNodes,
+                int[] offsets, int[] ends, boolean[] visited) {
+                CoordinateList coords = new CoordinateList();
+                List<int[]> rows = new ArrayList<int[]>();
+                int firstNode = forward ? startNodes[first] : endNodes[first];
+                int piece = first;
+                boolean pieceForward = forward;
+                while (true) {
+                        visited[piece] = true;
+                        LineString line = pieces.get(piece);
+                        coords.add(pieceForward ? line.getCoordinates() : reverse(line.getCoordinates()), false);
+                        if (line.getUserData() instanceof int[]) {
+                                rows.add((int[]) line.getUserData());
+                        }
+                        int node = pieceForward ? endNodes[piece] : startNodes[piece];
+                        int currentEnd = pieceForward ? 2 * piece + 1 : 2 * piece;
+                        if (node == firstNode || offsets[node + 1] - offsets[node] != 2) {
+                                break;
+                        }
+                        int nextEnd = ends[offsets[node]] == currentEnd ? ends[offsets[node] + 1] : ends[offsets[node]];
+                        piece = nextEnd / 2;
+                        if (visited[piece]) {
+                                break;
+                        }
+                        pieceForward = nextEnd % 2 == 0;
+                }
+                LineString mergedLine = gf.createLineString(coords.toCoordinateArray());
+                mergedLine.setUserData(mergeRows(rows));
+                return mergedLine;
+        }
+
+        private static Coordinate[] reverse(Coordinate[] coords) {
+                Coordinate[] reversed = new Coordinate[coords.length];
+                for (int i = 0; i < coords.length; i++) {
+                        reversed[i] = coords[coords.length - 1 - i];
+                }
+                return reversed;
+        }
+
+        /**
+         * 
+         * @param rows
+         * @return the sorted and distinct rows
+         */
+        private static int[] mergeRows(List<int[]> rows) {
+                int count = 0;
+                for (int[] r : rows) {
+                        count += r.length;
+                }
+                int[] merged = new int[count];
+                int k = 0;
+                for (int[] r : rows) {
+                        System.arraycopy(r, 0, merged, k, r.length);
+                        k += r.length;
+                }
+                Arrays.sort(merged);
+                k = 0;
+                for (int i = 0; i < merged.length; i++) {
+                        if (k == 0 || merged[i] != merged[k - 1]) {
+                                merged[k++] = merged[i];
+                        }
+                }
+                return Arrays.copyOf(merged, k);
+        }
+}
@@ -0,0 +1,469 @@
+/**
+ * GDMS-Topology  is a library dedicated to graph analysis. It is based on the JGraphT
+ * library available at <http://www.jgrapht.org/>. It enables computing and processing
+ * large graphs using spatial and alphanumeric indexes.
+ *
+ * This version is developed at French IRSTV institut as part of the
+ * EvalPDU project, funded by the French Agence Nationale de la Recherche
+ * (ANR) under contract ANR-08-VILL-0005-01 and GEBD project
+ * funded by the French Ministery of Ecology and Sustainable Development.
+ *
+ * GDMS-Topology  is distributed under GPL 3 license. It is produced by the "Atelier SIG"
+ * team of the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2009-2012 IRSTV (FR CNRS 2488)
+ *
+ * GDMS-Topology is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * GDMS-Topology is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * GDMS-Topology. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://wwwc.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.gdmstopology.process;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.gdms.data.DataSourceFactory;
+import org.gdms.data.values.Value;
+import org.gdms.data.values.ValueFactory;
+import org.gdms.driver.DataSet;
+import org.gdms.driver.DiskBufferDriver;
+import org.gdms.driver.DriverException;
+import org.gdms.gdmstopology.model.ArrayGraph;
+import org.gdms.gdmstopology.model.GraphException;
+import org.gdms.gdmstopology.model.GraphMetadataFactory;
+import org.gdms.gdmstopology.model.GraphSchema;
+import org.orbisgis.progress.ProgressMonitor;
+
+/**
+ * Centrality measures computed from single source shortest paths on an
+ * {@link ArrayGraph}.
+ *
+ * The sources are split between the threads, each one reusing its own
+ * {@link ShortestPathSearch} and its own result arrays on the shared
+ * read-only graph. The sources of a thread are fixed, and the results are
+ * merged in the order of the threads, so the same thread count gives the same
+ * result. The sources can be a random sample of the nodes : the results are
+ * then scaled by nodeCount / sampleCount.
+ *
+ * @author Erwan Bocher
+ */
+public class GraphCentrality {
+
+        private final ArrayGraph graph;
+        private final ProgressMonitor pm;
+        private int threadCount = Runtime.getRuntime().availableProcessors();
+        private int sampleCount = -1;
+        private long seed = 42;
+        private double[] nodeBetweenness;
+        private double[] edgeBetweenness;
+        private int[] reachedCounts;
+        private double[] closeness;
+        private double[] harmonicCloseness;
+
+        /**
+         * 
+         * @param graph a graph whose adjacency is built
+         * @param pm 
+         */
+        public GraphCentrality(ArrayGraph graph, ProgressMonitor pm) {
+                this.graph = graph;
+                this.pm = pm;
+        }
+
+        /**
+         * Set the number of threads used to compute the shortest paths.
+         * @param threadCount 
+         */
+        public void setThreadCount(int threadCount) {
+                this.threadCount = threadCount;
+        }
+
+        /**
+         * 
+         * @return the number of threads used to compute the shortest paths
+         */
+        public int getThreadCount() {
+                return threadCount;
+        }
+
+        /**
+         * Set the number of sources drawn at random to approximate the result.
+         * All the nodes are sources if it is negative or greater than the
+         * number of nodes.
+         * @param sampleCount 
+         */
+        public void setSampleCount(int sampleCount) {
+                this.sampleCount = sampleCount;
+        }
+
+        /**
+         * Set the seed of the random sample of sources.
+         * @param seed 
+         */
+        public void setSeed(long seed) {
+                this.seed = seed;
+        }
+
+        /**
+         * Compute the betweenness of the nodes and of the edges with the
+         * Brandes algorithm.
+         * @throws DriverException 
+         */
+        public void computeBetweenness() throws DriverException {
+                final int[] sources = getSources();
+                final int workers = Math.max(1, Math.min(threadCount, sources.length));
+                final double[][] nodeResults = new double[workers][];
+                final double[][] edgeResults = new double[workers][];
+                runSearches(sources, workers, new SearchTask() {
+
+                        @Override
+                        public void run(int worker, int[] workerSources, AtomicInteger processed, AtomicBoolean cancelled) {
+                                double[] nodeValues = new double[graph.getNodeCount()];
+                                double[] edgeValues = new double[graph.getEdgeCount()];
+                                double[] dependencies = new double[graph.getNodeCount()];
+                                ShortestPathSearch search = new ShortestPathSearch(graph, true);
+                                for (int source : workerSources) {
+                                        if (cancelled.get()) {
+                                                break;
+                                        }
+                                        search.search(source, Double.POSITIVE_INFINITY);
+                                        accumulate(search, source, dependencies, nodeValues, edgeValues);
+                                        processed.incrementAndGet();
+                                }
+                                nodeResults[worker] = nodeValues;
+                                edgeResults[worker] = edgeValues;
+                        }
+                });
+
+                nodeBetweenness = new double[graph.getNodeCount()];
+                edgeBetweenness = new double[graph.getEdgeCount()];
+                for (int worker = 0; worker < workers; worker++) {
+                        if (nodeResults[worker] != null) {
+                                for (int n = 0; n < nodeBetweenness.length; n++) {
+                                        nodeBetweenness[n] += nodeResults[worker][n];
+                                }
+                                for (int e = 0; e < edgeBetweenness.length; e++) {
+                                        edgeBetweenness[e] += edgeResults[worker][e];
+                                }
+                        }
+                }
+                // Each pair is counted twice in an undirected graph
+                double scale = sources.length == 0 ? 0 : (double) graph.getNodeCount() / sources.length;
+                if (graph.getGraphType() == GraphSchema.UNDIRECT) {
+                        scale /= 2;
+                }
+                for (int n = 0; n < nodeBetweenness.length; n++) {
+                        nodeBetweenness[n] *= scale;
+                }
+                for (int e = 0; e < edgeBetweenness.length; e++) {
+                        edgeBetweenness[e] *= scale;
+                }
+        }
+
+        /**
+         * Compute the closeness of the nodes within a radius. Only the nodes
+         * reached from a node at a distance smaller than the radius are taken
+         * into account : the closeness is their number divided by the sum of
+         * their distances, the harmonic closeness is the sum of the inverse of
+         * their distances. The sample count is ignored.
+         * @param radius
+         * @throws DriverException 
+         */
+        public void computeCloseness(final double radius) throws DriverException {
+                int nodeCount = graph.getNodeCount();
+                final int[] sources = new int[nodeCount];
+                for (int i = 0; i < nodeCount; i++) {
+                        sources[i] = i;
+                }
+                final int[] counts = new int[nodeCount];
+                final double[] values = new double[nodeCount];
+                final double[] harmonicValues = new double[nodeCount];
+                // Each source is computed by one thread, so the results can be
+                // written in shared arrays
+                runSearches(sources, Math.max(1, Math.min(threadCount, nodeCount)), new SearchTask() {
+
+                        @Override
+                        public void run(int worker, int[] workerSources, AtomicInteger processed, AtomicBoolean cancelled) {
+                                ShortestPathSearch search = new ShortestPathSearch(graph, false);
+                                for (int source : workerSources) {
+                                        if (cancelled.get()) {
+                                                break;
+                                        }
+                                        search.search(source, radius);
+                                        double sum = 0;
+                                        double harmonic = 0;
+                                        for (int i = 0; i < search.getSettledCount(); i++) {
+                                                double distance = search.getDistance(search.getSettledNode(i));
+                                                if (distance > 0) {
+                                                        sum += distance;
+                                                        harmonic += 1 / distance;
+                                                }
+                                        }
+                                        int count = search.getSettledCount() - 1;
+                                        counts[source] = count;
+                                        values[source] = sum > 0 ? count / sum : 0;
+                                        harmonicValues[source] = harmonic;
+                                        processed.incrementAndGet();
+                                }
+                        }
+                });
+                reachedCounts = counts;
+                closeness = values;
+                harmonicCloseness = harmonicValues;
+        }
+
+        /**
+         * Accumulate the dependencies of the source on the nodes, from the
+         * farthest node to the source.
+         */
+        private static void accumulate(ShortestPathSearch search, int source, double[] dependencies,
+                double[] nodeValues, double[] edgeValues) {
+                for (int i = search.getSettledCount() - 1; i >= 0; i--) {
+                        int node = search.getSettledNode(i);
+                        double coefficient = (1 + dependencies[node]) / search.getPathCount(node);
+                        for (int p = search.getFirstPredecessor(node); p != -1; p = search.getNextPredecessor(p)) {
+                                int predecessor = search.getPredecessorNode(p);
+                                double dependency = search.getPathCount(predecessor) * coefficient;
+                                edgeValues[search.getPredecessorEdge(p)] += dependency;
+                                dependencies[predecessor] += dependency;
+                        }
+                        if (node != source) {
+                                nodeValues[node] += dependencies[node];
+                        }
+                }
+                for (int i = 0; i < search.getSettledCount(); i++) {
+                        dependencies[search.getSettledNode(i)] = 0;
+                }
+        }
+
+        /**
+         * 
+         * @return the sources, all the nodes or a sorted random sample
+         */
+        int[] getSources() {
+                int nodeCount = graph.getNodeCount();
+                int[] nodes = new int[nodeCount];
+                for (int i = 0; i < nodeCount; i++) {
+                        nodes[i] = i;
+                }
+                if (sampleCount < 0 || sampleCount >= nodeCount) {
+                        return nodes;
+                }
+                // Partial Fisher-Yates shuffle
+                Random random = new Random(seed);
+                for (int i = 0; i < sampleCount; i++) {
+                        int j = i + random.nextInt(nodeCount - i);
+                        int tmp = nodes[i];
+                        nodes[i] = nodes[j];
+                        nodes[j] = tmp;
+                }
+                int[] sample = Arrays.copyOf(nodes, sampleCount);
+                Arrays.sort(sample);
+                return sample;
+        }
+
+        /**
+         * The work of a thread on its sources.
+         */
+        interface SearchTask {
+
+                void run(int worker, int[] workerSources, AtomicInteger processed, AtomicBoolean cancelled);
+        }
+
+        /**
+         * Run the task of each worker on the sources i such as i % workers == worker,
+         * and follow the progress of the searches.
+         * @throws DriverException if the searches are cancelled, so partial
+         * results are never written
+         */
+        void runSearches(int[] sources, int workers, final SearchTask task) throws DriverException {
+                final AtomicInteger processed = new AtomicInteger();
+                final AtomicBoolean cancelled = new AtomicBoolean();
+                pm.startTask("Compute the shortest paths", 100);
+                ExecutorService executor = Executors.newFixedThreadPool(workers);
+                try {
+                        List<Future<Object>> futures = new ArrayList<Future<Object>>(workers);
+                        for (int w = 0; w < workers; w++) {
+                                final int worker = w;
+                                final int[] workerSources = new int[(sources.length - worker + workers - 1) / workers];
+                                for (int i = 0; i < workerSources.length; i++) {
+                                        workerSources[i] = sources[worker + i * workers];
+                                }
+                                futures.add(executor.submit(new Callable<Object>() {
+
+                                        @Override
+                                        public Object call() {
+                                                task.run(worker, workerSources, processed, cancelled);
+                                                return null;
+                                        }
+                                }));
+                        }
+                        for (Future<Object> future : futures) {
+                                while (true) {
+                                        try {
+                                                future.get(100, TimeUnit.MILLISECONDS);
+                                                break;
+                                        } catch (TimeoutException e) {
+                                                if (pm.isCancelled()) {
+                                                        cancelled.set(true);
+                                                } else if (sources.length > 0) {
+                                                        pm.progressTo((int) (100L * processed.get() / sources.length));
+                                                }
+                                        }
+                                }
+                        }
+                        if (cancelled.get()) {
+                                throw new DriverException("The computation of the shortest paths has been cancelled");
+                        }
+                } catch (InterruptedException e) {
+                        throw new DriverException("The search has been interrupted", e);
+                } catch (ExecutionException e) {
+                        throw new DriverException("Cannot compute the shortest paths", e.getCause());
+                } finally {
+                        executor.shutdownNow();
+                }
+                pm.endTask();
+        }
+
+        /**
+         * 
+         * @return the betweenness of each node
+         */
+        public double[] getNodeBetweenness() {
+                return nodeBetweenness;
+        }
+
+        /**
+         * 
+         * @return the betweenness of each edge
+         */
+        public double[] getEdgeBetweenness() {
+                return edgeBetweenness;
+        }
+
+        /**
+         * 
+         * @return the number of nodes reached from each node within the radius
+         */
+        public int[] getReachedCounts() {
+                return reachedCounts;
+        }
+
+        /**
+         * 
+         * @return the closeness of each node
+         */
+        public double[] getCloseness() {
+                return closeness;
+        }
+
+        /**
+         * 
+         * @return the harmonic closeness of each node
+         */
+        public double[] getHarmonicCloseness() {
+                return harmonicCloseness;
+        }
+
+        /**
+         * Compute the closeness of the nodes of a graph within a radius.
+         * @param dsf
+         * @param dataSet
+         * @param costField
+         * @param radius
+         * @param graphType
+         * @param pm
+         * @return a driver with one row per node
+         * @throws DriverException
+         * @throws GraphException 
+         */
+        public static DiskBufferDriver getCloseness(DataSourceFactory dsf, DataSet dataSet, String costField, double radius,
+                int graphType, ProgressMonitor pm) throws DriverException, GraphException {
+                ArrayGraph graph = new ArrayGraph(dataSet, costField, pm);
+                graph.checkWeights();
+                graph.buildAdjacency(graphType);
+                GraphCentrality centrality = new GraphCentrality(graph, pm);
+                centrality.computeCloseness(radius);
+
+                DiskBufferDriver diskBufferDriver = new DiskBufferDriver(dsf, GraphMetadataFactory.createClosenessMetadata());
+                int[] counts = centrality.getReachedCounts();
+                double[] values = centrality.getCloseness();
+                double[] harmonicValues = centrality.getHarmonicCloseness();
+                for (int n = 0; n < counts.length; n++) {
+                        diskBufferDriver.addValues(new Value[]{ValueFactory.createValue(graph.getNodeId(n)),
+                                        ValueFactory.createValue(counts[n]),
+                                        ValueFactory.createValue(values[n]),
+                                        ValueFactory.createValue(harmonicValues[n])});
+                }
+                diskBufferDriver.writingFinished();
+                diskBufferDriver.close();
+                return diskBufferDriver;
+        }
+
+        /**
+         * Compute the betweenness of the nodes and of the edges of a graph
+         * and register them in the tables output_name.nodes and
+         * output_name.edges. The nodes are identified by their id in the
+         * start_node and end_node fields, the edges by their id field or by
+         * their row index if there is no id field.
+         * @param dsf
+         * @param dataSet
+         * @param costField
+         * @param graphType
+         * @param sampleCount
+         * @param outputName
+         * @param pm
+         * @throws DriverException
+         * @throws GraphException 
+         */
+        public static void getBetweenness(DataSourceFactory dsf, DataSet dataSet, String costField, int graphType,
+                int sampleCount, String outputName, ProgressMonitor pm) throws DriverException, GraphException {
+                ArrayGraph graph = new ArrayGraph(dataSet, costField, pm);
+                graph.checkWeights();
+                graph.buildAdjacency(graphType);
+                GraphCentrality centrality = new GraphCentrality(graph, pm);
+                centrality.setSampleCount(sampleCount);
+                centrality.computeBetweenness();
+
+                DiskBufferDriver nodesDriver = new DiskBufferDriver(dsf.getResultFile("gdms"), GraphMetadataFactory.createBetweennessMetadata());
+                double[] nodeValues = centrality.getNodeBetweenness();
+                for (int n = 0; n < nodeValues.length; n++) {
+                        nodesDriver.addValues(new Value[]{ValueFactory.createValue(graph.getNodeId(n)),
+                                        ValueFactory.createValue(nodeValues[n])});
+                }
+                nodesDriver.writingFinished();
+                DiskBufferDriver edgesDriver = new DiskBufferDriver(dsf.getResultFile("gdms"), GraphMetadataFactory.createBetweennessMetadata());
+                double[] edgeValues = centrality.getEdgeBetweenness();
+                for (int e = 0; e < edgeValues.length; e++) {
+                        edgesDriver.addValues(new Value[]{ValueFactory.createValue(graph.getEdgeId(e)),
+                                        ValueFactory.createValue(edgeValues[e])});
+                }
+                edgesDriver.writingFinished();
+
+                String ds_nodes_name = dsf.getSourceManager().getUniqueName(outputName + ".nodes");
+                dsf.getSourceManager().register(ds_nodes_name, nodesDriver.getFile());
+                String ds_edges_name = dsf.getSourceManager().getUniqueName(outputName + ".edges");
+                dsf.getSourceManager().register(ds_edges_name, edgesDriver.getFile());
+        }
+}
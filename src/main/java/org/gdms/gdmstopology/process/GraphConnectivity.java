@@ -0,0 +1,390 @@
+/**
+ * GDMS-Topology  is a library dedicated to graph analysis. It is based on the JGraphT
+ * library available at <http://www.jgrapht.org/>. It enables computing and processing
+ * large graphs using spatial and alphanumeric indexes.
+ *
+ * This version is developed at French IRSTV institut as part of the
+ * EvalPDU project, funded by the French Agence Nationale de la Recherche
+ * (ANR) under contract ANR-08-VILL-0005-01 and GEBD project
+ * funded by the French Ministery of Ecology and Sustainable Development.
+ *
+ * GDMS-Topology  is distributed under GPL 3 license. It is produced by the "Atelier SIG"
+ * team of the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2009-2012 IRSTV (FR CNRS 2488)
+ *
+ * GDMS-Topology is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * GDMS-Topology is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * GDMS-Topology. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://wwwc.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.gdmstopology.process;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import org.gdms.data.DataSourceFactory;
+import org.gdms.data.schema.MetadataUtilities;
+import org.gdms.data.values.Value;
+import org.gdms.data.values.ValueFactory;
+import org.gdms.driver.DataSet;
+import org.gdms.driver.DiskBufferDriver;
+import org.gdms.driver.DriverException;
+import org.gdms.gdmstopology.model.ArrayGraph;
+import org.gdms.gdmstopology.model.GraphException;
+import org.gdms.gdmstopology.model.GraphMetadataFactory;
+import org.gdms.gdmstopology.model.GraphSchema;
+import org.orbisgis.progress.ProgressMonitor;
+
+/**
+ * Connectivity algorithms on an {@link ArrayGraph}.
+ * The graph traversals use explicit stacks stored in int arrays instead of
+ * recursion, so a long chain of nodes cannot overflow the thread stack.
+ *
+ * @author Erwan Bocher
+ */
+public final class GraphConnectivity {
+
+        private GraphConnectivity() {
+        }
+
+        /**
+         * Compute the strongly connected components of a graph.
+         * @param dsf
+         * @param dataSet
+         * @param graphType
+         * @param pm
+         * @return a driver with the component of each node
+         * @throws DriverException
+         * @throws GraphException 
+         */
+        public static DiskBufferDriver getStronglyConnectedComponents(DataSourceFactory dsf, DataSet dataSet, int graphType,
+                ProgressMonitor pm) throws DriverException, GraphException {
+                ArrayGraph graph = new ArrayGraph(dataSet, pm);
+                graph.buildAdjacency(graphType);
+                int[] nodeComponents = new int[graph.getNodeCount()];
+                int componentCount = findStronglyConnectedComponents(graph, nodeComponents);
+                int[] sizes = new int[componentCount];
+                for (int n = 0; n < nodeComponents.length; n++) {
+                        sizes[nodeComponents[n]]++;
+                }
+                //The edges whose nodes are in the same component
+                int[] edgeCounts = new int[componentCount];
+                for (int i = 0; i < graph.getEdgeCount(); i++) {
+                        int component = nodeComponents[graph.getSource(i)];
+                        if (component == nodeComponents[graph.getTarget(i)]) {
+                                edgeCounts[component]++;
+                        }
+                }
+
+                DiskBufferDriver diskBufferDriver = new DiskBufferDriver(dsf, GraphMetadataFactory.createNodeComponentsMetadata());
+                pm.startTask("Write the components", 100);
+                for (int n = 0; n < nodeComponents.length; n++) {
+                        if (n >= 100 && n % 100 == 0) {
+                                if (pm.isCancelled()) {
+                                        throw new DriverException("The writing of the components has been cancelled");
+                                } else {
+                                        pm.progressTo((int) (100L * n / nodeComponents.length));
+                                }
+                        }
+                        int component = nodeComponents[n];
+                        diskBufferDriver.addValues(new Value[]{ValueFactory.createValue(graph.getNodeId(n)),
+                                        ValueFactory.createValue(component + 1),
+                                        ValueFactory.createValue(sizes[component]),
+                                        ValueFactory.createValue(edgeCounts[component])});
+                }
+                pm.endTask();
+                diskBufferDriver.writingFinished();
+                diskBufferDriver.close();
+                return diskBufferDriver;
+        }
+
+        /**
+         * Compute the connected components of a graph, the direction of the
+         * edges being ignored.
+         * @param dsf
+         * @param dataSet
+         * @param pm
+         * @return a driver with the id of each edge, its component and the
+         * number of edges of this component
+         * @throws DriverException
+         */
+        public static DiskBufferDriver getConnectedComponents(DataSourceFactory dsf, DataSet dataSet,
+                ProgressMonitor pm) throws DriverException {
+                ArrayGraph graph = new ArrayGraph(dataSet, pm);
+                int[] edgeComponents = new int[graph.getEdgeCount()];
+                int componentCount = GraphUtilities.findComponents(graph, edgeComponents);
+                int[] sizes = new int[componentCount];
+                for (int i = 0; i < edgeComponents.length; i++) {
+                        sizes[edgeComponents[i]]++;
+                }
+
+                DiskBufferDriver diskBufferDriver = new DiskBufferDriver(dsf, GraphMetadataFactory.createEdgeComponentsMetadata());
+                pm.startTask("Write the components", 100);
+                for (int i = 0; i < edgeComponents.length; i++) {
+                        if (i >= 100 && i % 100 == 0) {
+                                if (pm.isCancelled()) {
+                                        throw new DriverException("The writing of the components has been cancelled");
+                                } else {
+                                        pm.progressTo((int) (100L * i / edgeComponents.length));
+                                }
+                        }
+                        int component = edgeComponents[i];
+                        diskBufferDriver.addValues(new Value[]{ValueFactory.createValue(graph.getEdgeId(i)),
+                                        ValueFactory.createValue(component + 1),
+                                        ValueFactory.createValue(sizes[component])});
+                }
+                pm.endTask();
+                diskBufferDriver.writingFinished();
+                diskBufferDriver.close();
+                return diskBufferDriver;
+        }
+
+        /**
+         * Find the strongly connected components with the Tarjan algorithm.
+         * The adjacency of the graph must be built. For an undirected graph,
+         * they are the connected components.
+         * @param graph
+         * @param nodeComponents filled with the component of each node, the
+         * components being numbered from 0 in the order they are completed
+         * @return the number of components
+         * @throws DriverException if the search has been cancelled
+         */
+        public static int findStronglyConnectedComponents(ArrayGraph graph, int[] nodeComponents) throws DriverException {
+                int nodeCount = graph.getNodeCount();
+                int[] index = new int[nodeCount];
+                int[] low = new int[nodeCount];
+                boolean[] onStack = new boolean[nodeCount];
+                Arrays.fill(index, -1);
+                //The Tarjan stack
+                int[] stack = new int[nodeCount];
+                int stackSize = 0;
+                //The explicit call stack : a node and the position of its next edge
+                int[] callNodes = new int[nodeCount];
+                int[] callPositions = new int[nodeCount];
+                int callSize = 0;
+                int counter = 0;
+                int componentCount = 0;
+                ProgressMonitor pm = graph.getProgressMonitor();
+                pm.startTask("Find the strongly connected components", 100);
+                for (int root = 0; root < nodeCount; root++) {
+                        if (root >= 100 && root % 100 == 0) {
+                                if (pm.isCancelled()) {
+                                        throw new DriverException("The search of the strongly connected components has been cancelled");
+                                } else {
+                                        pm.progressTo((int) (100L * root / nodeCount));
+                                }
+                        }
+                        if (index[root] != -1) {
+                                continue;
+                        }
+                        index[root] = counter;
+                        low[root] = counter;
+                        counter++;
+                        stack[stackSize++] = root;
+                        onStack[root] = true;
+                        callNodes[callSize] = root;
+                        callPositions[callSize] = graph.getFirstEdge(root);
+                        callSize++;
+                        while (callSize > 0) {
+                                int node = callNodes[callSize - 1];
+                                int position = callPositions[callSize - 1];
+                                if (position < graph.getLastEdge(node)) {
+                                        callPositions[callSize - 1]++;
+                                        int next = graph.getOpposite(graph.getAdjacentEdge(position), node);
+                                        if (index[next] == -1) {
+                                                index[next] = counter;
+                                                low[next] = counter;
+                                                counter++;
+                                                stack[stackSize++] = next;
+                                                onStack[next] = true;
+                                                callNodes[callSize] = next;
+                                                callPositions[callSize] = graph.getFirstEdge(next);
+                                                callSize++;
+                                        } else if (onStack[next]) {
+                                                low[node] = Math.min(low[node], index[next]);
+                                        }
+                                } else {
+                                        callSize--;
+                                        if (low[node] == index[node]) {
+                                                int member;
+                                                do {
+                                                        member = stack[--stackSize];
+                                                        onStack[member] = false;
+                                                        nodeComponents[member] = componentCount;
+                                                } while (member != node);
+                                                componentCount++;
+                                        }
+                                        if (callSize > 0) {
+                                                int parent = callNodes[callSize - 1];
+                                                low[parent] = Math.min(low[parent], low[node]);
+                                        }
+                                }
+                        }
+                }
+                pm.endTask();
+                return componentCount;
+        }
+
+        /**
+         * Find the bridges of a graph, the edges whose removal disconnects
+         * it. The direction of the edges is ignored.
+         * @param dsf
+         * @param dataSet
+         * @param pm
+         * @return a driver with the geometry and the id of the bridges, in
+         * the order of the rows
+         * @throws DriverException
+         * @throws GraphException 
+         */
+        public static DiskBufferDriver getBridges(DataSourceFactory dsf, DataSet dataSet, ProgressMonitor pm) throws DriverException, GraphException {
+                ArrayGraph graph = new ArrayGraph(dataSet, pm);
+                graph.buildAdjacency(GraphSchema.UNDIRECT);
+                boolean[] bridges = new boolean[graph.getEdgeCount()];
+                findBridges(graph, bridges, new boolean[graph.getNodeCount()]);
+
+                int geomIndex = MetadataUtilities.getSpatialFieldIndex(dataSet.getMetadata());
+                DiskBufferDriver diskBufferDriver = new DiskBufferDriver(dsf, GraphMetadataFactory.createBridgesMetadata());
+                Iterator<Value[]> it = dataSet.iterator();
+                int row = 0;
+                while (it.hasNext() && row < bridges.length) {
+                        Value[] values = it.next();
+                        if (bridges[row]) {
+                                diskBufferDriver.addValues(new Value[]{
+                                                geomIndex == -1 ? ValueFactory.createNullValue() : values[geomIndex],
+                                                ValueFactory.createValue(graph.getEdgeId(row))});
+                        }
+                        row++;
+                }
+                diskBufferDriver.writingFinished();
+                diskBufferDriver.close();
+                return diskBufferDriver;
+        }
+
+        /**
+         * Find the articulation points of a graph, the nodes whose removal
+         * disconnects it. The direction of the edges is ignored.
+         * @param dsf
+         * @param dataSet
+         * @param pm
+         * @return a driver with the id of the articulation points
+         * @throws DriverException
+         * @throws GraphException 
+         */
+        public static DiskBufferDriver getArticulationPoints(DataSourceFactory dsf, DataSet dataSet, ProgressMonitor pm) throws DriverException, GraphException {
+                ArrayGraph graph = new ArrayGraph(dataSet, pm);
+                graph.buildAdjacency(GraphSchema.UNDIRECT);
+                boolean[] articulationPoints = new boolean[graph.getNodeCount()];
+                findBridges(graph, new boolean[graph.getEdgeCount()], articulationPoints);
+
+                DiskBufferDriver diskBufferDriver = new DiskBufferDriver(dsf, GraphMetadataFactory.createArticulationPointsMetadata());
+                for (int n = 0; n < articulationPoints.length; n++) {
+                        if (articulationPoints[n]) {
+                                diskBufferDriver.addValues(new Value[]{ValueFactory.createValue(graph.getNodeId(n))});
+                        }
+                }
+                diskBufferDriver.writingFinished();
+                diskBufferDriver.close();
+                return diskBufferDriver;
+        }
+
+        /**
+         * Find the bridges and the articulation points with the Hopcroft and
+         * Tarjan depth-first search. The adjacency of the graph must be built
+         * for an undirected graph. The edge used to reach a node is skipped
+         * instead of its parent node, so parallel edges are not bridges. Self
+         * loops are ignored.
+         * @param graph
+         * @param bridges set to true for the bridges
+         * @param articulationPoints set to true for the articulation points
+         * @throws DriverException if the search has been cancelled
+         */
+        public static void findBridges(ArrayGraph graph, boolean[] bridges, boolean[] articulationPoints) throws DriverException {
+                int nodeCount = graph.getNodeCount();
+                int[] discovery = new int[nodeCount];
+                int[] low = new int[nodeCount];
+                int[] parentEdges = new int[nodeCount];
+                Arrays.fill(discovery, -1);
+                //The explicit call stack : a node and the position of its next edge
+                int[] callNodes = new int[nodeCount];
+                int[] callPositions = new int[nodeCount];
+                int callSize = 0;
+                int counter = 0;
+                ProgressMonitor pm = graph.getProgressMonitor();
+                pm.startTask("Find the bridges", 100);
+                for (int root = 0; root < nodeCount; root++) {
+                        if (root >= 100 && root % 100 == 0) {
+                                if (pm.isCancelled()) {
+                                        throw new DriverException("The search of the bridges has been cancelled");
+                                } else {
+                                        pm.progressTo((int) (100L * root / nodeCount));
+                                }
+                        }
+                        if (discovery[root] != -1) {
+                                continue;
+                        }
+                        int rootChildren = 0;
+                        discovery[root] = counter;
+                        low[root] = counter;
+                        counter++;
+                        parentEdges[root] = -1;
+                        callNodes[callSize] = root;
+                        callPositions[callSize] = graph.getFirstEdge(root);
+                        callSize++;
+                        while (callSize > 0) {
+                                int node = callNodes[callSize - 1];
+                                int position = callPositions[callSize - 1];
+                                if (position < graph.getLastEdge(node)) {
+                                        callPositions[callSize - 1]++;
+                                        int edge = graph.getAdjacentEdge(position);
+                                        if (edge == parentEdges[node]) {
+                                                continue;
+                                        }
+                                        int next = graph.getOpposite(edge, node);
+                                        if (next == node) {
+                                                continue;
+                                        }
+                                        if (discovery[next] == -1) {
+                                                discovery[next] = counter;
+                                                low[next] = counter;
+                                                counter++;
+                                                parentEdges[next] = edge;
+                                                callNodes[callSize] = next;
+                                                callPositions[callSize] = graph.getFirstEdge(next);
+                                                callSize++;
+                                                if (node == root) {
+                                                        rootChildren++;
+                                                }
+                                        } else {
+                                                low[node] = Math.min(low[node], discovery[next]);
+                                        }
+                                } else {
+                                        callSize--;
+                                        if (callSize > 0) {
+                                                int parent = callNodes[callSize - 1];
+                                                low[parent] = Math.min(low[parent], low[node]);
+                                                if (low[node] > discovery[parent]) {
+                                                        bridges[parentEdges[node]] = true;
+                                                }
+                                                if (parent != root && low[node] >= discovery[parent]) {
+                                                        articulationPoints[parent] = true;
+                                                }
+                                        }
+                                }
+                        }
+                        if (rootChildren > 1) {
+                                articulationPoints[root] = true;
+                        }
+                }
+                pm.endTask();
+        }
+}
@@ -31,6 +31,7 @@
 package org.gdms.gdmstopology.process;
 
 import com.vividsolutions.jts.geom.Geometry;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -40,6 +41,7 @@ import org.gdms.data.values.ValueFactory;
 import org.gdms.driver.DataSet;
 import org.gdms.driver.DiskBufferDriver;
 import org.gdms.driver.DriverException;
+import org.gdms.gdmstopology.model.ArrayGraph;
 import org.gdms.gdmstopology.model.DWMultigraphDataSource;
 import org.gdms.gdmstopology.model.EdgeReversedGraphDataSource;
 import org.gdms.gdmstopology.model.GDMSValueGraph;
@@ -48,9 +50,10 @@ import org.gdms.gdmstopology.model.GraphException;
 import org.gdms.gdmstopology.model.GraphMetadataFactory;
 import org.gdms.gdmstopology.model.GraphSchema;
 import org.gdms.gdmstopology.model.WMultigraphDataSource;
+import org.gdms.gdmstopology.utils.UnionFind;
 import org.jgrapht.alg.ConnectivityInspector;
-import org.jgrapht.graph.Subgraph;
 import org.jgrapht.traverse.ClosestFirstIterator;
+import org.orbisgis.progress.NullProgressMonitor;
 import org.orbisgis.progress.ProgressMonitor;
 
 /**
@@ -268,30 +271,21 @@ public class GraphUtilities extends GraphAnalysis {
         }
 
         /**
-         * A method to obtain statistics on graph
+         * A method to obtain statistics on graph.
+         * The connected components do not depend on the direction of the
+         * edges, so the graph type is only checked.
          * @param dsf
          * @param dataSet
          * @param costField
+         * @param graphType
          * @param pm
          * @throws DriverException 
          */
         public static DiskBufferDriver getGraphStatistics(DataSourceFactory dsf, DataSet dataSet, String costField, int graphType, ProgressMonitor pm) throws DriverException, GraphException {
-                if (graphType == GraphSchema.DIRECT) {
-                        DWMultigraphDataSource dwMultigraphDataSource = new DWMultigraphDataSource(dsf, dataSet, pm);
-                        dwMultigraphDataSource.setWeigthFieldIndex(costField);
-                        ConnectivityInspector connectivityInspector = new ConnectivityInspector(dwMultigraphDataSource);
-                        return graphStatistics(dsf, connectivityInspector, dwMultigraphDataSource);
-                } else if (graphType == GraphSchema.UNDIRECT) {
-                        WMultigraphDataSource wMultigraphDataSource = new WMultigraphDataSource(dsf, dataSet, pm);
-                        wMultigraphDataSource.setWeigthFieldIndex(costField);
-                        ConnectivityInspector connectivityInspector = new ConnectivityInspector(wMultigraphDataSource);
-                        return graphStatistics(dsf, connectivityInspector, wMultigraphDataSource);
-                } else if (graphType == GraphSchema.DIRECT_REVERSED) {
-                        DWMultigraphDataSource dwMultigraphDataSource = new DWMultigraphDataSource(dsf, dataSet, pm);
-                        dwMultigraphDataSource.setWeigthFieldIndex(costField);
-                        EdgeReversedGraphDataSource edgeReversedGraph = new EdgeReversedGraphDataSource(dwMultigraphDataSource);
-                        ConnectivityInspector connectivityInspector = new ConnectivityInspector(edgeReversedGraph);
-                        return graphStatistics(dsf, connectivityInspector, edgeReversedGraph);
+                if (graphType == GraphSchema.DIRECT || graphType == GraphSchema.UNDIRECT
+                        || graphType == GraphSchema.DIRECT_REVERSED) {
+                        ArrayGraph graph = new ArrayGraph(dataSet, costField, pm);
+                        return graphStatistics(dsf, graph, pm);
                 } else {
                         throw new GraphException("Only 3 type of graphs are allowed."
                                 + "1 if the path is computing using a directed graph.\n"
@@ -302,31 +296,114 @@ public class GraphUtilities extends GraphAnalysis {
 
         /**
          * Compute statistics on the graph
-         * Extract each subgraph, count the number of edges and sum the weigth
+         * The connected components are found with a union-find on the nodes of
+         * the edges, then the edges are counted and their weights are summed
+         * per component in one scan. The components are numbered by their
+         * first edge.
          * @param dsf
-         * @param connectivityInspector
          * @param graph
+         * @param pm
          * @return
          * @throws DriverException 
          */
-        public static DiskBufferDriver graphStatistics(DataSourceFactory dsf, ConnectivityInspector connectivityInspector, GDMSValueGraph<Integer, GraphEdge> graph) throws DriverException {
-                DiskBufferDriver diskBufferDriver = new DiskBufferDriver(dsf, GraphMetadataFactory.createSubGraphStatsMetadata());
+        public static DiskBufferDriver graphStatistics(DataSourceFactory dsf, ArrayGraph graph, ProgressMonitor pm) throws DriverException {
+                int[] edgeComponents = new int[graph.getEdgeCount()];
+                int componentCount = findComponents(graph, edgeComponents);
+                return writeStatistics(dsf, graph, edgeComponents, componentCount, pm);
+        }
 
-                List connectedSets = connectivityInspector.connectedSets();
-                for (int j = 0; j < connectedSets.size(); j++) {
-                        Subgraph sg = new Subgraph(graph, (Set) connectedSets.get(j), null);                        
-                        Set<GraphEdge> edges = sg.edgeSet();
-                        double subGraphLength = 0;
-                        double subGraph_edges_count = edges.size();
-                        for (GraphEdge graphEdge : edges) {
-                                subGraphLength += graphEdge.getWeight();
+        /**
+         * Compute statistics on a JGraphT view of the graph.
+         * The edges of the graph are read once in an {@link ArrayGraph}.
+         * @param dsf
+         * @param connectivityInspector not used anymore
+         * @param graph
+         * @return
+         * @throws DriverException 
+         * @deprecated use {@link #graphStatistics(DataSourceFactory, ArrayGraph, ProgressMonitor)},
+         * which does not need a JGraphT view of the graph
+         */
+        @Deprecated
+        public static DiskBufferDriver graphStatistics(DataSourceFactory dsf, ConnectivityInspector connectivityInspector,
+                GDMSValueGraph<Integer, GraphEdge> graph) throws DriverException {
+                Set<GraphEdge> edges = graph.edgeSet();
+                int edgeCount = edges.size();
+                int[] sources = new int[edgeCount];
+                int[] targets = new int[edgeCount];
+                double[] weights = new double[edgeCount];
+                int count = 0;
+                for (GraphEdge edge : edges) {
+                        sources[count] = edge.getSource();
+                        targets[count] = edge.getTarget();
+                        weights[count] = edge.getWeight();
+                        count++;
+                }
+                ProgressMonitor pm = new NullProgressMonitor();
+                return graphStatistics(dsf, new ArrayGraph(sources, targets, weights, pm), pm);
+        }
+
+        /**
+         * Count the edges and sum their weights per component.
+         * @param dsf
+         * @param graph
+         * @param edgeComponents the component of each edge
+         * @param componentCount
+         * @param pm
+         * @return
+         * @throws DriverException if the writing has been cancelled
+         */
+        private static DiskBufferDriver writeStatistics(DataSourceFactory dsf, ArrayGraph graph, int[] edgeComponents,
+                int componentCount, ProgressMonitor pm) throws DriverException {
+                int[] counts = new int[componentCount];
+                double[] sums = new double[componentCount];
+                for (int i = 0; i < edgeComponents.length; i++) {
+                        counts[edgeComponents[i]]++;
+                        sums[edgeComponents[i]] += graph.getWeight(i);
+                }
+
+                DiskBufferDriver diskBufferDriver = new DiskBufferDriver(dsf, GraphMetadataFactory.createSubGraphStatsMetadata());
+                pm.startTask("Write the statistics", 100);
+                for (int j = 0; j < componentCount; j++) {
+                        if (j >= 100 && j % 100 == 0) {
+                                if (pm.isCancelled()) {
+                                        throw new DriverException("The writing of the statistics has been cancelled");
+                                } else {
+                                        pm.progressTo((int) (100L * j / componentCount));
+                                }
                         }
                         diskBufferDriver.addValues(ValueFactory.createValue(j + 1),
-                                ValueFactory.createValue(subGraph_edges_count),
-                                ValueFactory.createValue(subGraphLength));
+                                ValueFactory.createValue(counts[j]),
+                                ValueFactory.createValue(sums[j]));
                 }
+                pm.endTask();
                 diskBufferDriver.writingFinished();
                 diskBufferDriver.close();
                 return diskBufferDriver;
         }
+
+        /**
+         * Find the weakly connected components of the graph.
+         * @param graph
+         * @param edgeComponents filled with the component of each edge, the
+         * components being numbered from 0 by their first edge
+         * @return the number of components
+         */
+        public static int findComponents(ArrayGraph graph, int[] edgeComponents) {
+                int edgeCount = graph.getEdgeCount();
+                UnionFind unionFind = new UnionFind(graph.getNodeCount());
+                for (int i = 0; i < edgeCount; i++) {
+                        unionFind.union(graph.getSource(i), graph.getTarget(i));
+                }
+                int[] componentOfRoot = new int[graph.getNodeCount()];
+                Arrays.fill(componentOfRoot, -1);
+                int componentCount = 0;
+                for (int i = 0; i < edgeCount; i++) {
+                        int root = unionFind.find(graph.getSource(i));
+                        if (componentOfRoot[root] == -1) {
+                                componentOfRoot[root] = componentCount++;
+                        }
+                        edgeComponents[i] = componentOfRoot[root];
+                }
+                return componentCount;
+        }
 }
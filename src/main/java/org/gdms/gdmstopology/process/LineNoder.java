@@ -41,8 +41,12 @@ import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.util.LinearComponentExtracter;
+import org.gdms.data.DataSourceFactory;
 import org.gdms.data.schema.MetadataUtilities;
+import org.gdms.data.values.Value;
 import org.gdms.driver.DataSet;
+import org.orbisgis.progress.NullProgressMonitor;
+import org.orbisgis.progress.ProgressMonitor;
 
 /**
  *
@@ -52,22 +56,165 @@ public class LineNoder {
 
         private DataSet dataSet;
         private GeometryFactory geometryFactory = new GeometryFactory();
+        private ProgressMonitor pm = new NullProgressMonitor();
+        private int tiledThreshold = 100000;
+        private boolean keepSourceRows = false;
+        private DataSourceFactory diskBufferFactory = null;
 
         public LineNoder(final DataSet dataSet) {
                 this.dataSet = dataSet;
         }
 
+        public LineNoder(final DataSet dataSet, ProgressMonitor pm) {
+                this.dataSet = dataSet;
+                this.pm = pm;
+        }
+
+        /**
+         * Set the number of lines above which the lines are noded by tiles,
+         * in parallel.
+         * @param tiledThreshold 
+         */
+        public void setTiledThreshold(int tiledThreshold) {
+                this.tiledThreshold = tiledThreshold;
+        }
+
+        /**
+         * 
+         * @return the number of lines above which the lines are noded by tiles.
+         */
+        public int getTiledThreshold() {
+                return tiledThreshold;
+        }
+
+        /**
+         * Set if the noded lines must keep the rows they come from.
+         * The rows are stored as a sorted int array in the user data of the
+         * noded lines. The tiled noder is then always used, since the union
+         * loses the origin of the lines.
+         * @param keepSourceRows 
+         */
+        public void setKeepSourceRows(boolean keepSourceRows) {
+                this.keepSourceRows = keepSourceRows;
+        }
+
+        /**
+         * 
+         * @return true if the noded lines keep the rows they come from.
+         */
+        public boolean isKeepSourceRows() {
+                return keepSourceRows;
+        }
+
+        /**
+         * Set the factory used to spill the lines on disk. The lines are then
+         * always noded by tiles read back from a temporary file with the
+         * {@link DiskTiledLineNoder}, so they do not need to fit in memory.
+         * @param dsf the factory, null to node the lines in memory
+         */
+        public void setDiskBuffer(DataSourceFactory dsf) {
+                this.diskBufferFactory = dsf;
+        }
+
         public Collection getLines() throws DriverException {
+                List linesList = new ArrayList();
+                final LinearComponentExtracter lineFilter = new LinearComponentExtracter(
+                        linesList);
+                readLines(new LineVisitor() {
+
+                        @Override
+                        public void visit(Geometry geom, int row) {
+                                geom.apply(lineFilter);
+                        }
+                });
+                return linesList;
+        }
+
+        /**
+         * Read the lines of the data set and nodes them.
+         * @return a collection of linestrings, noded together
+         * @throws DriverException 
+         * @see #nodeLines(TiledLineNoder.LineSink) 
+         */
+        public Collection<Geometry> getNodedLines() throws DriverException {
+                final List<Geometry> nodedLines = new ArrayList<Geometry>();
+                nodeLines(new TiledLineNoder.LineSink() {
+
+                        @Override
+                        public void add(Geometry line) {
+                                nodedLines.add(line);
+                        }
+                });
+                return nodedLines;
+        }
+
+        /**
+         * Read the lines of the data set, nodes them and gives the noded lines
+         * to the sink.
+         * The rows are read sequentially and their linear components are given
+         * directly to the noder, without an intermediate copy of the input, when
+         * the number of rows is greater than the tiled threshold or when the
+         * source rows are kept. The noded lines are then given to the sink tile
+         * after tile. When a disk buffer is set, the lines are spilled on disk
+         * and noded tile by tile.
+         * @param sink
+         * @throws DriverException 
+         */
+        public void nodeLines(TiledLineNoder.LineSink sink) throws DriverException {
+                if (diskBufferFactory != null) {
+                        final DiskTiledLineNoder diskTiledLineNoder = new DiskTiledLineNoder(diskBufferFactory, pm);
+                        readLines(new LineVisitor() {
+
+                                @Override
+                                public void visit(Geometry geom, int row) throws DriverException {
+                                        diskTiledLineNoder.add(geom, row);
+                                }
+                        });
+                        diskTiledLineNoder.node(sink);
+                } else if (keepSourceRows || dataSet.getRowCount() > tiledThreshold) {
+                        final TiledLineNoder tiledLineNoder = new TiledLineNoder(pm);
+                        readLines(new LineVisitor() {
+
+                                @Override
+                                public void visit(Geometry geom, int row) {
+                                        tiledLineNoder.add(geom, row);
+                                }
+                        });
+                        tiledLineNoder.node(sink);
+                } else {
+                        for (Iterator it = getNodedLines(getLines()).iterator(); it.hasNext();) {
+                                sink.add((Geometry) it.next());
+                        }
+                }
+        }
+
+        /**
+         * Iterate over the geometries of the data set and give them to the visitor.
+         * @param visitor
+         * @throws DriverException if the reading has been cancelled
+         */
+        private void readLines(LineVisitor visitor) throws DriverException {
                 int geomFieldIndex = MetadataUtilities.getSpatialFieldIndex(dataSet.getMetadata());
                 if (geomFieldIndex != -1) {
-                        List linesList = new ArrayList();
-                        LinearComponentExtracter lineFilter = new LinearComponentExtracter(
-                                linesList);
-                        for (int i = 0; i < dataSet.getRowCount(); i++) {
-                                Geometry g = dataSet.getFieldValue(i, geomFieldIndex).getAsGeometry();
-                                g.apply(lineFilter);
+                        long rowCount = dataSet.getRowCount();
+                        pm.startTask("Extract the lines", 100);
+                        Iterator<Value[]> it = dataSet.iterator();
+                        int count = 0;
+                        while (it.hasNext()) {
+                                if (count >= 100 && count % 100 == 0) {
+                                        if (pm.isCancelled()) {
+                                                throw new DriverException("The reading of the lines has been cancelled");
+                                        } else {
+                                                pm.progressTo((int) (100L * count / rowCount));
+                                        }
+                                }
+                                Value value = it.next()[geomFieldIndex];
+                                if (!value.isNull()) {
+                                        visitor.visit(value.getAsGeometry(), count);
+                                }
+                                count++;
                         }
-                        return linesList;
+                        pm.endTask();
                 } else {
                         throw new DriverException("The table must contains a geometry field");
                 }
@@ -95,6 +242,24 @@ public class LineNoder {
                 return noded;
         }
 
+        /**
+         * Nodes a collection of linestrings and returns the noded lines.
+         * When the number of lines is greater than the tiled threshold the lines
+         * are noded by tiles with the {@link TiledLineNoder}, otherwise the JTS
+         * union is used.
+         *
+         * @param lines
+         *            the linear geometries to node
+         * @return a collection of linestrings, noded together
+         * @throws DriverException 
+         */
+        public Collection<Geometry> getNodedLines(Collection lines) throws DriverException {
+                if (lines.size() > tiledThreshold) {
+                        return new TiledLineNoder(lines, pm).getNodedLines();
+                }
+                return toLines(getNodeLines(lines));
+        }
+
         public static List toLines(Geometry geom) {
                 List linesList = new ArrayList();
                 LinearComponentExtracter lineFilter = new LinearComponentExtracter(
@@ -115,4 +280,12 @@ public class LineNoder {
                 }
                 return point;
         }
+
+        /**
+         * Receives the geometries read from the data set.
+         */
+        private interface LineVisitor {
+
+                void visit(Geometry geom, int row) throws DriverException;
+        }
 }
@@ -0,0 +1,327 @@
+/**
+ * GDMS-Topology  is a library dedicated to graph analysis. It is based on the JGraphT
+ * library available at <http://www.jgrapht.org/>. It enables computing and processing
+ * large graphs using spatial and alphanumeric indexes.
+ *
+ * This version is developed at French IRSTV institut as part of the
+ * EvalPDU project, funded by the French Agence Nationale de la Recherche
+ * (ANR) under contract ANR-08-VILL-0005-01 and GEBD project
+ * funded by the French Ministery of Ecology and Sustainable Development.
+ *
+ * GDMS-Topology  is distributed under GPL 3 license. It is produced by the "Atelier SIG"
+ * team of the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2009-2012 IRSTV (FR CNRS 2488)
+ *
+ * GDMS-Topology is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * GDMS-Topology is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * GDMS-Topology. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://wwwc.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.gdmstopology.process;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import org.gdms.data.DataSourceFactory;
+import org.gdms.data.schema.MetadataUtilities;
+import org.gdms.data.values.Value;
+import org.gdms.data.values.ValueFactory;
+import org.gdms.driver.DataSet;
+import org.gdms.driver.DiskBufferDriver;
+import org.gdms.driver.DriverException;
+import org.gdms.gdmstopology.model.ArrayGraph;
+import org.gdms.gdmstopology.model.GraphException;
+import org.gdms.gdmstopology.model.GraphMetadataFactory;
+import org.gdms.gdmstopology.model.GraphSchema;
+import org.orbisgis.progress.ProgressMonitor;
+
+/**
+ * Computes the maximum flow between two nodes of a graph with the Dinic
+ * algorithm, and the minimum cut that separates them.
+ *
+ * The residual graph is stored in primitive arrays : each edge gives two
+ * arcs, the arc 2i following the edge i in the direction of the graph and
+ * the arc 2i + 1 going back. For an undirected graph both arcs have the
+ * capacity of the edge.
+ *
+ * @author Erwan Bocher
+ */
+public final class MaximumFlow {
+
+        private static final double EPSILON = 1e-9;
+        private final ArrayGraph graph;
+        private final int graphType;
+        private final int[] arcHeads;
+        private final double[] residuals;
+        private final int[] firstArc;
+        private final int[] arcs;
+        private final int[] levels;
+        private double maximumFlow;
+
+        /**
+         * Prepare the residual graph. The weights of the graph are the
+         * capacities of the edges.
+         * @param graph
+         * @param graphType
+         * @throws GraphException if the type of graph is not valid or if a
+         * capacity is negative or infinite
+         */
+        public MaximumFlow(ArrayGraph graph, int graphType) throws GraphException {
+                if (graphType != GraphSchema.DIRECT && graphType != GraphSchema.DIRECT_REVERSED
+                        && graphType != GraphSchema.UNDIRECT) {
+                        throw new GraphException("Only 3 type of graphs are allowed."
+                                + "1 if the path is computing using a directed graph.\n"
+                                + "2 if the path is computing using a directed graph and edges are reversed\n"
+                                + "3 if the path is computing using a undirected.");
+                }
+                graph.checkWeights();
+                this.graph = graph;
+                this.graphType = graphType;
+                int nodeCount = graph.getNodeCount();
+                int edgeCount = graph.getEdgeCount();
+                arcHeads = new int[2 * edgeCount];
+                residuals = new double[2 * edgeCount];
+                firstArc = new int[nodeCount + 1];
+                for (int i = 0; i < edgeCount; i++) {
+                        double capacity = graph.getWeight(i);
+                        if (Double.isInfinite(capacity)) {
+                                throw new GraphException("The capacity of the edge " + graph.getEdgeId(i)
+                                        + " must be finite");
+                        }
+                        int from = graph.getSource(i);
+                        int to = graph.getTarget(i);
+                        if (graphType == GraphSchema.DIRECT_REVERSED) {
+                                from = graph.getTarget(i);
+                                to = graph.getSource(i);
+                        }
+                        arcHeads[2 * i] = to;
+                        arcHeads[2 * i + 1] = from;
+                        residuals[2 * i] = capacity;
+                        residuals[2 * i + 1] = graphType == GraphSchema.UNDIRECT ? capacity : 0;
+                        firstArc[from + 1]++;
+                        firstArc[to + 1]++;
+                }
+                for (int n = 0; n < nodeCount; n++) {
+                        firstArc[n + 1] += firstArc[n];
+                }
+                //The arcs leaving each node
+                arcs = new int[2 * edgeCount];
+                int[] positions = Arrays.copyOf(firstArc, nodeCount);
+                for (int k = 0; k < arcs.length; k++) {
+                        arcs[positions[arcHeads[k ^ 1]]++] = k;
+                }
+                levels = new int[nodeCount];
+        }
+
+        /**
+         * Compute the maximum flow from the source to the sink.
+         * @param source the index of the source node
+         * @param sink the index of the sink node
+         * @return the value of the flow
+         * @throws DriverException if the computation is cancelled
+         */
+        public double compute(int source, int sink) throws DriverException {
+                maximumFlow = 0;
+                if (source == sink) {
+                        return maximumFlow;
+                }
+                int nodeCount = graph.getNodeCount();
+                int[] currentArc = new int[nodeCount];
+                int[] path = new int[nodeCount];
+                ProgressMonitor pm = graph.getProgressMonitor();
+                pm.startTask("Compute the maximum flow", 100);
+                while (true) {
+                        if (pm.isCancelled()) {
+                                throw new DriverException("The computation of the maximum flow has been cancelled");
+                        }
+                        findLevels(source);
+                        if (levels[sink] == -1) {
+                                break;
+                        }
+                        System.arraycopy(firstArc, 0, currentArc, 0, nodeCount);
+                        //Find a blocking flow with a depth first search on the level graph
+                        int pathSize = 0;
+                        int node = source;
+                        while (true) {
+                                if (node == sink) {
+                                        double bottleneck = Double.POSITIVE_INFINITY;
+                                        for (int p = 0; p < pathSize; p++) {
+                                                bottleneck = Math.min(bottleneck, residuals[path[p]]);
+                                        }
+                                        int saturated = -1;
+                                        for (int p = 0; p < pathSize; p++) {
+                                                residuals[path[p]] -= bottleneck;
+                                                residuals[path[p] ^ 1] += bottleneck;
+                                                if (saturated == -1 && residuals[path[p]] <= EPSILON) {
+                                                        saturated = p;
+                                                }
+                                        }
+                                        maximumFlow += bottleneck;
+                                        //Go back to the start of the first saturated arc
+                                        pathSize = saturated;
+                                        node = arcHeads[path[saturated] ^ 1];
+                                        continue;
+                                }
+                                int last = firstArc[node + 1];
+                                while (currentArc[node] < last) {
+                                        int arc = arcs[currentArc[node]];
+                                        if (residuals[arc] > EPSILON && levels[arcHeads[arc]] == levels[node] + 1) {
+                                                break;
+                                        }
+                                        currentArc[node]++;
+                                }
+                                if (currentArc[node] < last) {
+                                        int arc = arcs[currentArc[node]];
+                                        path[pathSize++] = arc;
+                                        node = arcHeads[arc];
+                                } else {
+                                        //A dead end is removed from the level graph
+                                        levels[node] = -1;
+                                        if (pathSize == 0) {
+                                                break;
+                                        }
+                                        pathSize--;
+                                        node = arcHeads[path[pathSize] ^ 1];
+                                        currentArc[node]++;
+                                }
+                        }
+                }
+                pm.endTask();
+                return maximumFlow;
+        }
+
+        /**
+         * Compute the number of arcs from the source to the nodes in the
+         * residual graph with a breadth first search, -1 for the nodes not
+         * reached.
+         * @param source
+         */
+        private void findLevels(int source) {
+                Arrays.fill(levels, -1);
+                int[] queue = new int[levels.length];
+                int head = 0;
+                int tail = 0;
+                queue[tail++] = source;
+                levels[source] = 0;
+                while (head < tail) {
+                        int node = queue[head++];
+                        for (int pos = firstArc[node]; pos < firstArc[node + 1]; pos++) {
+                                int arc = arcs[pos];
+                                int next = arcHeads[arc];
+                                if (residuals[arc] > EPSILON && levels[next] == -1) {
+                                        levels[next] = levels[node] + 1;
+                                        queue[tail++] = next;
+                                }
+                        }
+                }
+        }
+
+        /**
+         * 
+         * @return the value of the last computed flow
+         */
+        public double getMaximumFlow() {
+                return maximumFlow;
+        }
+
+        /**
+         * The flow of an edge. It follows the direction of the graph : for an
+         * undirected graph, a negative flow goes from the end node to the start
+         * node.
+         * @param edge
+         * @return the flow of the edge
+         */
+        public double getFlow(int edge) {
+                return graph.getWeight(edge) - residuals[2 * edge];
+        }
+
+        /**
+         * Find the edges of the minimum cut, from the nodes still reached by
+         * the source in the residual graph to the other nodes. The flow must
+         * be computed.
+         * @param source
+         * @return true for the edges of the cut
+         */
+        public boolean[] findMinimumCut(int source) {
+                findLevels(source);
+                int edgeCount = graph.getEdgeCount();
+                boolean[] cut = new boolean[edgeCount];
+                for (int i = 0; i < edgeCount; i++) {
+                        boolean fromReached = levels[arcHeads[2 * i + 1]] != -1;
+                        boolean toReached = levels[arcHeads[2 * i]] != -1;
+                        if (graphType == GraphSchema.UNDIRECT) {
+                                cut[i] = fromReached != toReached;
+                        } else {
+                                cut[i] = fromReached && !toReached;
+                        }
+                }
+                return cut;
+        }
+
+        /**
+         * Compute the maximum flow between two nodes of a graph.
+         * @param dsf
+         * @param dataSet
+         * @param capacityField
+         * @param source the id of the source node
+         * @param sink the id of the sink node
+         * @param graphType
+         * @param pm
+         * @return a driver with the geometry, the id, the capacity, the flow
+         * of the edges and if they belong to the minimum cut
+         * @throws DriverException
+         * @throws GraphException 
+         */
+        public static DiskBufferDriver getMaximumFlow(DataSourceFactory dsf, DataSet dataSet, String capacityField,
+                int source, int sink, int graphType, ProgressMonitor pm) throws DriverException, GraphException {
+                ArrayGraph graph = new ArrayGraph(dataSet, capacityField, pm);
+                int sourceIndex = graph.getNodeIndex(source);
+                if (sourceIndex == -1) {
+                        throw new GraphException("The node " + source + " is not in the graph");
+                }
+                int sinkIndex = graph.getNodeIndex(sink);
+                if (sinkIndex == -1) {
+                        throw new GraphException("The node " + sink + " is not in the graph");
+                }
+                MaximumFlow maximumFlow = new MaximumFlow(graph, graphType);
+                maximumFlow.compute(sourceIndex, sinkIndex);
+                boolean[] cut = maximumFlow.findMinimumCut(sourceIndex);
+
+                int geomIndex = MetadataUtilities.getSpatialFieldIndex(dataSet.getMetadata());
+                DiskBufferDriver diskBufferDriver = new DiskBufferDriver(dsf, GraphMetadataFactory.createMaximumFlowMetadata());
+                pm.startTask("Write the flow", 100);
+                Iterator<Value[]> it = dataSet.iterator();
+                int row = 0;
+                while (it.hasNext() && row < cut.length) {
+                        if (row >= 100 && row % 100 == 0) {
+                                if (pm.isCancelled()) {
+                                        throw new DriverException("The writing of the maximum flow has been cancelled");
+                                } else {
+                                        pm.progressTo((int) (100L * row / cut.length));
+                                }
+                        }
+                        Value[] values = it.next();
+                        diskBufferDriver.addValues(new Value[]{
+                                        geomIndex == -1 ? ValueFactory.createNullValue() : values[geomIndex],
+                                        ValueFactory.createValue(graph.getEdgeId(row)),
+                                        ValueFactory.createValue(graph.getWeight(row)),
+                                        ValueFactory.createValue(maximumFlow.getFlow(row)),
+                                        ValueFactory.createValue(cut[row])});
+                        row++;
+                }
+                pm.endTask();
+                diskBufferDriver.writingFinished();
+                diskBufferDriver.close();
+                return diskBufferDriver;
+        }
+}
@@ -0,0 +1,141 @@
+/**
+ * GDMS-Topology  is a library dedicated to graph analysis. It is based on the JGraphT
+ * library available at <http://www.jgrapht.org/>. It enables computing and processing
+ * large graphs using spatial and alphanumeric indexes.
+ *
+ * This version is developed at French IRSTV institut as part of the
+ * EvalPDU project, funded by the French Agence Nationale de la Recherche
+ * (ANR) under contract ANR-08-VILL-0005-01 and GEBD project
+ * funded by the French Ministery of Ecology and Sustainable Development.
+ *
+ * GDMS-Topology  is distributed under GPL 3 license. It is produced by the "Atelier SIG"
+ * team of the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2009-2012 IRSTV (FR CNRS 2488)
+ *
+ * GDMS-Topology is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * GDMS-Topology is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * GDMS-Topology. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://wwwc.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.gdmstopology.process;
+
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import org.gdms.data.DataSourceFactory;
+import org.gdms.data.schema.MetadataUtilities;
+import org.gdms.data.values.Value;
+import org.gdms.data.values.ValueFactory;
+import org.gdms.driver.DataSet;
+import org.gdms.driver.DiskBufferDriver;
+import org.gdms.driver.DriverException;
+import org.gdms.gdmstopology.model.ArrayGraph;
+import org.gdms.gdmstopology.model.GraphMetadataFactory;
+import org.gdms.gdmstopology.utils.SortUtilities;
+import org.gdms.gdmstopology.utils.UnionFind;
+import org.orbisgis.progress.ProgressMonitor;
+
+/**
+ * Computes the minimum spanning forest of a graph with the Kruskal algorithm.
+ * The direction of the edges is ignored.
+ *
+ * The edges are sorted by weight with a parallel merge sort on primitive
+ * keys, the ties being ordered by row, then they are added to the forest if
+ * they join two trees of a union-find on the nodes.
+ *
+ * @author Erwan Bocher
+ */
+public final class MinimumSpanningTree {
+
+        private MinimumSpanningTree() {
+        }
+
+        /**
+         * Find the edges of the minimum spanning forest.
+         * @param graph
+         * @param threadCount the number of threads used to sort the edges
+         * @return true for the edges of the forest
+         * @throws DriverException 
+         */
+        public static boolean[] findEdges(ArrayGraph graph, int threadCount) throws DriverException {
+                int edgeCount = graph.getEdgeCount();
+                long[] keys = new long[edgeCount];
+                for (int i = 0; i < edgeCount; i++) {
+                        keys[i] = SortUtilities.doubleKey(graph.getWeight(i));
+                }
+                int[] order;
+                try {
+                        order = SortUtilities.sortedOrder(keys, threadCount);
+                } catch (InterruptedException e) {
+                        throw new DriverException("The sort of the edges has been interrupted", e);
+                } catch (ExecutionException e) {
+                        throw new DriverException("Cannot sort the edges", e.getCause());
+                }
+                keys = null;
+                boolean[] selected = new boolean[edgeCount];
+                UnionFind unionFind = new UnionFind(graph.getNodeCount());
+                // a forest has at most nodeCount - 1 edges
+                int remaining = graph.getNodeCount() - 1;
+                for (int i = 0; i < edgeCount && remaining > 0; i++) {
+                        int edge = order[i];
+                        if (unionFind.union(graph.getSource(edge), graph.getTarget(edge))) {
+                                selected[edge] = true;
+                                remaining--;
+                        }
+                }
+                return selected;
+        }
+
+        /**
+         * Compute the minimum spanning forest of a graph.
+         * @param dsf
+         * @param dataSet
+         * @param costField
+         * @param pm
+         * @return a driver with the geometry, the id and the weight of the
+         * edges of the forest, in the order of the rows
+         * @throws DriverException 
+         */
+        public static DiskBufferDriver getMinimumSpanningTree(DataSourceFactory dsf, DataSet dataSet, String costField,
+                ProgressMonitor pm) throws DriverException {
+                ArrayGraph graph = new ArrayGraph(dataSet, costField, pm);
+                boolean[] selected = findEdges(graph, Runtime.getRuntime().availableProcessors());
+
+                int geomIndex = MetadataUtilities.getSpatialFieldIndex(dataSet.getMetadata());
+                DiskBufferDriver diskBufferDriver = new DiskBufferDriver(dsf, GraphMetadataFactory.createSpanningTreeMetadata());
+                pm.startTask("Write the spanning tree", 100);
+                Iterator<Value[]> it = dataSet.iterator();
+                int row = 0;
+                while (it.hasNext() && row < selected.length) {
+                        if (row >= 100 && row % 100 == 0) {
+                                if (pm.isCancelled()) {
+                                        throw new DriverException("The writing of the spanning tree has been cancelled");
+                                } else {
+                                        pm.progressTo((int) (100L * row / selected.length));
+                                }
+                        }
+                        Value[] values = it.next();
+                        if (selected[row]) {
+                                diskBufferDriver.addValues(new Value[]{
+                                                geomIndex == -1 ? ValueFactory.createNullValue() : values[geomIndex],
+                                                ValueFactory.createValue(graph.getEdgeId(row)),
+                                                ValueFactory.createValue(graph.getWeight(row))});
+                        }
+                        row++;
+                }
+                pm.endTask();
+                diskBufferDriver.writingFinished();
+                diskBufferDriver.close();
+                return diskBufferDriver;
+        }
+}
@@ -38,7 +38,9 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
 import org.gdms.data.DataSourceFactory;
+import org.gdms.data.NoSuchTableException;
 import org.gdms.data.NonEditableDataSourceException;
+import org.gdms.data.indexes.IndexException;
 import org.gdms.data.indexes.rtree.DiskRTree;
 import org.gdms.data.schema.DefaultMetadata;
 import org.gdms.data.schema.MetadataUtilities;
@@ -51,6 +53,7 @@ import org.gdms.driver.DiskBufferDriver;
 import org.gdms.driver.DriverException;
 import org.gdms.gdmstopology.model.GraphMetadataFactory;
 import org.gdms.gdmstopology.model.GraphSchema;
+import org.gdms.gdmstopology.utils.SortUtilities;
 import org.orbisgis.progress.ProgressMonitor;
 
 /**
@@ -59,6 +62,13 @@ import org.orbisgis.progress.ProgressMonitor;
  */
 public class NetworkGraphBuilder {
 
+        /**
+         * Types of the edges removed when the graph is cleaned.
+         */
+        public static final String ZERO_LENGTH = "zero_length";
+        public static final String SELF_LOOP = "self_loop";
+        public static final String DUPLICATE = "duplicate";
+
         private DataSourceFactory dsf;
         private ProgressMonitor pm;
         GeometryFactory gf = new GeometryFactory();
@@ -67,6 +77,17 @@ public class NetworkGraphBuilder {
         boolean zDirection = false;
         private String output_name;
         private boolean dim3 = false;
+        private boolean sortEdges = false;
+        private boolean hilbertOrder = false;
+        private boolean keepAttributes = true;
+        private boolean cleanEdges = false;
+        private DiskBufferDriver removedDriver;
+        private EdgeKeySet edgeKeys;
+        private DiskBufferDriver nodesDriver;
+        private DiskRTree diskRTree;
+        private int gidNode;
+        private double[] nodesZ;
+        private final Envelope queryEnvelope = new Envelope();
 
         /**
          * This class is used to order edges and create requiered nodes to build a network graph
@@ -99,6 +120,9 @@ public class NetworkGraphBuilder {
 
         /**
          * Set if the z value of the coordinate must be used to order the nodes.
+         * Two nodes are merged only if their z values are also in the tolerance, so
+         * lines that cross in 2D at different elevations (bridges, tunnels) are not
+         * connected. The edges get two more fields : the 3D length and the slope.
          * @param dim3 
          */
         public void setDim3(boolean dim3) {
@@ -125,6 +149,80 @@ public class NetworkGraphBuilder {
                 this.output_name = output_name;
         }
 
+        /**
+         * 
+         * @return true if the edges are written ordered by start and end nodes.
+         */
+        public boolean isSortEdges() {
+                return sortEdges;
+        }
+
+        /**
+         * Set if the edges must be written ordered by start and end nodes.
+         * The start_node, end_node and the composite indexes are built when the
+         * table is written so the graph can be opened without indexing it again.
+         * Neighbour edges are then stored close together on disk.
+         * @param sortEdges 
+         */
+        public void setSortEdges(boolean sortEdges) {
+                this.sortEdges = sortEdges;
+        }
+
+        /**
+         * 
+         * @return true if the nodes are renumbered following a Hilbert curve.
+         */
+        public boolean isHilbertOrder() {
+                return hilbertOrder;
+        }
+
+        /**
+         * Set if the nodes must be renumbered following a Hilbert curve computed
+         * on their coordinates, so nodes close in space get close ids.
+         * @param hilbertOrder 
+         */
+        public void setHilbertOrder(boolean hilbertOrder) {
+                this.hilbertOrder = hilbertOrder;
+        }
+
+        /**
+         * 
+         * @return true if the fields of the input table are copied in the edges.
+         */
+        public boolean isKeepAttributes() {
+                return keepAttributes;
+        }
+
+        /**
+         * Set if the fields of the input table must be copied in the edges.
+         * If false only the geometry and the graph fields are written. The id of 
+         * an edge is the position of its row in the input table plus one so the
+         * attributes can be read back from the input table.
+         * @param keepAttributes 
+         */
+        public void setKeepAttributes(boolean keepAttributes) {
+                this.keepAttributes = keepAttributes;
+        }
+
+        /**
+         * 
+         * @return true if the zero length, self-loop and duplicate edges are removed.
+         */
+        public boolean isCleanEdges() {
+                return cleanEdges;
+        }
+
+        /**
+         * Set if the zero length edges, the self-loops (edges with the same start
+         * and end node) and the duplicate edges (same start node, end node and length)
+         * must be removed. Only the first of duplicate edges is kept.
+         * The removed edges are written in a table named output_name.removed.
+         * @param cleanEdges 
+         */
+        public void setCleanEdges(boolean cleanEdges) {
+                this.cleanEdges = cleanEdges;
+        }
+
         /**
          * Create the two data structure nodes and edges using a RTree disk.
          * This method limits the overhead when the all nodes are ordered.
@@ -132,104 +230,55 @@ public class NetworkGraphBuilder {
          * @throws DriverException
          * @throws IOException
          * @throws NonEditableDataSourceException
+         * @throws IndexException
+         * @throws NoSuchTableException
          */
-        public void buildGraph(DataSet dataSet) throws DriverException, IOException, NonEditableDataSourceException {
+        public void buildGraph(DataSet dataSet) throws DriverException, IOException, NonEditableDataSourceException,
+                IndexException, NoSuchTableException {
 
 
                 int geomFieldIndex = MetadataUtilities.getSpatialFieldIndex(dataSet.getMetadata());
 
                 if (geomFieldIndex != -1) {
 
-                        DiskBufferDriver nodesDriver = new DiskBufferDriver(dsf.getResultFile("gdms"), GraphMetadataFactory.createNodesMetadataGraph());
+                        nodesDriver = new DiskBufferDriver(dsf.getResultFile("gdms"), GraphMetadataFactory.createNodesMetadataGraph());
 
                         String diskTreePath = dsf.getTempFile();
-                        DiskRTree diskRTree = new DiskRTree();
+                        diskRTree = new DiskRTree();
                         diskRTree.newIndex(new File(diskTreePath));
 
-                        DefaultMetadata edgeMedata = new DefaultMetadata(dataSet.getMetadata());
+                        DefaultMetadata edgeMedata;
+                        if (keepAttributes) {
+                                edgeMedata = new DefaultMetadata(dataSet.getMetadata());
+                        } else {
+                                edgeMedata = new DefaultMetadata();
+                                edgeMedata.addField(dataSet.getMetadata().getFieldName(geomFieldIndex),
+                                        dataSet.getMetadata().getFieldType(geomFieldIndex));
+                        }
                         int srcFieldsCount = edgeMedata.getFieldCount();
 
                         edgeMedata.addField(GraphSchema.ID, TypeFactory.createType(Type.INT));
                         edgeMedata.addField(GraphSchema.START_NODE, TypeFactory.createType(Type.INT));
                         edgeMedata.addField(GraphSchema.END_NODE, TypeFactory.createType(Type.INT));
-
-                        int fieldsCount = edgeMedata.getFieldCount();
-
-                        int idIndex = srcFieldsCount;
-                        int initialIndex = srcFieldsCount + 1;
-                        int finalIndex = srcFieldsCount + 2;
+                        if (dim3) {
+                                edgeMedata.addField(GraphSchema.LENGTH_3D, TypeFactory.createType(Type.DOUBLE));
+                                edgeMedata.addField(GraphSchema.SLOPE, TypeFactory.createType(Type.DOUBLE));
+                        }
 
                         DiskBufferDriver edgesDriver = new DiskBufferDriver(dsf.getResultFile("gdms"), edgeMedata);
 
-                        Iterator<Value[]> it = dataSet.iterator();
-                        int gidNode = 1;
+                        gidNode = 1;
+                        nodesZ = new double[1024];
+                        if (cleanEdges) {
+                                removedDriver = new DiskBufferDriver(dsf.getResultFile("gdms"), GraphMetadataFactory.createRemovedEdgesMetadata());
+                                edgeKeys = new EdgeKeySet();
+                        }
                         pm.startTask("Create the graph", 100);
-
-                        int count = 0;
-                        while (it.hasNext()) {
-                                Value[] values = it.next();
-                                if (count >= 100 && count % 100 == 0) {
-                                        if (pm.isCancelled()) {
-                                                break;
-                                        }
-                                }
-                                final Value[] newValues = new Value[fieldsCount];
-                                System.arraycopy(values, 0, newValues, 0,
-                                        srcFieldsCount);
-                                newValues[idIndex] = ValueFactory.createValue(count + 1);
-                                Geometry geom = values[geomFieldIndex].getAsGeometry();
-                                double length = geom.getLength();
-                                if (tolerance > 0 && length >= tolerance) {
-                                        expand = true;
-                                }
-                                Coordinate[] cc = geom.getCoordinates();
-                                Coordinate start = cc[0];
-                                Coordinate end = cc[cc.length - 1];
-
-                                if (isZDirection()) {
-                                        if (start.z < end.z) {
-                                                Coordinate tmpStart = start;
-                                                start = end;
-                                                end = tmpStart;
-                                        }
-                                }
-                                Envelope startEnvelope = new Envelope(start);
-                                if (expand) {
-                                        startEnvelope.expandBy(tolerance);
-                                }
-                                int[] gidsStart = diskRTree.query(startEnvelope);
-                                if (gidsStart.length == 0) {
-                                        newValues[initialIndex] =
-                                                ValueFactory.createValue(gidNode);
-                                        nodesDriver.addValues(new Value[]{ValueFactory.createValue(gf.createPoint(start)),
-                                                        ValueFactory.createValue(gidNode)});
-                                        diskRTree.insert(startEnvelope, gidNode);
-                                        gidNode++;
-                                } else {
-                                        newValues[initialIndex] =
-                                                ValueFactory.createValue(gidsStart[0]);
-                                }
-                                Envelope endEnvelope = new Envelope(end);
-                                if (expand) {
-                                        endEnvelope.expandBy(tolerance);
-                                }
-                                int[] gidsEnd = diskRTree.query(endEnvelope);
-                                if (gidsEnd.length == 0) {
-                                        newValues[finalIndex] =
-                                                ValueFactory.createValue(gidNode);
-                                        nodesDriver.addValues(new Value[]{ValueFactory.createValue(gf.createPoint(end)),
-                                                        ValueFactory.createValue(gidNode)});
-                                        diskRTree.insert(endEnvelope, gidNode);
-                                        gidNode++;
-                                } else {
-                                        newValues[finalIndex] =
-                                                ValueFactory.createValue(gidsEnd[0]);
-                                }
-                                edgesDriver.addValues(newValues);
-                                count++;
-
+                        if (sortEdges || hilbertOrder) {
+                                writeEdgesByNodes(dataSet, geomFieldIndex, srcFieldsCount, edgesDriver);
+                        } else {
+                                writeEdges(dataSet, geomFieldIndex, srcFieldsCount, edgesDriver);
                         }
-                        nodesDriver.writingFinished();
                         edgesDriver.writingFinished();
 
 
@@ -240,6 +289,22 @@ public class NetworkGraphBuilder {
                         String ds_edges_name = dsf.getSourceManager().getUniqueName(output_name + ".edges");
                         dsf.getSourceManager().register(ds_edges_name, edgesDriver.getFile());
 
+                        if (cleanEdges) {
+                                removedDriver.writingFinished();
+                                String ds_removed_name = dsf.getSourceManager().getUniqueName(output_name + ".removed");
+                                dsf.getSourceManager().register(ds_removed_name, removedDriver.getFile());
+                                edgeKeys = null;
+                        }
+
+                        if (sortEdges) {
+                                //The edges are ordered so the indexes are filled sequentially.
+                                //They are the indexes expected by the GDMSGraph.
+                                dsf.getIndexManager().buildIndex(ds_edges_name, new String[]{
+                                                GraphSchema.START_NODE, GraphSchema.END_NODE}, pm);
+                                dsf.getIndexManager().buildIndex(ds_edges_name, GraphSchema.START_NODE, pm);
+                                dsf.getIndexManager().buildIndex(ds_edges_name, GraphSchema.END_NODE, pm);
+                        }
+
                         //Remove the Rtree on disk
                         new File(diskTreePath).delete();
                         pm.endTask();
@@ -247,4 +312,403 @@ public class NetworkGraphBuilder {
                         throw new DriverException("The table must contains a geometry field");
                 }
         }
+
+        /**
+         * Write the edges in the order of the input table.
+         * @param dataSet
+         * @param geomFieldIndex
+         * @param srcFieldsCount
+         * @param edgesDriver
+         * @throws DriverException
+         * @throws IOException 
+         */
+        private void writeEdges(DataSet dataSet, int geomFieldIndex, int srcFieldsCount, DiskBufferDriver edgesDriver)
+                throws DriverException, IOException {
+                int fieldsCount = srcFieldsCount + getGraphFieldsCount();
+                long rowCount = dataSet.getRowCount();
+                Iterator<Value[]> it = keepAttributes ? dataSet.iterator() : null;
+                //The same buffer is used for all rows
+                Value[] newValues = new Value[fieldsCount];
+                for (int count = 0; count < rowCount; count++) {
+                        if (count >= 100 && count % 100 == 0) {
+                                if (pm.isCancelled()) {
+                                        break;
+                                }
+                        }
+                        Geometry geom = readEdge(dataSet, it, count, geomFieldIndex, newValues, srcFieldsCount);
+                        if (isRemoved(geom, count + 1)) {
+                                continue;
+                        }
+                        Coordinate[] cc = getEndPoints(geom);
+                        int startNode = getNode(cc[0]);
+                        int endNode = getNode(cc[1]);
+                        if (isRemoved(geom, count + 1, startNode, endNode)) {
+                                continue;
+                        }
+                        setGraphValues(newValues, srcFieldsCount, geom, cc, count + 1, startNode, endNode);
+                        edgesDriver.addValues(newValues);
+                }
+                nodesDriver.writingFinished();
+        }
+
+        /**
+         * Write the edges once all nodes are known.
+         * A first pass creates the nodes and keeps the node ids of each row.
+         * The nodes are then renumbered if needed and the rows are written following 
+         * the (start_node, end_node) order if the edges must be sorted.
+         * The id of an edge is still the position of the row in the input table.
+         * The start and end nodes of the removed edges are set to 0.
+         * @param dataSet
+         * @param geomFieldIndex
+         * @param srcFieldsCount
+         * @param edgesDriver
+         * @throws DriverException
+         * @throws IOException 
+         */
+        private void writeEdgesByNodes(DataSet dataSet, int geomFieldIndex, int srcFieldsCount, DiskBufferDriver edgesDriver)
+                throws DriverException, IOException {
+                int fieldsCount = srcFieldsCount + getGraphFieldsCount();
+                int rowCount = (int) dataSet.getRowCount();
+                int[] startNodes = new int[rowCount];
+                int[] endNodes = new int[rowCount];
+                int count = 0;
+                for (; count < rowCount; count++) {
+                        if (count >= 100 && count % 100 == 0) {
+                                if (pm.isCancelled()) {
+                                        break;
+                                }
+                        }
+                        Geometry geom = dataSet.getGeometry(count, geomFieldIndex);
+                        if (isRemoved(geom, count + 1)) {
+                                continue;
+                        }
+                        Coordinate[] cc = getEndPoints(geom);
+                        int startNode = getNode(cc[0]);
+                        int endNode = getNode(cc[1]);
+                        if (!isRemoved(geom, count + 1, startNode, endNode)) {
+                                startNodes[count] = startNode;
+                                endNodes[count] = endNode;
+                        }
+                }
+                nodesDriver.writingFinished();
+
+                if (hilbertOrder) {
+                        NodeRenumbering nodeRenumbering = new NodeRenumbering(dsf, pm);
+                        nodesDriver.open();
+                        int[] newIds = nodeRenumbering.getHilbertOrder(nodesDriver);
+                        DiskBufferDriver newNodesDriver = nodeRenumbering.renumberNodes(nodesDriver, newIds);
+                        nodesDriver.close();
+                        nodesDriver.getFile().delete();
+                        nodesDriver = newNodesDriver;
+                        for (int i = 0; i < count; i++) {
+                                startNodes[i] = newIds[startNodes[i]];
+                                endNodes[i] = newIds[endNodes[i]];
+                        }
+                }
+
+                int[] order;
+                if (sortEdges) {
+                        long[] keys = new long[count];
+                        for (int i = 0; i < count; i++) {
+                                keys[i] = SortUtilities.pairKey(startNodes[i], endNodes[i]);
+                        }
+                        order = SortUtilities.sortedOrder(keys);
+                } else {
+                        order = new int[count];
+                        for (int i = 0; i < count; i++) {
+                                order[i] = i;
+                        }
+                }
+                Value[] newValues = new Value[fieldsCount];
+                for (int i = 0; i < order.length; i++) {
+                        int rowId = order[i];
+                        if (startNodes[rowId] == 0) {
+                                continue;
+                        }
+                        Geometry geom = readEdge(dataSet, null, rowId, geomFieldIndex, newValues, srcFieldsCount);
+                        setGraphValues(newValues, srcFieldsCount, geom, getEndPoints(geom), rowId + 1,
+                                startNodes[rowId], endNodes[rowId]);
+                        edgesDriver.addValues(newValues);
+                }
+        }
+
+        /**
+         * Read the input row and copy the fields to keep in the edge values.
+         * When the attributes are not kept only the geometry is read.
+         * @param dataSet
+         * @param it the iterator on the rows of the table or null to read the row by its index
+         * @param rowId
+         * @param geomFieldIndex
+         * @param newValues
+         * @param srcFieldsCount
+         * @return the geometry of the row
+         * @throws DriverException 
+         */
+        private Geometry readEdge(DataSet dataSet, Iterator<Value[]> it, long rowId, int geomFieldIndex,
+                Value[] newValues, int srcFieldsCount) throws DriverException {
+                if (keepAttributes) {
+                        Value[] values = it == null ? dataSet.getRow(rowId) : it.next();
+                        System.arraycopy(values, 0, newValues, 0, srcFieldsCount);
+                        return values[geomFieldIndex].getAsGeometry();
+                } else {
+                        Geometry geom = dataSet.getGeometry(rowId, geomFieldIndex);
+                        newValues[0] = ValueFactory.createValue(geom);
+                        return geom;
+                }
+        }
+
+        /**
+         * Check if the edge has a zero length. 
+         * The length is computed with the z values when the graph is built in 3D,
+         * so a vertical edge is kept.
+         * In this case the edge is written in the removed edges table.
+         * @param geom
+         * @param id
+         * @return true if the edge must be removed
+         * @throws DriverException 
+         */
+        private boolean isRemoved(Geometry geom, int id) throws DriverException {
+                if (cleanEdges && getEdgeLength(geom) == 0) {
+                        removedDriver.addValues(new Value[]{ValueFactory.createValue(geom), ValueFactory.createValue(id),
+                                        ValueFactory.createValue(ZERO_LENGTH)});
+                        return true;
+                }
+                return false;
+        }
+
+        /**
+         * Check if the edge is a self-loop or the duplicate of an edge already written.
+         * In this case the edge is written in the removed edges table.
+         * @param geom
+         * @param id
+         * @param startNode
+         * @param endNode
+         * @return true if the edge must be removed
+         * @throws DriverException 
+         */
+        private boolean isRemoved(Geometry geom, int id, int startNode, int endNode) throws DriverException {
+                if (cleanEdges) {
+                        String type = null;
+                        if (startNode == endNode) {
+                                type = SELF_LOOP;
+                        } else if (!edgeKeys.add(startNode, endNode, getEdgeLength(geom))) {
+                                type = DUPLICATE;
+                        }
+                        if (type != null) {
+                                removedDriver.addValues(new Value[]{ValueFactory.createValue(geom), ValueFactory.createValue(id),
+                                                ValueFactory.createValue(type)});
+                                return true;
+                        }
+                }
+                return false;
+        }
+
+        /**
+         * Return the number of fields added by the graph to the input fields.
+         * @return 
+         */
+        private int getGraphFieldsCount() {
+                return dim3 ? 5 : 3;
+        }
+
+        /**
+         * Set the values of the graph fields of an edge, starting at the index.
+         * @param values
+         * @param index
+         * @param geom
+         * @param cc the start and end coordinates of the edge
+         * @param id
+         * @param startNode
+         * @param endNode 
+         */
+        private void setGraphValues(Value[] values, int index, Geometry geom, Coordinate[] cc, int id, int startNode, int endNode) {
+                values[index] = ValueFactory.createValue(id);
+                values[index + 1] = ValueFactory.createValue(startNode);
+                values[index + 2] = ValueFactory.createValue(endNode);
+                if (dim3) {
+                        values[index + 3] = ValueFactory.createValue(getLength3D(geom));
+                        double dz = cc[0].z - cc[1].z;
+                        double length = geom.getLength();
+                        if (Double.isNaN(dz) || length == 0) {
+                                values[index + 4] = ValueFactory.createNullValue();
+                        } else {
+                                values[index + 4] = ValueFactory.createValue(dz / length);
+                        }
+                }
+        }
+
+        /**
+         * Return the length of the edge, computed with the z values when
+         * the graph is built in 3D.
+         * @param geom
+         * @return 
+         */
+        private double getEdgeLength(Geometry geom) {
+                return dim3 ? getLength3D(geom) : geom.getLength();
+        }
+
+        /**
+         * Return the length of the geometry computed with the z values.
+         * The segments without z values are measured in 2D.
+         * @param geom
+         * @return 
+         */
+        private static double getLength3D(Geometry geom) {
+                Coordinate[] cc = geom.getCoordinates();
+                double length = 0;
+                for (int i = 1; i < cc.length; i++) {
+                        double dx = cc[i].x - cc[i - 1].x;
+                        double dy = cc[i].y - cc[i - 1].y;
+                        double dz = cc[i].z - cc[i - 1].z;
+                        if (Double.isNaN(dz)) {
+                                dz = 0;
+                        }
+                        length += Math.sqrt(dx * dx + dy * dy + dz * dz);
+                }
+                return length;
+        }
+
+        /**
+         * Return the start and the end coordinates of the edge.
+         * They are swapped if the edge is oriented according the z values.
+         * @param geom
+         * @return 
+         */
+        private Coordinate[] getEndPoints(Geometry geom) {
+                double length = geom.getLength();
+                if (tolerance > 0 && length >= tolerance) {
+                        expand = true;
+                }
+                Coordinate[] cc = geom.getCoordinates();
+                Coordinate start = cc[0];
+                Coordinate end = cc[cc.length - 1];
+
+                if (isZDirection()) {
+                        if (start.z < end.z) {
+                                Coordinate tmpStart = start;
+                                start = end;
+                                end = tmpStart;
+                        }
+                }
+                return new Coordinate[]{start, end};
+        }
+
+        /**
+         * Return the id of the node located at the coordinate.
+         * A new node is created if there is no node in the tolerance.
+         * @param coordinate
+         * @return
+         * @throws DriverException
+         * @throws IOException 
+         */
+        private int getNode(Coordinate coordinate) throws DriverException, IOException {
+                queryEnvelope.init(coordinate);
+                if (expand) {
+                        queryEnvelope.expandBy(tolerance);
+                }
+                int[] gids = diskRTree.query(queryEnvelope);
+                if (dim3) {
+                        for (int gid : gids) {
+                                if (isInZTolerance(coordinate.z, nodesZ[gid])) {
+                                        return gid;
+                                }
+                        }
+                } else if (gids.length > 0) {
+                        return gids[0];
+                }
+                int gid = gidNode;
+                nodesDriver.addValues(new Value[]{ValueFactory.createValue(gf.createPoint(coordinate)),
+                                ValueFactory.createValue(gid)});
+                diskRTree.insert(new Envelope(queryEnvelope), gid);
+                if (gid >= nodesZ.length) {
+                        double[] tmp = new double[nodesZ.length * 2];
+                        System.arraycopy(nodesZ, 0, tmp, 0, nodesZ.length);
+                        nodesZ = tmp;
+                }
+                nodesZ[gid] = coordinate.z;
+                gidNode++;
+                return gid;
+        }
+
+        /**
+         * Check if two z values are in the tolerance.
+         * Two missing z values are equal.
+         * @param z1
+         * @param z2
+         * @return 
+         */
+        private boolean isInZTolerance(double z1, double z2) {
+                if (Double.isNaN(z1) || Double.isNaN(z2)) {
+                        return Double.isNaN(z1) && Double.isNaN(z2);
+                }
+                return Math.abs(z1 - z2) <= tolerance;
+        }
+
+        /**
+         * A set of edges identified by their start node, end node and length.
+         * It uses an open addressing hash table on primitive arrays.
+         * The node ids must be greater than 0.
+         */
+        private static final class EdgeKeySet {
+
+                private int[] starts = new int[1024];
+                private int[] ends = new int[1024];
+                private long[] lengths = new long[1024];
+                private int size = 0;
+
+                /**
+                 * Add an edge to the set.
+                 * @param start
+                 * @param end
+                 * @param length
+                 * @return false if the edge is already in the set
+                 */
+                boolean add(int start, int end, double length) {
+                        if (2 * (size + 1) > starts.length) {
+                                grow();
+                        }
+                        long lengthBits = Double.doubleToLongBits(length);
+                        int mask = starts.length - 1;
+                        int i = hash(start, end, lengthBits) & mask;
+                        while (starts[i] != 0) {
+                                if (starts[i] == start && ends[i] == end && lengths[i] == lengthBits) {
+                                        return false;
+                                }
+                                i = (i + 1) & mask;
+                        }
+                        starts[i] = start;
+                        ends[i] = end;
+                        lengths[i] = lengthBits;
+                        size++;
+                        return true;
+                }
+
+                private void grow() {
+                        int[] oldStarts = starts;
+                        int[] oldEnds = ends;
+                        long[] oldLengths = lengths;
+                        starts = new int[oldStarts.length * 2];
+                        ends = new int[oldStarts.length * 2];
+                        lengths = new long[oldStarts.length * 2];
+                        int mask = starts.length - 1;
+                        for (int j = 0; j < oldStarts.length; j++) {
+                                if (oldStarts[j] != 0) {
+                                        int i = hash(oldStarts[j], oldEnds[j], oldLengths[j]) & mask;
+                                        while (starts[i] != 0) {
+                                                i = (i + 1) & mask;
+                                        }
+                                        starts[i] = oldStarts[j];
+                                        ends[i] = oldEnds[j];
+                                        lengths[i] = oldLengths[j];
+                                }
+                        }
+                }
+
+                private static int hash(int start, int end, long lengthBits) {
+                        long h = start * 0x9E3779B97F4A7C15L + end;
+                        h = h * 0xC2B2AE3D27D4EB4FL + lengthBits;
+                        h ^= h >>> 29;
+                        return (int) (h ^ (h >>> 32));
+                }
+        }
 }
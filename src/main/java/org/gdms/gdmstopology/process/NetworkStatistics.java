@@ -0,0 +1,347 @@
+/**
+ * GDMS-Topology  is a library dedicated to graph analysis. It is based on the JGraphT
+ * library available at <http://www.jgrapht.org/>. It enables computing and processing
+ * large graphs using spatial and alphanumeric indexes.
+ *
+ * This version is developed at French IRSTV institut as part of the
+ * EvalPDU project, funded by the French Agence Nationale de la Recherche
+ * (ANR) under contract ANR-08-VILL-0005-01 and GEBD project
+ * funded by the French Ministery of Ecology and Sustainable Development.
+ *
+ * GDMS-Topology  is distributed under GPL 3 license. It is produced by the "Atelier SIG"
+ * team of the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2009-2012 IRSTV (FR CNRS 2488)
+ *
+ * GDMS-Topology is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * GDMS-Topology is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * GDMS-Topology. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://wwwc.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.gdmstopology.process;
+
+import java.util.Arrays;
+import org.gdms.data.DataSourceFactory;
+import org.gdms.data.values.Value;
+import org.gdms.data.values.ValueFactory;
+import org.gdms.driver.DataSet;
+import org.gdms.driver.DiskBufferDriver;
+import org.gdms.driver.DriverException;
+import org.gdms.gdmstopology.model.ArrayGraph;
+import org.gdms.gdmstopology.model.GraphException;
+import org.gdms.gdmstopology.model.GraphMetadataFactory;
+import org.gdms.gdmstopology.model.GraphSchema;
+import org.orbisgis.progress.ProgressMonitor;
+
+/**
+ * Statistics of the connected components of a graph, computed from a single
+ * read of the edges. The direction of the edges is ignored.
+ *
+ * The statistics of a component are its number of nodes and of edges, its
+ * density, an estimation of its diameter, the histogram of the degrees of
+ * its nodes and its degeneracy, the greatest core number of its nodes.
+ *
+ * @author Erwan Bocher
+ */
+public final class NetworkStatistics {
+
+        private final ArrayGraph graph;
+        private int[] degrees;
+        private int[] coreNumbers;
+        private int[] nodeComponents;
+        private int componentCount;
+        private int[] nodeCounts;
+        private int[] edgeCounts;
+        private int[] diameters;
+
+        /**
+         * Prepare the statistics of a graph.
+         * @param graph
+         * @throws GraphException 
+         */
+        public NetworkStatistics(ArrayGraph graph) throws GraphException {
+                this.graph = graph;
+                graph.buildAdjacency(GraphSchema.UNDIRECT);
+        }
+
+        /**
+         * Compute all the statistics.
+         * @throws DriverException if the computation has been cancelled
+         */
+        public void compute() throws DriverException {
+                int nodeCount = graph.getNodeCount();
+                degrees = new int[nodeCount];
+                for (int n = 0; n < nodeCount; n++) {
+                        degrees[n] = graph.getLastEdge(n) - graph.getFirstEdge(n);
+                }
+                int[] edgeComponents = new int[graph.getEdgeCount()];
+                componentCount = GraphUtilities.findComponents(graph, edgeComponents);
+                nodeComponents = new int[nodeCount];
+                nodeCounts = new int[componentCount];
+                edgeCounts = new int[componentCount];
+                for (int i = 0; i < edgeComponents.length; i++) {
+                        int component = edgeComponents[i];
+                        edgeCounts[component]++;
+                        nodeComponents[graph.getSource(i)] = component;
+                        nodeComponents[graph.getTarget(i)] = component;
+                }
+                for (int n = 0; n < nodeCount; n++) {
+                        nodeCounts[nodeComponents[n]]++;
+                }
+                coreNumbers = findCoreNumbers(graph);
+                diameters = estimateDiameters();
+        }
+
+        /**
+         * Estimate the diameter of each component, in number of edges, with a
+         * double sweep : a breadth first search from any node finds the
+         * farthest node, whose eccentricity is found by a second search. The
+         * result is a lower bound of the diameter, exact on trees.
+         * @return 
+         * @throws DriverException if the estimation has been cancelled
+         */
+        private int[] estimateDiameters() throws DriverException {
+                int nodeCount = graph.getNodeCount();
+                int[] result = new int[componentCount];
+                int[] firstSweep = new int[nodeCount];
+                int[] secondSweep = new int[nodeCount];
+                Arrays.fill(firstSweep, -1);
+                Arrays.fill(secondSweep, -1);
+                int[] queue = new int[nodeCount];
+                ProgressMonitor pm = graph.getProgressMonitor();
+                pm.startTask("Estimate the diameters", 100);
+                for (int n = 0; n < nodeCount; n++) {
+                        if (n >= 100 && n % 100 == 0) {
+                                if (pm.isCancelled()) {
+                                        throw new DriverException("The estimation of the diameters has been cancelled");
+                                } else {
+                                        pm.progressTo((int) (100L * n / nodeCount));
+                                }
+                        }
+                        if (firstSweep[n] == -1) {
+                                int farthest = breadthFirstSearch(n, firstSweep, queue);
+                                int last = breadthFirstSearch(farthest, secondSweep, queue);
+                                result[nodeComponents[n]] = secondSweep[last];
+                        }
+                }
+                pm.endTask();
+                return result;
+        }
+
+        /**
+         * Compute the distance in number of edges from a node to all the nodes
+         * of its component.
+         * @param start
+         * @param distances the distances, -1 for the nodes not reached
+         * @param queue
+         * @return the last node reached, which is one of the farthest nodes
+         */
+        private int breadthFirstSearch(int start, int[] distances, int[] queue) {
+                int head = 0;
+                int tail = 0;
+                queue[tail++] = start;
+                distances[start] = 0;
+                int node = start;
+                while (head < tail) {
+                        node = queue[head++];
+                        for (int pos = graph.getFirstEdge(node); pos < graph.getLastEdge(node); pos++) {
+                                int next = graph.getOpposite(graph.getAdjacentEdge(pos), node);
+                                if (distances[next] == -1) {
+                                        distances[next] = distances[node] + 1;
+                                        queue[tail++] = next;
+                                }
+                        }
+                }
+                return node;
+        }
+
+        /**
+         * Compute the core number of the nodes with the bucket algorithm of
+         * Batagelj and Zaversnik, in linear time. The core number of a node is
+         * the greatest k such that the node belongs to a subgraph whose nodes
+         * all have at least k neighbours in it. The adjacency of the graph must
+         * be built for an undirected graph. Self loops are ignored.
+         * @param graph
+         * @return the core number of each node
+         */
+        public static int[] findCoreNumbers(ArrayGraph graph) {
+                int nodeCount = graph.getNodeCount();
+                int[] cores = new int[nodeCount];
+                int maxDegree = 0;
+                for (int n = 0; n < nodeCount; n++) {
+                        int degree = 0;
+                        for (int pos = graph.getFirstEdge(n); pos < graph.getLastEdge(n); pos++) {
+                                if (graph.getOpposite(graph.getAdjacentEdge(pos), n) != n) {
+                                        degree++;
+                                }
+                        }
+                        cores[n] = degree;
+                        maxDegree = Math.max(maxDegree, degree);
+                }
+                //The nodes sorted by degree, with the position of each degree
+                int[] bins = new int[maxDegree + 1];
+                for (int n = 0; n < nodeCount; n++) {
+                        bins[cores[n]]++;
+                }
+                int start = 0;
+                for (int d = 0; d <= maxDegree; d++) {
+                        int count = bins[d];
+                        bins[d] = start;
+                        start += count;
+                }
+                int[] sorted = new int[nodeCount];
+                int[] positions = new int[nodeCount];
+                for (int n = 0; n < nodeCount; n++) {
+                        positions[n] = bins[cores[n]];
+                        sorted[positions[n]] = n;
+                        bins[cores[n]]++;
+                }
+                for (int d = maxDegree; d > 0; d--) {
+                        bins[d] = bins[d - 1];
+                }
+                bins[0] = 0;
+                for (int i = 0; i < nodeCount; i++) {
+                        int node = sorted[i];
+                        for (int pos = graph.getFirstEdge(node); pos < graph.getLastEdge(node); pos++) {
+                                int next = graph.getOpposite(graph.getAdjacentEdge(pos), node);
+                                if (next != node && cores[next] > cores[node]) {
+                                        //Move the neighbour to the start of its bin and decrease its degree
+                                        int degree = cores[next];
+                                        int first = sorted[bins[degree]];
+                                        if (first != next) {
+                                                sorted[positions[next]] = first;
+                                                positions[first] = positions[next];
+                                                sorted[bins[degree]] = next;
+                                                positions[next] = bins[degree];
+                                        }
+                                        bins[degree]++;
+                                        cores[next]--;
+                                }
+                        }
+                }
+                return cores;
+        }
+
+        /**
+         * Format the histogram of the degrees of each component as
+         * degree:count pairs separated by semicolons, by increasing degree.
+         * @return 
+         */
+        private String[] formatDegreeHistograms() {
+                int nodeCount = nodeComponents.length;
+                //The degrees grouped by component
+                int[] starts = new int[componentCount + 1];
+                for (int n = 0; n < nodeCount; n++) {
+                        starts[nodeComponents[n] + 1]++;
+                }
+                for (int c = 0; c < componentCount; c++) {
+                        starts[c + 1] += starts[c];
+                }
+                int[] grouped = new int[nodeCount];
+                int[] positions = Arrays.copyOf(starts, componentCount);
+                for (int n = 0; n < nodeCount; n++) {
+                        grouped[positions[nodeComponents[n]]++] = degrees[n];
+                }
+                String[] histograms = new String[componentCount];
+                for (int c = 0; c < componentCount; c++) {
+                        Arrays.sort(grouped, starts[c], starts[c + 1]);
+                        StringBuilder sb = new StringBuilder();
+                        int i = starts[c];
+                        while (i < starts[c + 1]) {
+                                int degree = grouped[i];
+                                int j = i;
+                                while (j < starts[c + 1] && grouped[j] == degree) {
+                                        j++;
+                                }
+                                if (sb.length() > 0) {
+                                        sb.append(';');
+                                }
+                                sb.append(degree).append(':').append(j - i);
+                                i = j;
+                        }
+                        histograms[c] = sb.toString();
+                }
+                return histograms;
+        }
+
+        /**
+         * Write the statistics of the components.
+         * @param dsf
+         * @return
+         * @throws DriverException 
+         */
+        public DiskBufferDriver writeComponents(DataSourceFactory dsf) throws DriverException {
+                int[] degeneracies = new int[componentCount];
+                for (int n = 0; n < coreNumbers.length; n++) {
+                        int component = nodeComponents[n];
+                        degeneracies[component] = Math.max(degeneracies[component], coreNumbers[n]);
+                }
+                String[] histograms = formatDegreeHistograms();
+                DiskBufferDriver diskBufferDriver = new DiskBufferDriver(dsf, GraphMetadataFactory.createComponentStatisticsMetadata());
+                for (int c = 0; c < componentCount; c++) {
+                        long nodes = nodeCounts[c];
+                        double density = nodes < 2 ? 0 : 2d * edgeCounts[c] / (nodes * (nodes - 1));
+                        diskBufferDriver.addValues(new Value[]{ValueFactory.createValue(c + 1),
+                                        ValueFactory.createValue(nodeCounts[c]),
+                                        ValueFactory.createValue(edgeCounts[c]),
+                                        ValueFactory.createValue(density),
+                                        ValueFactory.createValue(diameters[c]),
+                                        ValueFactory.createValue(degeneracies[c]),
+                                        ValueFactory.createValue(histograms[c])});
+                }
+                diskBufferDriver.writingFinished();
+                diskBufferDriver.close();
+                return diskBufferDriver;
+        }
+
+        /**
+         * Write the component, the degree and the core number of the nodes.
+         * @param dsf
+         * @return
+         * @throws DriverException 
+         */
+        public DiskBufferDriver writeNodes(DataSourceFactory dsf) throws DriverException {
+                DiskBufferDriver diskBufferDriver = new DiskBufferDriver(dsf, GraphMetadataFactory.createNodeStatisticsMetadata());
+                for (int n = 0; n < nodeComponents.length; n++) {
+                        diskBufferDriver.addValues(new Value[]{ValueFactory.createValue(graph.getNodeId(n)),
+                                        ValueFactory.createValue(nodeComponents[n] + 1),
+                                        ValueFactory.createValue(degrees[n]),
+                                        ValueFactory.createValue(coreNumbers[n])});
+                }
+                diskBufferDriver.writingFinished();
+                diskBufferDriver.close();
+                return diskBufferDriver;
+        }
+
+        /**
+         * Compute the statistics of a graph and register them in the tables
+         * outputName.components and outputName.nodes.
+         * @param dsf
+         * @param dataSet
+         * @param outputName
+         * @param pm
+         * @throws DriverException
+         * @throws GraphException 
+         */
+        public static void getNetworkStatistics(DataSourceFactory dsf, DataSet dataSet, String outputName,
+                ProgressMonitor pm) throws DriverException, GraphException {
+                NetworkStatistics statistics = new NetworkStatistics(new ArrayGraph(dataSet, pm));
+                statistics.compute();
+                DiskBufferDriver componentsDriver = statistics.writeComponents(dsf);
+                DiskBufferDriver nodesDriver = statistics.writeNodes(dsf);
+                String ds_components_name = dsf.getSourceManager().getUniqueName(outputName + ".components");
+                dsf.getSourceManager().register(ds_components_name, componentsDriver.getFile());
+                String ds_nodes_name = dsf.getSourceManager().getUniqueName(outputName + ".nodes");
+                dsf.getSourceManager().register(ds_nodes_name, nodesDriver.getFile());
+        }
+}
@@ -0,0 +1,216 @@
+/**
+ * GDMS-Topology  is a library dedicated to graph analysis. It is based on the JGraphT
+ * library available at <http://www.jgrapht.org/>. It enables computing and processing
+ * large graphs using spatial and alphanumeric indexes.
+ *
+ * This version is developed at French IRSTV institut as part of the
+ * EvalPDU project, funded by the French Agence Nationale de la Recherche
+ * (ANR) under contract ANR-08-VILL-0005-01 and GEBD project
+ * funded by the French Ministery of Ecology and Sustainable Development.
+ *
+ * GDMS-Topology  is distributed under GPL 3 license. It is produced by the "Atelier SIG"
+ * team of the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2009-2012 IRSTV (FR CNRS 2488)
+ *
+ * GDMS-Topology is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * GDMS-Topology is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * GDMS-Topology. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://wwwc.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+package org.gdms.gdmstopology.process;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import org.gdms.data.DataSourceFactory;
+import org.gdms.data.schema.Metadata;
+import org.gdms.data.schema.MetadataUtilities;
+import org.gdms.data.values.Value;
+import org.gdms.data.values.ValueFactory;
+import org.gdms.driver.DataSet;
+import org.gdms.driver.DiskBufferDriver;
+import org.gdms.driver.DriverException;
+import org.gdms.gdmstopology.model.GraphSchema;
+import org.gdms.gdmstopology.utils.SortUtilities;
+import org.orbisgis.progress.ProgressMonitor;
+
+/**
+ * This class renumbers the nodes of a graph following a Hilbert curve
+ * computed on the node coordinates.
+ * Nodes close in space get close ids so the algorithms that store the nodes
+ * in arrays access the memory with a better locality.
+ *
+ * @author Erwan Bocher
+ */
+public class NodeRenumbering {
+
+        /**
+         * Number of bits used to discretize each axis of the Hilbert curve.
+         */
+        private static final int HILBERT_ORDER = 16;
+        private final DataSourceFactory dsf;
+        private final ProgressMonitor pm;
+
+        public NodeRenumbering(DataSourceFactory dsf, ProgressMonitor pm) {
+                this.dsf = dsf;
+                this.pm = pm;
+        }
+
+        /**
+         * Renumber the nodes and the edges of a graph.
+         * The input drivers are closed and their files removed.
+         * @param nodesDriver
+         * @param edgesDriver
+         * @return the new nodes and edges drivers
+         * @throws DriverException 
+         */
+        public DiskBufferDriver[] renumber(DiskBufferDriver nodesDriver, DiskBufferDriver edgesDriver) throws DriverException {
+                nodesDriver.open();
+                int[] newIds = getHilbertOrder(nodesDriver);
+                DiskBufferDriver newNodesDriver = renumberNodes(nodesDriver, newIds);
+                nodesDriver.close();
+                nodesDriver.getFile().delete();
+
+                edgesDriver.open();
+                DiskBufferDriver newEdgesDriver = renumberEdges(edgesDriver, newIds);
+                edgesDriver.close();
+                edgesDriver.getFile().delete();
+                return new DiskBufferDriver[]{newNodesDriver, newEdgesDriver};
+        }
+
+        /**
+         * Compute the new id of each node.
+         * The nodes are ordered by their position on a Hilbert curve and numbered
+         * from 1.
+         * @param nodes
+         * @return an array where the index is the old id and the value the new id.
+         * @throws DriverException 
+         */
+        public int[] getHilbertOrder(DataSet nodes) throws DriverException {
+                Metadata metadata = nodes.getMetadata();
+                int geomFieldIndex = MetadataUtilities.getSpatialFieldIndex(metadata);
+                int idFieldIndex = metadata.getFieldIndex(GraphSchema.ID);
+                int rowCount = (int) nodes.getRowCount();
+                double[] xs = new double[rowCount];
+                double[] ys = new double[rowCount];
+                int[] ids = new int[rowCount];
+                int maxId = 0;
+                Envelope envelope = new Envelope();
+                pm.startTask("Compute the nodes order", 100);
+                for (int i = 0; i < rowCount; i++) {
+                        Coordinate coordinate = nodes.getGeometry(i, geomFieldIndex).getCoordinate();
+                        xs[i] = coordinate.x;
+                        ys[i] = coordinate.y;
+                        envelope.expandToInclude(coordinate);
+                        ids[i] = nodes.getInt(i, idFieldIndex);
+                        maxId = Math.max(maxId, ids[i]);
+                }
+
+                int side = 1 << HILBERT_ORDER;
+                double width = envelope.getWidth() > 0 ? envelope.getWidth() : 1;
+                double height = envelope.getHeight() > 0 ? envelope.getHeight() : 1;
+                long[] keys = new long[rowCount];
+                for (int i = 0; i < rowCount; i++) {
+                        int x = (int) ((side - 1) * ((xs[i] - envelope.getMinX()) / width));
+                        int y = (int) ((side - 1) * ((ys[i] - envelope.getMinY()) / height));
+                        keys[i] = hilbertIndex(side, x, y);
+                }
+                int[] order = SortUtilities.sortedOrder(keys);
+                int[] newIds = new int[maxId + 1];
+                for (int i = 0; i < order.length; i++) {
+                        newIds[ids[order[i]]] = i + 1;
+                }
+                pm.endTask();
+                return newIds;
+        }
+
+        /**
+         * Write the nodes ordered by their new ids.
+         * @param nodes
+         * @param newIds
+         * @return
+         * @throws DriverException 
+         */
+        public DiskBufferDriver renumberNodes(DataSet nodes, int[] newIds) throws DriverException {
+                Metadata metadata = nodes.getMetadata();
+                int idFieldIndex = metadata.getFieldIndex(GraphSchema.ID);
+                int rowCount = (int) nodes.getRowCount();
+                int[] rows = new int[rowCount + 1];
+                for (int i = 0; i < rowCount; i++) {
+                        rows[newIds[nodes.getInt(i, idFieldIndex)]] = i;
+                }
+                DiskBufferDriver driver = new DiskBufferDriver(dsf.getResultFile("gdms"), metadata);
+                int fieldCount = metadata.getFieldCount();
+                for (int id = 1; id <= rowCount; id++) {
+                        Value[] values = new Value[fieldCount];
+                        System.arraycopy(nodes.getRow(rows[id]), 0, values, 0, fieldCount);
+                        values[idFieldIndex] = ValueFactory.createValue(id);
+                        driver.addValues(values);
+                }
+                driver.writingFinished();
+                return driver;
+        }
+
+        /**
+         * Write the edges with the new start and end node ids.
+         * The order of the edges is kept.
+         * @param edges
+         * @param newIds
+         * @return
+         * @throws DriverException 
+         */
+        public DiskBufferDriver renumberEdges(DataSet edges, int[] newIds) throws DriverException {
+                Metadata metadata = edges.getMetadata();
+                int startFieldIndex = metadata.getFieldIndex(GraphSchema.START_NODE);
+                int endFieldIndex = metadata.getFieldIndex(GraphSchema.END_NODE);
+                DiskBufferDriver driver = new DiskBufferDriver(dsf.getResultFile("gdms"), metadata);
+                int fieldCount = metadata.getFieldCount();
+                long rowCount = edges.getRowCount();
+                for (long i = 0; i < rowCount; i++) {
+                        Value[] values = new Value[fieldCount];
+                        System.arraycopy(edges.getRow(i), 0, values, 0, fieldCount);
+                        values[startFieldIndex] = ValueFactory.createValue(newIds[values[startFieldIndex].getAsInt()]);
+                        values[endFieldIndex] = ValueFactory.createValue(newIds[values[endFieldIndex].getAsInt()]);
+                        driver.addValues(values);
+                }
+                driver.writingFinished();
+                return driver;
+        }
+
+        /**
+         * Return the position of the cell (x, y) on the Hilbert curve that fills
+         * a square grid of side cells.
+         * @param side a power of two
+         * @param x
+         * @param y
+         * @return 
+         */
+        public static long hilbertIndex(int side, int x, int y) {
+                long d = 0;
+                for (int s = side / 2; s > 0; s /= 2) {
+                        int rx = (x & s) > 0 ? 1 : 0;
+                        int ry = (y & s) > 0 ? 1 : 0;
+                        d += (long) s * s * ((3 * rx) ^ ry);
+                        //Rotate the quadrant
+                        if (ry == 0) {
+                                if (rx == 1) {
+                                        x = side - 1 - x;
+                                        y = side - 1 - y;
+                                }
+                                int t = x;
+                                x = y;
+                                y = t;
+                        }
+                }
+                return d;
+        }
+}
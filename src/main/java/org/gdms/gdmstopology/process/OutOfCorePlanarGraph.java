@@ -0,0 +1,507 @@
+/**
+ * GDMS-Topology  is a library dedicated to graph analysis. It is based on the JGraphT
+ * library available at <http://www.jgrapht.org/>. It enables computing and processing
+ * large graphs using spatial and alphanumeric indexes.
+ *
+ * This version is developed at French IRSTV institut as part of the
+ * EvalPDU project, funded by the French Agence Nationale de la Recherche
+ * (ANR) under contract ANR-08-VILL-0005-01 and GEBD project
+ * funded by the French Ministery of Ecology and Sustainable Development.
+ *
+ * GDMS-Topology  is distributed under GPL 3 license. It is produced by the "Atelier SIG"
+ * team of the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2009-2012 IRSTV (FR CNRS 2488)
+ *
+ * GDMS-Topology is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * GDMS-Topology is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * GDMS-Topology. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://wwwc.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.gdmstopology.process;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.operation.linemerge.LineMerger;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.gdms.data.DataSourceFactory;
+import org.gdms.data.indexes.rtree.DiskRTree;
+import org.gdms.data.schema.DefaultMetadata;
+import org.gdms.data.schema.Metadata;
+import org.gdms.data.types.Type;
+import org.gdms.data.types.TypeFactory;
+import org.gdms.data.values.Value;
+import org.gdms.data.values.ValueFactory;
+import org.gdms.driver.DiskBufferDriver;
+import org.gdms.driver.DriverException;
+import org.gdms.gdmstopology.model.GraphMetadataFactory;
+import org.gdms.gdmstopology.utils.UnionFind;
+import org.orbisgis.progress.ProgressMonitor;
+
+/**
+ * Builds a planar graph without keeping the whole graph in memory.
+ *
+ * The input lines are noded tile by tile from a temporary file by the
+ * {@link DiskTiledLineNoder} when the noder has a disk buffer, and the noded
+ * lines are spilled to another temporary file as soon as the noder returns
+ * them. Their end nodes are numbered with a disk RTree and only the node ids
+ * of the lines are kept in memory, in int arrays. The connected components are
+ * found with a union-find on these ids, then they are read back, merged and
+ * polygonized one at a time.
+ *
+ * The merge and the polygonization are not split by tiles : the memory used
+ * is bounded by the largest connected component, whose edges and faces are
+ * held in memory. A network made of a single connected component, such as a
+ * hydrographic network, is merged and polygonized whole.
+ *
+ * When the source rows are kept, they are spilled with the lines and the
+ * components are merged with an {@link EdgeMerger}.
+ *
+ * The edges and the faces are first written in temporary files, then copied
+ * once the islands (components that lie inside a face of another component)
+ * are known : their outer boundary is added as holes to the face that contains
+ * them and their edges without a face get this face.
+ *
+ * @author Erwan Bocher
+ */
+public class OutOfCorePlanarGraph {
+
+        private static final int COMPONENT_FIELD = 6;
+        private final DataSourceFactory dsf;
+        private final ProgressMonitor pm;
+        private GeometryFactory gf = new GeometryFactory();
+        private int[] pieceStarts = new int[1024];
+        private int[] pieceEnds = new int[1024];
+        private int pieceCount;
+        private int pieceNodeCount;
+        private boolean keepSourceRows = false;
+
+        public OutOfCorePlanarGraph(DataSourceFactory dsf, ProgressMonitor pm) {
+                this.dsf = dsf;
+                this.pm = pm;
+        }
+
+        /**
+         * Set if the rows of the input table each edge comes from are kept.
+         * The noder must keep them too.
+         * @param keepSourceRows 
+         */
+        public void setKeepSourceRows(boolean keepSourceRows) {
+                this.keepSourceRows = keepSourceRows;
+        }
+
+        /**
+         * Build the planar graph of the lines read by the noder.
+         * @param lineNoder
+         * @return the nodes, edges and polygons drivers, followed by the
+         * sources driver when the source rows are kept
+         * @throws DriverException
+         * @throws IOException 
+         */
+        public DiskBufferDriver[] build(LineNoder lineNoder) throws DriverException, IOException {
+                DiskBufferDriver piecesDriver = spillNodedLines(lineNoder);
+                piecesDriver.open();
+                try {
+                        return buildComponents(piecesDriver);
+                } finally {
+                        piecesDriver.close();
+                        piecesDriver.getFile().delete();
+                }
+        }
+
+        /**
+         * Write the noded lines in a temporary file and number their end nodes.
+         * @param lineNoder
+         * @return
+         * @throws DriverException
+         * @throws IOException 
+         */
+        private DiskBufferDriver spillNodedLines(LineNoder lineNoder) throws DriverException, IOException {
+                final DiskBufferDriver piecesDriver = new DiskBufferDriver(dsf.getResultFile("gdms"),
+                        new DefaultMetadata(new Type[]{TypeFactory.createType(Type.GEOMETRY), TypeFactory.createType(Type.STRING)},
+                        new String[]{"the_geom", "rows"}));
+                String diskTreePath = dsf.getTempFile();
+                final DiskRTree nodesTree = new DiskRTree();
+                nodesTree.newIndex(new File(diskTreePath));
+                pieceCount = 0;
+                pieceNodeCount = 0;
+                try {
+                        lineNoder.nodeLines(new TiledLineNoder.LineSink() {
+
+                                @Override
+                                public void add(Geometry line) throws DriverException {
+                                        Coordinate[] cc = line.getCoordinates();
+                                        try {
+                                                addPiece(getPieceNode(nodesTree, cc[0]), getPieceNode(nodesTree, cc[cc.length - 1]));
+                                        } catch (IOException e) {
+                                                throw new DriverException("Cannot index the nodes", e);
+                                        }
+                                        Value rows = keepSourceRows ? ValueFactory.createValue(formatRows((int[]) line.getUserData()))
+                                                : ValueFactory.createNullValue();
+                                        piecesDriver.addValues(new Value[]{ValueFactory.createValue(line), rows});
+                                }
+                        });
+                } finally {
+                        new File(diskTreePath).delete();
+                }
+                piecesDriver.writingFinished();
+                return piecesDriver;
+        }
+
+        private static String formatRows(int[] rows) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < rows.length; i++) {
+                        if (i > 0) {
+                                sb.append(',');
+                        }
+                        sb.append(rows[i]);
+                }
+                return sb.toString();
+        }
+
+        private static int[] parseRows(String rows) {
+                String[] parts = rows.split(",");
+                int[] result = new int[parts.length];
+                for (int i = 0; i < parts.length; i++) {
+                        result[i] = Integer.parseInt(parts[i]);
+                }
+                return result;
+        }
+
+        /**
+         * Read a piece back, with its source rows as user data when they are kept.
+         */
+        private Geometry getPiece(DiskBufferDriver piecesDriver, int piece) throws DriverException {
+                Geometry geom = piecesDriver.getGeometry(piece, 0);
+                if (keepSourceRows) {
+                        geom.setUserData(parseRows(piecesDriver.getFieldValue(piece, 1).getAsString()));
+                }
+                return geom;
+        }
+
+        private int getPieceNode(DiskRTree nodesTree, Coordinate c) throws IOException {
+                Envelope env = new Envelope(c);
+                int[] ids = nodesTree.query(env);
+                if (ids.length > 0) {
+                        return ids[0];
+                }
+                nodesTree.insert(env, pieceNodeCount);
+                return pieceNodeCount++;
+        }
+
+        private void addPiece(int start, int end) {
+                if (pieceCount == pieceStarts.length) {
+                        pieceStarts = Arrays.copyOf(pieceStarts, pieceCount * 2);
+                        pieceEnds = Arrays.copyOf(pieceEnds, pieceCount * 2);
+                }
+                pieceStarts[pieceCount] = start;
+                pieceEnds[pieceCount] = end;
+                pieceCount++;
+        }
+
+        /**
+         * Merge and polygonize the components one at a time, then resolve the islands.
+         * @param piecesDriver
+         * @return
+         * @throws DriverException
+         * @throws IOException 
+         */
+        private DiskBufferDriver[] buildComponents(DiskBufferDriver piecesDriver) throws DriverException, IOException {
+                //Group the pieces by connected component, numbered by their first piece.
+                UnionFind unionFind = new UnionFind(pieceNodeCount);
+                for (int i = 0; i < pieceCount; i++) {
+                        unionFind.union(pieceStarts[i], pieceEnds[i]);
+                }
+                int[] componentOfRoot = new int[pieceNodeCount];
+                Arrays.fill(componentOfRoot, -1);
+                int componentCount = 0;
+                int[] pieceComponents = new int[pieceCount];
+                for (int i = 0; i < pieceCount; i++) {
+                        int root = unionFind.find(pieceStarts[i]);
+                        if (componentOfRoot[root] == -1) {
+                                componentOfRoot[root] = componentCount++;
+                        }
+                        pieceComponents[i] = componentOfRoot[root];
+                }
+                unionFind = null;
+                componentOfRoot = null;
+                pieceStarts = null;
+                pieceEnds = null;
+                //Counting sort of the pieces by component
+                int[] offsets = new int[componentCount + 1];
+                for (int i = 0; i < pieceCount; i++) {
+                        offsets[pieceComponents[i] + 1]++;
+                }
+                for (int c = 0; c < componentCount; c++) {
+                        offsets[c + 1] += offsets[c];
+                }
+                int[] piecesByComponent = new int[pieceCount];
+                int[] positions = Arrays.copyOf(offsets, componentCount);
+                for (int i = 0; i < pieceCount; i++) {
+                        piecesByComponent[positions[pieceComponents[i]]++] = i;
+                }
+                pieceComponents = null;
+                positions = null;
+
+                Metadata edgesMetadata = GraphMetadataFactory.createPlanarEdgesMetadata();
+                DefaultMetadata tmpEdgesMetadata = new DefaultMetadata(edgesMetadata);
+                tmpEdgesMetadata.addField("component", TypeFactory.createType(Type.INT));
+                DiskBufferDriver tmpEdgesDriver = new DiskBufferDriver(dsf.getResultFile("gdms"), tmpEdgesMetadata);
+                DiskBufferDriver tmpFacesDriver = new DiskBufferDriver(dsf.getResultFile("gdms"),
+                        new DefaultMetadata(new Type[]{TypeFactory.createType(Type.GEOMETRY), TypeFactory.createType(Type.INT)},
+                        new String[]{"the_geom", "component"}));
+                DiskBufferDriver tmpOuterDriver = new DiskBufferDriver(dsf.getResultFile("gdms"),
+                        new DefaultMetadata(new Type[]{TypeFactory.createType(Type.GEOMETRY)}, new String[]{"the_geom"}));
+                DiskBufferDriver nodesDriver = new DiskBufferDriver(dsf.getResultFile("gdms"), GraphMetadataFactory.createNodesMetadataGraph());
+                DiskBufferDriver sourcesDriver = null;
+                if (keepSourceRows) {
+                        sourcesDriver = new DiskBufferDriver(dsf.getResultFile("gdms"), GraphMetadataFactory.createEdgeSourcesMetadata());
+                }
+
+                String nodesTreePath = dsf.getTempFile();
+                DiskRTree nodesTree = new DiskRTree();
+                nodesTree.newIndex(new File(nodesTreePath));
+                String facesTreePath = dsf.getTempFile();
+                DiskRTree facesTree = new DiskRTree();
+                facesTree.newIndex(new File(facesTreePath));
+                //A point of each component, used to find the face that contains it
+                double[] componentPoints = new double[2 * componentCount];
+
+                try {
+                        pm.startTask("Polygonize the components", 100);
+                        int edgeId = 1;
+                        int faceId = 1;
+                        int[] nodeId = new int[]{1};
+                        Value[] edgeValues = new Value[tmpEdgesMetadata.getFieldCount()];
+                        for (int c = 0; c < componentCount; c++) {
+                                if (c >= 100 && c % 100 == 0) {
+                                        if (pm.isCancelled()) {
+                                                throw new DriverException("The polygonization of the components has been cancelled");
+                                        } else {
+                                                pm.progressTo((int) (100L * c / componentCount));
+                                        }
+                                }
+                                List<Geometry> edges;
+                                if (keepSourceRows) {
+                                        EdgeMerger edgeMerger = new EdgeMerger();
+                                        for (int k = offsets[c]; k < offsets[c + 1]; k++) {
+                                                edgeMerger.add(getPiece(piecesDriver, piecesByComponent[k]));
+                                        }
+                                        edges = new ArrayList<Geometry>(edgeMerger.getMergedLineStrings());
+                                } else {
+                                        LineMerger lineMerger = new LineMerger();
+                                        for (int k = offsets[c]; k < offsets[c + 1]; k++) {
+                                                lineMerger.add(piecesDriver.getGeometry(piecesByComponent[k], 0));
+                                        }
+                                        edges = new ArrayList<Geometry>(lineMerger.getMergedLineStrings());
+                                }
+                                ComponentPolygonizer.ComponentFaces componentFaces = ComponentPolygonizer.polygonize(edges);
+
+                                for (int i = 0; i < componentFaces.faces.size(); i++) {
+                                        Polygon face = componentFaces.faces.get(i);
+                                        facesTree.insert(face.getEnvelopeInternal(), faceId + i);
+                                        tmpFacesDriver.addValues(new Value[]{ValueFactory.createValue(face), ValueFactory.createValue(c)});
+                                }
+                                Coordinate point;
+                                if (componentFaces.outerRings.isEmpty()) {
+                                        point = edges.get(0).getCoordinate();
+                                        tmpOuterDriver.addValues(new Value[]{ValueFactory.createNullValue()});
+                                } else {
+                                        point = componentFaces.outerRings.get(0).getCoordinateN(0);
+                                        tmpOuterDriver.addValues(new Value[]{ValueFactory.createValue(
+                                                        gf.createMultiLineString(componentFaces.outerRings.toArray(new LineString[componentFaces.outerRings.size()])))});
+                                }
+                                componentPoints[2 * c] = point.x;
+                                componentPoints[2 * c + 1] = point.y;
+
+                                for (int i = 0; i < edges.size(); i++) {
+                                        Geometry edge = edges.get(i);
+                                        Coordinate[] cc = edge.getCoordinates();
+                                        if (sourcesDriver != null) {
+                                                PlanarGraphBuilder.addSources(sourcesDriver, edgeId, (int[]) edge.getUserData());
+                                        }
+                                        edgeValues[0] = ValueFactory.createValue(edge);
+                                        edgeValues[1] = ValueFactory.createValue(edgeId++);
+                                        edgeValues[2] = ValueFactory.createValue(getNode(nodesTree, nodesDriver, cc[0], nodeId));
+                                        edgeValues[3] = ValueFactory.createValue(getNode(nodesTree, nodesDriver, cc[cc.length - 1], nodeId));
+                                        edgeValues[4] = ValueFactory.createValue(toGlobalFace(componentFaces.rightFaces[i], faceId));
+                                        edgeValues[5] = ValueFactory.createValue(toGlobalFace(componentFaces.leftFaces[i], faceId));
+                                        edgeValues[COMPONENT_FIELD] = ValueFactory.createValue(c);
+                                        tmpEdgesDriver.addValues(edgeValues);
+                                }
+                                faceId += componentFaces.faces.size();
+                        }
+                        pm.endTask();
+                        nodesDriver.writingFinished();
+                        if (sourcesDriver != null) {
+                                sourcesDriver.writingFinished();
+                        }
+                        tmpEdgesDriver.writingFinished();
+                        tmpFacesDriver.writingFinished();
+                        tmpOuterDriver.writingFinished();
+
+                        tmpFacesDriver.open();
+                        tmpOuterDriver.open();
+                        tmpEdgesDriver.open();
+                        try {
+                                int[] containers = findContainers(tmpFacesDriver, facesTree, componentPoints, componentCount);
+                                DiskBufferDriver facesDriver = writeFaces(tmpFacesDriver, tmpOuterDriver, containers);
+                                DiskBufferDriver edgesDriver = writeEdges(tmpEdgesDriver, edgesMetadata, containers);
+                                if (sourcesDriver != null) {
+                                        return new DiskBufferDriver[]{nodesDriver, edgesDriver, facesDriver, sourcesDriver};
+                                }
+                                return new DiskBufferDriver[]{nodesDriver, edgesDriver, facesDriver};
+                        } finally {
+                                tmpFacesDriver.close();
+                                tmpOuterDriver.close();
+                                tmpEdgesDriver.close();
+                        }
+                } finally {
+                        tmpFacesDriver.getFile().delete();
+                        tmpOuterDriver.getFile().delete();
+                        tmpEdgesDriver.getFile().delete();
+                        new File(nodesTreePath).delete();
+                        new File(facesTreePath).delete();
+                }
+        }
+
+        private static int toGlobalFace(int localFace, int firstFaceId) {
+                return localFace == -1 ? -1 : localFace - 1 + firstFaceId;
+        }
+
+        private int getNode(DiskRTree nodesTree, DiskBufferDriver nodesDriver, Coordinate c, int[] nodeId) throws IOException, DriverException {
+                Envelope env = new Envelope(c);
+                int[] ids = nodesTree.query(env);
+                if (ids.length > 0) {
+                        return ids[0];
+                }
+                int id = nodeId[0]++;
+                nodesDriver.addValues(new Value[]{ValueFactory.createValue(gf.createPoint(c)),
+                                ValueFactory.createValue(id)});
+                nodesTree.insert(env, id);
+                return id;
+        }
+
+        /**
+         * Find for each component the smallest face of another component that
+         * contains it. A face may already have holes when a cut edge links an
+         * outer ring to an inner ring, so the point must also be outside them.
+         * @return the face id that contains each component or -1
+         */
+        private int[] findContainers(DiskBufferDriver tmpFacesDriver, DiskRTree facesTree, double[] componentPoints,
+                int componentCount) throws DriverException, IOException {
+                int[] containers = new int[componentCount];
+                for (int c = 0; c < componentCount; c++) {
+                        Coordinate point = new Coordinate(componentPoints[2 * c], componentPoints[2 * c + 1]);
+                        int container = -1;
+                        double containerArea = Double.MAX_VALUE;
+                        int[] candidates = facesTree.query(new Envelope(point));
+                        Arrays.sort(candidates);
+                        for (int faceId : candidates) {
+                                if (tmpFacesDriver.getFieldValue(faceId - 1, 1).getAsInt() != c) {
+                                        Polygon face = (Polygon) tmpFacesDriver.getGeometry(faceId - 1, 0);
+                                        if (ComponentPolygonizer.contains(face, point)) {
+                                                double area = face.getArea();
+                                                if (area < containerArea) {
+                                                        container = faceId;
+                                                        containerArea = area;
+                                                }
+                                        }
+                                }
+                        }
+                        containers[c] = container;
+                }
+                return containers;
+        }
+
+        /**
+         * Copy the faces and add the outer boundaries of the islands as holes.
+         * The faces keep their own holes.
+         */
+        private DiskBufferDriver writeFaces(DiskBufferDriver tmpFacesDriver, DiskBufferDriver tmpOuterDriver,
+                int[] containers) throws DriverException {
+                Map<Integer, List<Integer>> islands = new HashMap<Integer, List<Integer>>();
+                for (int c = 0; c < containers.length; c++) {
+                        if (containers[c] != -1 && !tmpOuterDriver.getFieldValue(c, 0).isNull()) {
+                                List<Integer> faceIslands = islands.get(containers[c]);
+                                if (faceIslands == null) {
+                                        faceIslands = new ArrayList<Integer>();
+                                        islands.put(containers[c], faceIslands);
+                                }
+                                faceIslands.add(c);
+                        }
+                }
+                DiskBufferDriver facesDriver = new DiskBufferDriver(dsf.getResultFile("gdms"), GraphMetadataFactory.createPolygonsMetadata());
+                long faceCount = tmpFacesDriver.getRowCount();
+                for (int i = 0; i < faceCount; i++) {
+                        Polygon face = (Polygon) tmpFacesDriver.getGeometry(i, 0);
+                        List<Integer> faceIslands = islands.get(i + 1);
+                        if (faceIslands != null) {
+                                List<LinearRing> holes = new ArrayList<LinearRing>();
+                                for (int k = 0; k < face.getNumInteriorRing(); k++) {
+                                        holes.add((LinearRing) face.getInteriorRingN(k));
+                                }
+                                for (Integer c : faceIslands) {
+                                        Geometry outer = tmpOuterDriver.getGeometry(c, 0);
+                                        for (int k = 0; k < outer.getNumGeometries(); k++) {
+                                                holes.add(gf.createLinearRing(outer.getGeometryN(k).getCoordinates()));
+                                        }
+                                }
+                                face = gf.createPolygon((LinearRing) face.getExteriorRing(), holes.toArray(new LinearRing[holes.size()]));
+                                face.normalize();
+                        }
+                        facesDriver.addValues(new Value[]{ValueFactory.createValue(face), ValueFactory.createValue(i + 1)});
+                }
+                facesDriver.writingFinished();
+                return facesDriver;
+        }
+
+        /**
+         * Copy the edges and give the face that contains their component to
+         * the sides without a face.
+         */
+        private DiskBufferDriver writeEdges(DiskBufferDriver tmpEdgesDriver, Metadata edgesMetadata,
+                int[] containers) throws DriverException {
+                DiskBufferDriver edgesDriver = new DiskBufferDriver(dsf.getResultFile("gdms"), edgesMetadata);
+                int fieldsCount = edgesMetadata.getFieldCount();
+                Value[] values = new Value[fieldsCount];
+                long edgeCount = tmpEdgesDriver.getRowCount();
+                for (int i = 0; i < edgeCount; i++) {
+                        Value[] row = tmpEdgesDriver.getRow(i);
+                        System.arraycopy(row, 0, values, 0, fieldsCount);
+                        int container = containers[row[COMPONENT_FIELD].getAsInt()];
+                        if (container != -1) {
+                                if (row[4].getAsInt() == -1) {
+                                        values[4] = ValueFactory.createValue(container);
+                                }
+                                if (row[5].getAsInt() == -1) {
+                                        values[5] = ValueFactory.createValue(container);
+                                }
+                        }
+                        edgesDriver.addValues(values);
+                }
+                edgesDriver.writingFinished();
+                return edgesDriver;
+        }
+}
@@ -31,40 +31,28 @@
 package org.gdms.gdmstopology.process;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
-import org.gdms.data.DataSourceCreationException;
 
 import org.gdms.data.DataSourceFactory;
-import org.gdms.data.NoSuchTableException;
-import org.gdms.data.NonEditableDataSourceException;
-import org.gdms.data.indexes.IndexException;
-import org.gdms.data.schema.DefaultMetadata;
-import org.gdms.data.types.Constraint;
-import org.gdms.data.types.Type;
-import org.gdms.data.types.TypeFactory;
+import org.gdms.data.schema.Metadata;
 import org.gdms.data.values.Value;
 import org.gdms.data.values.ValueFactory;
 import org.gdms.driver.DriverException;
-import org.gdms.driver.driverManager.DriverLoadException;
 import org.orbisgis.progress.ProgressMonitor;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
-import com.vividsolutions.jts.geom.IntersectionMatrix;
 import com.vividsolutions.jts.operation.linemerge.LineMerger;
-import com.vividsolutions.jts.operation.polygonize.Polygonizer;
 import java.io.File;
-import org.gdms.data.DataSource;
-import org.gdms.data.indexes.DefaultSpatialIndexQuery;
 import org.gdms.data.indexes.rtree.DiskRTree;
-import org.gdms.data.types.GeometryDimensionConstraint;
 import org.gdms.driver.DataSet;
 import org.gdms.driver.DiskBufferDriver;
-import org.gdms.gdmstopology.model.GraphSchema;
+import org.gdms.gdmstopology.model.GraphMetadataFactory;
 
 /**
  *
@@ -81,6 +69,10 @@ public class PlanarGraphBuilder {
         private String ds_nodes_name = ".nodes";
         private String ds_polygons_name = ".polygons";
         private String output_name;
+        private int tiledThreshold = -1;
+        private boolean hilbertOrder = false;
+        private boolean outOfCore = false;
+        private boolean keepSourceRows = false;
 
         /**
          * This class is used to computed a planar graph where spatial entities are represented in 3 datasources
@@ -100,34 +92,94 @@ public class PlanarGraphBuilder {
         }
 
         /**
-         * Create the datasources that contains edges without self-intersection and
-         * all nodes of the graph with a primary ID
+         * Set if the nodes must be renumbered following a Hilbert curve computed
+         * on their coordinates, so nodes close in space get close ids.
+         * @param hilbertOrder 
+         */
+        public void setHilbertOrder(boolean hilbertOrder) {
+                this.hilbertOrder = hilbertOrder;
+        }
+
+        /**
+         * Set the number of lines above which the lines are noded by tiles,
+         * in parallel. The default threshold of the {@link LineNoder} is used
+         * when it is not set.
+         * @param tiledThreshold 
+         */
+        public void setTiledThreshold(int tiledThreshold) {
+                this.tiledThreshold = tiledThreshold;
+        }
+
+        /**
+         * Set if the graph is built out of core : the input lines are spilled
+         * to a temporary file and noded tile by tile, then the noded lines are
+         * spilled too and the connected components are merged and polygonized
+         * one at a time. The noding is bounded by the lines of a few tiles, but
+         * a connected component is still merged and polygonized in memory, so
+         * the largest component must fit in memory. The edges collection is
+         * not filled in this mode.
+         * @param outOfCore 
+         */
+        public void setOutOfCore(boolean outOfCore) {
+                this.outOfCore = outOfCore;
+        }
+
+        /**
+         * Set if the rows of the input table each edge comes from are kept.
+         * They are written in a table named output_name.sources with the
+         * edge id and the row index in the input table, so the attributes can
+         * be found without a spatial join.
+         * @param keepSourceRows 
+         */
+        public void setKeepSourceRows(boolean keepSourceRows) {
+                this.keepSourceRows = keepSourceRows;
+        }
+
+        /**
+         * Create the datasources that contains edges without self-intersection,
+         * all nodes of the graph with a primary ID and the polygons.
+         * The faces are computed before the edges are written, so each edge
+         * is written once with its right and left faces.
          * @param sds
          * @throws DriverException, IOException
          */
         public void buildGraph(DataSet dataSet) throws DriverException, IOException {
+                if (outOfCore) {
+                        OutOfCorePlanarGraph outOfCoreGraph = new OutOfCorePlanarGraph(dsf, pm);
+                        outOfCoreGraph.setKeepSourceRows(keepSourceRows);
+                        LineNoder lineNoder = createLineNoder(dataSet);
+                        lineNoder.setDiskBuffer(dsf);
+                        DiskBufferDriver[] drivers = outOfCoreGraph.build(lineNoder);
+                        registerPolygons(drivers[2]);
+                        if (keepSourceRows) {
+                                registerSources(drivers[3]);
+                        }
+                        registerGraph(drivers[0], drivers[1]);
+                        return;
+                }
                 pm.startTask("Create edges graph", 100);
 
-                DefaultMetadata edgeMedata = new DefaultMetadata(new Type[]{
-                                TypeFactory.createType(Type.GEOMETRY,
-                                new Constraint[]{new GeometryDimensionConstraint(1)}),
-                                TypeFactory.createType(Type.INT), TypeFactory.createType(Type.INT), TypeFactory.createType(Type.INT), TypeFactory.createType(Type.INT), TypeFactory.createType(Type.INT)}, new String[]{
-                                "the_geom", GraphSchema.ID, GraphSchema.START_NODE, GraphSchema.END_NODE, GraphSchema.RIGHT_FACE, GraphSchema.LEFT_FACE});
+                Metadata edgeMedata = GraphMetadataFactory.createPlanarEdgesMetadata();
                 int edgesFieldsCount = edgeMedata.getFieldCount();
                 // Get linear elements from all geometries in the layer
                 Collection<Geometry> geomColl = getLines(dataSet);
 
                 // Create the edge layer by merging lines between 3+ order nodes
                 // (Merged lines are multilines)
-                LineMerger lineMerger = new LineMerger();
-                for (Geometry geometry : geomColl) {
-                        lineMerger.add(geometry);
+                // The EdgeMerger keeps the source rows of the lines.
+                if (keepSourceRows) {
+                        EdgeMerger edgeMerger = new EdgeMerger();
+                        edgeMerger.add(geomColl);
+                        edges = edgeMerger.getMergedLineStrings();
+                } else {
+                        LineMerger lineMerger = new LineMerger();
+                        for (Geometry geometry : geomColl) {
+                                lineMerger.add(geometry);
+                        }
+                        edges = lineMerger.getMergedLineStrings();
                 }
 
-                DefaultMetadata nodeMedata = new DefaultMetadata(new Type[]{
-                                TypeFactory.createType(Type.POINT),
-                                TypeFactory.createType(Type.INT)}, new String[]{"the_geom",
-                                GraphSchema.ID});
+                Metadata nodeMedata = GraphMetadataFactory.createNodesMetadataGraph();
 
                 DiskBufferDriver nodeDriver = new DiskBufferDriver(dsf.getResultFile("gdms"), nodeMedata);
 
@@ -135,9 +187,15 @@ public class PlanarGraphBuilder {
                 DiskRTree diskRTree = new DiskRTree();
                 diskRTree.newIndex(new File(dsf.getTempFile()));
 
-                edges = lineMerger.getMergedLineStrings();
+                EdgeFaceLocator faceLocator = createPolygons();
+                int[] rightFaces = faceLocator.getRightFaces();
+                int[] leftFaces = faceLocator.getLeftFaces();
 
                 DiskBufferDriver edgesDriver = new DiskBufferDriver(dsf.getResultFile("gdms"), edgeMedata);
+                DiskBufferDriver sourcesDriver = null;
+                if (keepSourceRows) {
+                        sourcesDriver = new DiskBufferDriver(dsf.getResultFile("gdms"), GraphMetadataFactory.createEdgeSourcesMetadata());
+                }
 
                 int gidNode = 1;
                 int i = 1;
@@ -147,7 +205,6 @@ public class PlanarGraphBuilder {
                         Geometry geom = (Geometry) it.next();
                         values[0] = ValueFactory.createValue(geom);
                         values[1] = ValueFactory.createValue(i);
-                        i++;
                         Coordinate[] cc = geom.getCoordinates();
                         Coordinate start = cc[0];
                         Coordinate end = cc[cc.length - 1];
@@ -171,179 +228,132 @@ public class PlanarGraphBuilder {
                         } else {
                                 values[3] = ValueFactory.createValue(gidsEnd[0]);
                         }
-                        values[4] = ValueFactory.createValue(-1);
-                        values[5] = ValueFactory.createValue(-1);
+                        values[4] = ValueFactory.createValue(rightFaces[i - 1]);
+                        values[5] = ValueFactory.createValue(leftFaces[i - 1]);
                         edgesDriver.addValues(values);
+                        if (sourcesDriver != null) {
+                                addSources(sourcesDriver, i, (int[]) geom.getUserData());
+                        }
+                        i++;
 
                 }
 
                 // write envelope
                 edgesDriver.writingFinished();
                 nodeDriver.writingFinished();
+                if (sourcesDriver != null) {
+                        sourcesDriver.writingFinished();
+                        registerSources(sourcesDriver);
+                }
+                registerGraph(nodeDriver, edgesDriver);
+                pm.endTask();
+        }
+
+        /**
+         * Write the rows of the input table an edge comes from.
+         * @param sourcesDriver
+         * @param edgeId
+         * @param rows
+         * @throws DriverException 
+         */
+        static void addSources(DiskBufferDriver sourcesDriver, int edgeId, int[] rows) throws DriverException {
+                Value edgeValue = ValueFactory.createValue(edgeId);
+                for (int row : rows) {
+                        sourcesDriver.addValues(new Value[]{edgeValue, ValueFactory.createValue(row)});
+                }
+        }
+
+        /**
+         * Register the datasource that links the edges to the input rows.
+         * @param sourcesDriver 
+         */
+        private void registerSources(DiskBufferDriver sourcesDriver) {
+                String ds_sources_name = dsf.getSourceManager().getUniqueName(output_name + ".sources");
+                dsf.getSourceManager().register(ds_sources_name, sourcesDriver.getFile());
+        }
+
+        /**
+         * Renumber the nodes if needed and register the nodes and edges datasources.
+         * @param nodeDriver
+         * @param edgesDriver
+         * @throws DriverException 
+         */
+        private void registerGraph(DiskBufferDriver nodeDriver, DiskBufferDriver edgesDriver) throws DriverException {
+                if (hilbertOrder) {
+                        DiskBufferDriver[] drivers = new NodeRenumbering(dsf, pm).renumber(nodeDriver, edgesDriver);
+                        nodeDriver = drivers[0];
+                        edgesDriver = drivers[1];
+                }
                 ds_nodes_name = dsf.getSourceManager().getUniqueName(output_name + ds_nodes_name);
                 dsf.getSourceManager().register(ds_nodes_name, nodeDriver.getFile());
                 ds_edges_name = dsf.getSourceManager().getUniqueName(output_name + ds_edges_name);
                 dsf.getSourceManager().register(ds_edges_name, edgesDriver.getFile());
         }
 
+        /**
+         * Register the polygons datasource.
+         * @param faceDriver 
+         */
+        private void registerPolygons(DiskBufferDriver faceDriver) {
+                ds_polygons_name = dsf.getSourceManager().getUniqueName(output_name + ds_polygons_name);
+                dsf.getSourceManager().register(ds_polygons_name, faceDriver);
+        }
+
         /**
          * Extract all lines as a set of connected and splitted lines.
          * Self-intersection is not allowed.
-         * This method uses the union operator. It must be changed in the futur to limit memory overhead.
+         * This method uses the union operator or, above the tiled threshold,
+         * the tiled noder.
          * @param dataSet
          * @return
          * @throws DriverException
          */
         public Collection<Geometry> getLines(DataSet dataSet)
                 throws DriverException {
-                LineNoder linenoder = new LineNoder(dataSet);
-                Collection lines = linenoder.getLines();
-
-                final Geometry nodedGeom = linenoder.getNodeLines((List) lines);
-
-                return linenoder.toLines(nodedGeom);
+                return createLineNoder(dataSet).getNodedLines();
+        }
 
+        private LineNoder createLineNoder(DataSet dataSet) {
+                LineNoder linenoder = new LineNoder(dataSet, pm);
+                if (tiledThreshold > 0) {
+                        linenoder.setTiledThreshold(tiledThreshold);
+                }
+                linenoder.setKeepSourceRows(keepSourceRows);
+                return linenoder;
         }
 
         /**
-         * Create the datasource that contains polygons.
-         * @param inputSDS
-         * @param omEdges
+         * Create the datasource that contains polygons and find the faces
+         * on both sides of the edges.
+         * @return the faces of the edges
          * @throws DriverException
-         * @throws NonEditableDataSourceException
-         * @throws NoSuchTableException
-         * @throws IndexException
          */
-        public void createPolygonAndTopology() throws DriverException,
-                NonEditableDataSourceException, NoSuchTableException,
-                IndexException,
-                IOException,
-                DriverLoadException,
-                DataSourceCreationException {
+        private EdgeFaceLocator createPolygons() throws DriverException {
                 // Create the face layer
 
-                DefaultMetadata faceMedata = new DefaultMetadata(new Type[]{
-                                TypeFactory.createType(Type.POLYGON),
-                                TypeFactory.createType(Type.INT)}, new String[]{"the_geom",
-                                GraphSchema.ID});
+                DiskBufferDriver faceDriver = new DiskBufferDriver(dsf.getResultFile("gdms"), GraphMetadataFactory.createPolygonsMetadata());
 
-                DiskBufferDriver faceDriver = new DiskBufferDriver(dsf.getResultFile("gdms"), faceMedata);
-
-                Polygonizer polygonizer = new Polygonizer();
-                polygonizer.add(edges);
-                Collection polygons = polygonizer.getPolygons();
+                // The connected components are polygonized in parallel
+                List<Geometry> edgeList = new ArrayList<Geometry>(edges);
+                ComponentPolygonizer polygonizer = new ComponentPolygonizer(edgeList, pm);
+                List<Geometry> faces = polygonizer.getPolygons();
 
 
                 int no = 1;
-                for (Iterator it = polygons.iterator(); it.hasNext();) {
-                        Geometry face = (Geometry) it.next();
-                        face.normalize(); // add on 2007-08-11
+                for (Geometry face : faces) {
                         faceDriver.addValues(new Value[]{ValueFactory.createValue(face),
                                         ValueFactory.createValue(new Integer(no++))});
 
                 }
 
                 faceDriver.writingFinished();
-
-                ds_polygons_name = dsf.getSourceManager().getUniqueName(output_name + ds_polygons_name);
-                dsf.getSourceManager().register(ds_polygons_name, faceDriver);
-
-                DataSource sdsFaces = dsf.getDataSource(ds_polygons_name);
-
-                DataSource sdsEdges = dsf.getDataSource(ds_edges_name);
-
-                sdsFaces.open();
-                sdsEdges.open();
-
-                // inscrit les numéros de face dans les arcs
-                // Les arcs qui sont en bords de face sont codés à -1.
-
-                int leftFaceIndex = sdsEdges.getFieldIndexByName(GraphSchema.LEFT_FACE);
-                int rigthFaceIndex = sdsEdges.getFieldIndexByName(GraphSchema.RIGHT_FACE);
-
-
-                long rowCount = sdsEdges.getRowCount();
-                for (int i = 0; i < rowCount; i++) {
-
-                        Geometry g1 = sdsEdges.getGeometry(i);
-
-                        sdsEdges.setInt(i, leftFaceIndex,
-                                MINUS_ONE);
-                        sdsEdges.setInt(i, rigthFaceIndex,
-                                MINUS_ONE);
-                        Iterator<Integer> iterator = query(sdsFaces, g1.getEnvelopeInternal());
-
-                        while (iterator.hasNext()) {
-                                Integer index = iterator.next();
-                                Geometry g = sdsFaces.getGeometry(index);
-                                Value val = ValueFactory.createValue(index + 1);
-                                IntersectionMatrix im = g1.relate(g);
-                                // intersection between boundaries has dimension 1
-                                if (im.matches("*1*******")) {
-                                        int edgeC0 = getIndex(g1.getCoordinates()[0], g);
-                                        int edgeC1 = getIndex(g1.getCoordinates()[1], g);
-
-                                        // The Math.abs(edgeC1-edgeC0) test inverse the rule when
-                                        // the two
-                                        // consecutive
-                                        // points are the last point and the first point of a
-                                        // ring...
-
-                                        if ((edgeC1 > edgeC0 && Math.abs(edgeC1 - edgeC0) == 1)
-                                                || (edgeC1 < edgeC0 && Math.abs(edgeC1 - edgeC0) > 1)) {
-                                                sdsEdges.setFieldValue(i, rigthFaceIndex, val);
-                                        } else {
-                                                sdsEdges.setFieldValue(i, leftFaceIndex, val);
-                                        }
-                                } // intersection between the line and the polygon interior has
-                                // dimension
-                                // 1
-                                else if (im.matches("1********")) {
-                                        sdsEdges.setFieldValue(i, rigthFaceIndex, val);
-                                        sdsEdges.setFieldValue(i, leftFaceIndex, val);
-
-                                } // intersection between the line and the polygon exterior has
-                                // dimension
-                                // 1
-                                // else if (im.matches("F********")) {}
-                                else;
-
-                        }
-
-                }
-                sdsEdges.commit();
-                sdsEdges.close();
-                sdsFaces.close();
-
-        }
-
-        // Returns the index of c in the geometry g or -1 if c is not a vertex of g
-        private int getIndex(Coordinate c, Geometry g) {
-                Coordinate[] cc = g.getCoordinates();
-                for (int i = 0; i < cc.length; i++) {
-                        if (cc[i].equals(c)) {
-                                return i;
-                        }
-                }
-                return -1;
-        }
-
-        /**
-         * A quick search for geometries, using an envelope comparison.
-         *
-         * @param envelope
-         *            the envelope to query against
-         * @return geometries whose envelopes intersect the given envelope
-         */
-        public Iterator<Integer> query(DataSource sdsFaces, Envelope envelope)
-                throws DriverException, NoSuchTableException, IndexException {
-
-                if (!dsf.getIndexManager().isIndexed(ds_polygons_name, "the_geom")) {
-                        dsf.getIndexManager().buildIndex(ds_polygons_name, "the_geom", pm);
-                }
-
-                DefaultSpatialIndexQuery query = new DefaultSpatialIndexQuery("the_geom", envelope);
-                Iterator<Integer> it = sdsFaces.queryIndex(query);
-                return it;
+                registerPolygons(faceDriver);
+
+                // The faces are found from the rings of the polygons, 
+                // without any spatial predicate on the edges of the rings.
+                // The edges without a face are coded -1.
+                EdgeFaceLocator faceLocator = new EdgeFaceLocator(edgeList, faces);
+                faceLocator.locate();
+                return faceLocator;
         }
 }
@@ -0,0 +1,255 @@
+/**
+ * GDMS-Topology  is a library dedicated to graph analysis. It is based on the JGraphT
+ * library available at <http://www.jgrapht.org/>. It enables computing and processing
+ * large graphs using spatial and alphanumeric indexes.
+ *
+ * This version is developed at French IRSTV institut as part of the
+ * EvalPDU project, funded by the French Agence Nationale de la Recherche
+ * (ANR) under contract ANR-08-VILL-0005-01 and GEBD project
+ * funded by the French Ministery of Ecology and Sustainable Development.
+ *
+ * GDMS-Topology  is distributed under GPL 3 license. It is produced by the "Atelier SIG"
+ * team of the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2009-2012 IRSTV (FR CNRS 2488)
+ *
+ * GDMS-Topology is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * GDMS-Topology is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * GDMS-Topology. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://wwwc.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.gdmstopology.process;
+
+import java.util.Arrays;
+import org.gdms.gdmstopology.model.ArrayGraph;
+import org.gdms.gdmstopology.utils.IndexedMinHeap;
+
+/**
+ * A single source Dijkstra search on an {@link ArrayGraph} whose adjacency is
+ * built. The state of the search is stored in arrays allocated once and only
+ * the nodes reached by a search are reset before the next one, so a search
+ * object can be reused for many sources by one thread. Several threads can
+ * share the graph, each one with its own search.
+ *
+ * The nodes are settled in the order of their distance. When the paths are
+ * counted, the number of shortest paths to each node and the edges that end
+ * them (the predecessors) are kept too.
+ *
+ * @author Erwan Bocher
+ */
+public class ShortestPathSearch {
+
+        private final ArrayGraph graph;
+        private final boolean countPaths;
+        private final double[] distances;
+        private final boolean[] settled;
+        private final int[] settledNodes;
+        private int settledCount;
+        private final int[] touchedNodes;
+        private int touchedCount;
+        private final IndexedMinHeap heap;
+        //The number of shortest paths and the predecessors, as linked lists in arrays
+        private double[] pathCounts;
+        private int[] firstPredecessor;
+        private int[] nextPredecessor;
+        private int[] predecessorEdges;
+        private int[] predecessorNodes;
+        private int predecessorCount;
+
+        /**
+         * 
+         * @param graph a graph whose adjacency is built
+         * @param countPaths true if the shortest paths are counted
+         */
+        public ShortestPathSearch(ArrayGraph graph, boolean countPaths) {
+                this.graph = graph;
+                this.countPaths = countPaths;
+                int nodeCount = graph.getNodeCount();
+                distances = new double[nodeCount];
+                Arrays.fill(distances, Double.POSITIVE_INFINITY);
+                settled = new boolean[nodeCount];
+                settledNodes = new int[nodeCount];
+                touchedNodes = new int[nodeCount];
+                heap = new IndexedMinHeap(nodeCount);
+                if (countPaths) {
+                        pathCounts = new double[nodeCount];
+                        firstPredecessor = new int[nodeCount];
+                        Arrays.fill(firstPredecessor, -1);
+                        int capacity = nodeCount == 0 ? 16 : Math.max(16, graph.getLastEdge(nodeCount - 1));
+                        nextPredecessor = new int[capacity];
+                        predecessorEdges = new int[capacity];
+                        predecessorNodes = new int[capacity];
+                }
+        }
+
+        /**
+         * Compute the shortest paths from a source up to a radius.
+         * @param source
+         * @param radius the nodes farther than the radius are not reached
+         */
+        public void search(int source, double radius) {
+                reset();
+                touch(source, 0);
+                if (countPaths) {
+                        pathCounts[source] = 1;
+                }
+                heap.push(source, 0);
+                while (!heap.isEmpty()) {
+                        int node = heap.poll();
+                        double distance = distances[node];
+                        settled[node] = true;
+                        settledNodes[settledCount++] = node;
+                        int last = graph.getLastEdge(node);
+                        for (int position = graph.getFirstEdge(node); position < last; position++) {
+                                int edge = graph.getAdjacentEdge(position);
+                                int next = graph.getOpposite(edge, node);
+                                if (settled[next]) {
+                                        continue;
+                                }
+                                double nextDistance = distance + graph.getWeight(edge);
+                                if (nextDistance > radius) {
+                                        continue;
+                                }
+                                double current = distances[next];
+                                if (current == Double.POSITIVE_INFINITY) {
+                                        touch(next, nextDistance);
+                                        heap.push(next, nextDistance);
+                                        if (countPaths) {
+                                                pathCounts[next] = pathCounts[node];
+                                                addPredecessor(next, edge, node);
+                                        }
+                                } else if (nextDistance < current) {
+                                        distances[next] = nextDistance;
+                                        heap.push(next, nextDistance);
+                                        if (countPaths) {
+                                                pathCounts[next] = pathCounts[node];
+                                                firstPredecessor[next] = -1;
+                                                addPredecessor(next, edge, node);
+                                        }
+                                } else if (countPaths && nextDistance == current) {
+                                        pathCounts[next] += pathCounts[node];
+                                        addPredecessor(next, edge, node);
+                                }
+                        }
+                }
+        }
+
+        private void touch(int node, double distance) {
+                distances[node] = distance;
+                touchedNodes[touchedCount++] = node;
+        }
+
+        private void addPredecessor(int node, int edge, int predecessor) {
+                if (predecessorCount == predecessorEdges.length) {
+                        int capacity = predecessorCount * 2;
+                        nextPredecessor = Arrays.copyOf(nextPredecessor, capacity);
+                        predecessorEdges = Arrays.copyOf(predecessorEdges, capacity);
+                        predecessorNodes = Arrays.copyOf(predecessorNodes, capacity);
+                }
+                predecessorEdges[predecessorCount] = edge;
+                predecessorNodes[predecessorCount] = predecessor;
+                nextPredecessor[predecessorCount] = firstPredecessor[node];
+                firstPredecessor[node] = predecessorCount;
+                predecessorCount++;
+        }
+
+        /**
+         * Reset the nodes reached by the previous search.
+         */
+        private void reset() {
+                for (int i = 0; i < touchedCount; i++) {
+                        int node = touchedNodes[i];
+                        distances[node] = Double.POSITIVE_INFINITY;
+                        settled[node] = false;
+                        if (countPaths) {
+                                pathCounts[node] = 0;
+                                firstPredecessor[node] = -1;
+                        }
+                }
+                touchedCount = 0;
+                settledCount = 0;
+                predecessorCount = 0;
+                heap.clear();
+        }
+
+        /**
+         * 
+         * @return the number of nodes reached by the search
+         */
+        public int getSettledCount() {
+                return settledCount;
+        }
+
+        /**
+         * 
+         * @param i
+         * @return the i-th node reached, the nodes being ordered by distance
+         */
+        public int getSettledNode(int i) {
+                return settledNodes[i];
+        }
+
+        /**
+         * 
+         * @param node
+         * @return the distance of a node, infinite if it is not reached
+         */
+        public double getDistance(int node) {
+                return distances[node];
+        }
+
+        /**
+         * 
+         * @param node
+         * @return the number of shortest paths from the source to the node
+         */
+        public double getPathCount(int node) {
+                return pathCounts[node];
+        }
+
+        /**
+         * 
+         * @param node
+         * @return the first predecessor of the node or -1
+         */
+        public int getFirstPredecessor(int node) {
+                return firstPredecessor[node];
+        }
+
+        /**
+         * 
+         * @param predecessor
+         * @return the next predecessor of the same node or -1
+         */
+        public int getNextPredecessor(int predecessor) {
+                return nextPredecessor[predecessor];
+        }
+
+        /**
+         * 
+         * @param predecessor
+         * @return the edge that ends a shortest path
+         */
+        public int getPredecessorEdge(int predecessor) {
+                return predecessorEdges[predecessor];
+        }
+
+        /**
+         * 
+         * @param predecessor
+         * @return the node the edge comes from
+         */
+        public int getPredecessorNode(int predecessor) {
+                return predecessorNodes[predecessor];
+        }
+}
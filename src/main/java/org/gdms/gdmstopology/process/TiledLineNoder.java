@@ -0,0 +1,472 @@
+/**
+ * GDMS-Topology  is a library dedicated to graph analysis. It is based on the JGraphT
+ * library available at <http://www.jgrapht.org/>. It enables computing and processing
+ * large graphs using spatial and alphanumeric indexes.
+ *
+ * This version is developed at French IRSTV institut as part of the
+ * EvalPDU project, funded by the French Agence Nationale de la Recherche
+ * (ANR) under contract ANR-08-VILL-0005-01 and GEBD project
+ * funded by the French Ministery of Ecology and Sustainable Development.
+ *
+ * GDMS-Topology  is distributed under GPL 3 license. It is produced by the "Atelier SIG"
+ * team of the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2009-2012 IRSTV (FR CNRS 2488)
+ *
+ * GDMS-Topology is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * GDMS-Topology is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * GDMS-Topology. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://wwwc.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.gdmstopology.process;
+
+import com.vividsolutions.jts.algorithm.RobustLineIntersector;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateArrays;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import com.vividsolutions.jts.noding.IntersectionAdder;
+import com.vividsolutions.jts.noding.MCIndexNoder;
+import com.vividsolutions.jts.noding.NodedSegmentString;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.gdms.driver.DriverException;
+import org.orbisgis.progress.ProgressMonitor;
+
+/**
+ * Nodes a large set of lines using a regular grid of tiles.
+ *
+ * Each line belongs to the tile that contains the center of its envelope.
+ * A tile is noded with all the lines that intersect the envelopes of its own lines
+ * (the halo), so the pieces of its own lines are complete. Only the pieces of
+ * the own lines are returned, so each line is noded once whatever the number of
+ * tiles it crosses.
+ *
+ * The lines are always noded in the order of their index, so a pair of lines
+ * gets the same intersection points in all the tiles and the pieces of two
+ * neighbouring tiles share the same nodes. The pieces that overlap exactly
+ * are returned once, by the line with the smallest index.
+ *
+ * The tiles are noded in parallel.
+ *
+ * @author Erwan Bocher
+ */
+public class TiledLineNoder {
+
+        private final List<LineString> lines = new ArrayList<LineString>();
+        private final ProgressMonitor pm;
+        private GeometryFactory gf = new GeometryFactory();
+        private int linesPerTile = 10000;
+        private int threadCount = Runtime.getRuntime().availableProcessors();
+        private STRtree tree = new STRtree();
+        private Envelope fullExtent = new Envelope();
+        private int[] lineRows = new int[1024];
+
+        /**
+         * Create an empty noder. The lines are added with {@link #add(Geometry)}.
+         * @param pm 
+         */
+        public TiledLineNoder(ProgressMonitor pm) {
+                this.pm = pm;
+        }
+
+        /**
+         * 
+         * @param lines the lines to node
+         * @param pm 
+         */
+        public TiledLineNoder(Collection<? extends Geometry> lines, ProgressMonitor pm) {
+                this.pm = pm;
+                for (Geometry geom : lines) {
+                        add(geom);
+                }
+        }
+
+        /**
+         * Add the linear components of a geometry to the lines to node.
+         * They are inserted in the spatial index as they come.
+         * @param geom 
+         */
+        public void add(Geometry geom) {
+                add(geom, -1);
+        }
+
+        /**
+         * Add the linear components of a geometry read at the given row.
+         * The noded lines keep the sorted rows of all the lines they come from,
+         * as an int array in their user data.
+         * @param geom
+         * @param row the row of the geometry, -1 if it is unknown
+         */
+        public void add(Geometry geom, int row) {
+                for (Iterator it = LineNoder.toLines(geom).iterator(); it.hasNext();) {
+                        LineString line = (LineString) it.next();
+                        Envelope env = line.getEnvelopeInternal();
+                        fullExtent.expandToInclude(env);
+                        tree.insert(env, lines.size());
+                        if (lines.size() == lineRows.length) {
+                                lineRows = Arrays.copyOf(lineRows, lineRows.length * 2);
+                        }
+                        lineRows[lines.size()] = row;
+                        lines.add(line);
+                }
+        }
+
+        /**
+         * 
+         * @return the number of lines to node.
+         */
+        public int size() {
+                return lines.size();
+        }
+
+        /**
+         * Set the mean number of lines owned by a tile.
+         * @param linesPerTile 
+         */
+        public void setLinesPerTile(int linesPerTile) {
+                this.linesPerTile = linesPerTile;
+        }
+
+        /**
+         * 
+         * @return the mean number of lines owned by a tile.
+         */
+        public int getLinesPerTile() {
+                return linesPerTile;
+        }
+
+        /**
+         * Set the number of threads used to node the tiles.
+         * @param threadCount 
+         */
+        public void setThreadCount(int threadCount) {
+                this.threadCount = threadCount;
+        }
+
+        /**
+         * 
+         * @return the number of threads used to node the tiles.
+         */
+        public int getThreadCount() {
+                return threadCount;
+        }
+
+        /**
+         * Node the lines.
+         * @return a list of linestrings, noded together
+         * @throws DriverException 
+         */
+        public List<Geometry> getNodedLines() throws DriverException {
+                final List<Geometry> nodedLines = new ArrayList<Geometry>();
+                node(new LineSink() {
+
+                        @Override
+                        public void add(Geometry line) {
+                                nodedLines.add(line);
+                        }
+                });
+                return nodedLines;
+        }
+
+        /**
+         * Node the lines and give the noded lines to the sink, tile after tile,
+         * as soon as they are ready.
+         * Only a few tiles ahead of the one written are noded at the same time,
+         * so the memory used does not depend on the size of the result.
+         * @param sink
+         * @throws DriverException if the sink fails or the noding is cancelled
+         */
+        public void node(LineSink sink) throws DriverException {
+                if (lines.isEmpty()) {
+                        return;
+                }
+                pm.startTask("Node the lines", 100);
+                //The tree is built before the threads query it.
+                tree.build();
+                List<int[]> tiles = getTiles();
+
+                int nbThreads = Math.max(1, threadCount);
+                ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+                try {
+                        LinkedList<Future<List<LineString>>> results = new LinkedList<Future<List<LineString>>>();
+                        int submitted = 0;
+                        for (int i = 0; i < tiles.size(); i++) {
+                                while (submitted < tiles.size() && submitted < i + 2 * nbThreads) {
+                                        final int[] tile = tiles.get(submitted);
+                                        results.add(executor.submit(new Callable<List<LineString>>() {
+
+                                                @Override
+                                                public List<LineString> call() {
+                                                        return nodeTile(tile);
+                                                }
+                                        }));
+                                        submitted++;
+                                }
+                                if (pm.isCancelled()) {
+                                        throw new DriverException("The noding of the lines has been cancelled");
+                                }
+                                pm.progressTo(100 * i / tiles.size());
+                                for (LineString piece : results.removeFirst().get()) {
+                                        sink.add(piece);
+                                }
+                        }
+                } catch (InterruptedException e) {
+                        throw new DriverException("The noding of the lines has been interrupted", e);
+                } catch (ExecutionException e) {
+                        throw new DriverException("Cannot node the lines", e.getCause());
+                } finally {
+                        executor.shutdownNow();
+                }
+                pm.endTask();
+        }
+
+        /**
+         * Group the lines by tile using the center of their envelopes.
+         * The empty tiles are not returned.
+         * @return the sorted line indexes of each tile
+         */
+        private List<int[]> getTiles() {
+                int side = (int) Math.max(1, Math.ceil(Math.sqrt(lines.size() / (double) Math.max(1, linesPerTile))));
+                int[] tileOfLine = new int[lines.size()];
+                int[] counts = new int[side * side];
+                for (int i = 0; i < lines.size(); i++) {
+                        Envelope env = lines.get(i).getEnvelopeInternal();
+                        int col = getCell((env.getMinX() + env.getMaxX()) / 2, fullExtent.getMinX(), fullExtent.getWidth(), side);
+                        int row = getCell((env.getMinY() + env.getMaxY()) / 2, fullExtent.getMinY(), fullExtent.getHeight(), side);
+                        tileOfLine[i] = row * side + col;
+                        counts[tileOfLine[i]]++;
+                }
+                int[][] tiles = new int[counts.length][];
+                for (int i = 0; i < counts.length; i++) {
+                        tiles[i] = new int[counts[i]];
+                        counts[i] = 0;
+                }
+                for (int i = 0; i < tileOfLine.length; i++) {
+                        int tile = tileOfLine[i];
+                        tiles[tile][counts[tile]++] = i;
+                }
+                List<int[]> result = new ArrayList<int[]>();
+                for (int[] tile : tiles) {
+                        if (tile.length > 0) {
+                                result.add(tile);
+                        }
+                }
+                return result;
+        }
+
+        /**
+         * 
+         * @return the column or the row of the cell of a grid that contains a value
+         */
+        static int getCell(double value, double min, double length, int side) {
+                if (length <= 0) {
+                        return 0;
+                }
+                return Math.min(side - 1, (int) ((value - min) / length * side));
+        }
+
+        /**
+         * Node the lines of a tile with its halo and return the pieces of
+         * the lines owned by the tile.
+         * @param tile the sorted indexes of the lines owned by the tile
+         * @return 
+         */
+        private List<LineString> nodeTile(int[] tile) {
+                Set<Integer> halo = new HashSet<Integer>();
+                for (int lineIndex : tile) {
+                        List candidates = tree.query(lines.get(lineIndex).getEnvelopeInternal());
+                        for (Iterator it = candidates.iterator(); it.hasNext();) {
+                                halo.add((Integer) it.next());
+                        }
+                }
+                int[] haloIndexes = new int[halo.size()];
+                int k = 0;
+                for (Integer lineIndex : halo) {
+                        haloIndexes[k++] = lineIndex;
+                }
+                //The lines are always given to the noder in the same order
+                Arrays.sort(haloIndexes);
+                LineString[] haloLines = new LineString[haloIndexes.length];
+                int[] haloRows = new int[haloIndexes.length];
+                for (int i = 0; i < haloIndexes.length; i++) {
+                        haloLines[i] = lines.get(haloIndexes[i]);
+                        haloRows[i] = lineRows[haloIndexes[i]];
+                }
+                return nodeTile(gf, tile, haloIndexes, haloLines, haloRows);
+        }
+
+        /**
+         * Node the lines of a tile with its halo and return the pieces of
+         * the lines owned by the tile.
+         * @param gf
+         * @param tile the sorted indexes of the lines owned by the tile
+         * @param haloIndexes the sorted indexes of the lines of the tile and
+         * of its halo
+         * @param haloLines the lines of the halo, in the order of their indexes
+         * @param haloRows the rows of the lines of the halo, -1 if unknown
+         * @return 
+         */
+        static List<LineString> nodeTile(GeometryFactory gf, int[] tile, int[] haloIndexes, LineString[] haloLines,
+                int[] haloRows) {
+                List<NodedSegmentString> segmentStrings = new ArrayList<NodedSegmentString>(haloIndexes.length);
+                for (int i = 0; i < haloIndexes.length; i++) {
+                        Coordinate[] coords = CoordinateArrays.removeRepeatedPoints(haloLines[i].getCoordinates());
+                        if (coords.length > 1) {
+                                segmentStrings.add(new NodedSegmentString(coords, i));
+                        }
+                }
+                MCIndexNoder noder = new MCIndexNoder();
+                noder.setSegmentIntersector(new IntersectionAdder(new RobustLineIntersector()));
+                noder.computeNodes(segmentStrings);
+
+                //The substrings are sorted by line index, so the first line that
+                //gives a piece is the one with the smallest index.
+                //A line that overlaps a piece of an own line intersects its envelope,
+                //so it is in the halo and gives the same piece.
+                Map<PieceKey, PieceOwners> owners = new HashMap<PieceKey, PieceOwners>();
+                List<Integer> lineIndexes = new ArrayList<Integer>();
+                List<Coordinate[]> substringsCoords = new ArrayList<Coordinate[]>();
+                List<PieceKey> keys = new ArrayList<PieceKey>();
+                for (Iterator it = noder.getNodedSubstrings().iterator(); it.hasNext();) {
+                        NodedSegmentString ss = (NodedSegmentString) it.next();
+                        Coordinate[] coords = CoordinateArrays.removeRepeatedPoints(ss.getCoordinates());
+                        if (coords.length > 1) {
+                                int haloIndex = (Integer) ss.getData();
+                                int lineIndex = haloIndexes[haloIndex];
+                                PieceKey key = new PieceKey(coords);
+                                PieceOwners pieceOwners = owners.get(key);
+                                if (pieceOwners == null) {
+                                        pieceOwners = new PieceOwners(lineIndex);
+                                        owners.put(key, pieceOwners);
+                                }
+                                pieceOwners.addRow(haloRows[haloIndex]);
+                                if (Arrays.binarySearch(tile, lineIndex) >= 0) {
+                                        lineIndexes.add(lineIndex);
+                                        substringsCoords.add(coords);
+                                        keys.add(key);
+                                }
+                        }
+                }
+                List<LineString> pieces = new ArrayList<LineString>(lineIndexes.size());
+                for (int i = 0; i < lineIndexes.size(); i++) {
+                        PieceOwners pieceOwners = owners.get(keys.get(i));
+                        if (!pieceOwners.written && pieceOwners.owner == lineIndexes.get(i)) {
+                                LineString piece = gf.createLineString(substringsCoords.get(i));
+                                piece.setUserData(pieceOwners.getRows());
+                                pieces.add(piece);
+                                //A line that overlaps itself gives its piece once
+                                pieceOwners.written = true;
+                        }
+                }
+                return pieces;
+        }
+
+        /**
+         * The line that returns a piece and the rows of all the lines that give it.
+         */
+        private static final class PieceOwners {
+
+                private final int owner;
+                private int[] rows = new int[1];
+                private int rowCount = 0;
+                private boolean written = false;
+
+                PieceOwners(int owner) {
+                        this.owner = owner;
+                }
+
+                void addRow(int row) {
+                        if (row == -1) {
+                                return;
+                        }
+                        if (rowCount == rows.length) {
+                                rows = Arrays.copyOf(rows, rowCount * 2);
+                        }
+                        rows[rowCount++] = row;
+                }
+
+                /**
+                 * 
+                 * @return the sorted and distinct rows
+                 */
+                int[] getRows() {
+                        int[] sorted = Arrays.copyOf(rows, rowCount);
+                        Arrays.sort(sorted);
+                        int k = 0;
+                        for (int i = 0; i < sorted.length; i++) {
+                                if (k == 0 || sorted[i] != sorted[k - 1]) {
+                                        sorted[k++] = sorted[i];
+                                }
+                        }
+                        return Arrays.copyOf(sorted, k);
+                }
+        }
+
+        /**
+         * A key used to find the pieces with the same coordinates,
+         * whatever their direction.
+         */
+        private static final class PieceKey {
+
+                private final Coordinate[] coords;
+                private final int hash;
+
+                PieceKey(Coordinate[] coords) {
+                        Coordinate[] normalized = coords;
+                        if (coords[coords.length - 1].compareTo(coords[0]) < 0) {
+                                normalized = CoordinateArrays.copyDeep(coords);
+                                CoordinateArrays.reverse(normalized);
+                        }
+                        this.coords = normalized;
+                        this.hash = Arrays.hashCode(normalized);
+                }
+
+                @Override
+                public int hashCode() {
+                        return hash;
+                }
+
+                @Override
+                public boolean equals(Object obj) {
+                        if (!(obj instanceof PieceKey)) {
+                                return false;
+                        }
+                        return Arrays.equals(coords, ((PieceKey) obj).coords);
+                }
+        }
+
+        /**
+         * Receives the noded lines.
+         */
+        public interface LineSink {
+
+                void add(Geometry line) throws DriverException;
+        }
+}
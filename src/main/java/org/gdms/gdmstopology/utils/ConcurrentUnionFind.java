@@ -0,0 +1,132 @@
+/**
+ * GDMS-Topology  is a library dedicated to graph analysis. It is based on the JGraphT
+ * library available at <http://www.jgrapht.org/>. It enables computing and processing
+ * large graphs using spatial and alphanumeric indexes.
+ *
+ * This version is developed at French IRSTV institut as part of the
+ * EvalPDU project, funded by the French Agence Nationale de la Recherche
+ * (ANR) under contract ANR-08-VILL-0005-01 and GEBD project
+ * funded by the French Ministery of Ecology and Sustainable Development.
+ *
+ * GDMS-Topology  is distributed under GPL 3 license. It is produced by the "Atelier SIG"
+ * team of the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2009-2012 IRSTV (FR CNRS 2488)
+ *
+ * GDMS-Topology is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * GDMS-Topology is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * GDMS-Topology. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://wwwc.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.gdmstopology.utils;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A disjoint-set forest on the int values [0, size[ that can be shared by
+ * several threads without locks.
+ * The parents are stored in an atomic int array and a root is always linked
+ * under the smallest root with a compare and set, so the representative of a
+ * set is its smallest value whatever the order of the unions.
+ *
+ * @author Erwan Bocher
+ */
+public class ConcurrentUnionFind {
+
+        private final AtomicIntegerArray parent;
+
+        /**
+         * Create size sets, each one containing one value.
+         * @param size 
+         */
+        public ConcurrentUnionFind(int size) {
+                this.parent = new AtomicIntegerArray(size);
+                for (int i = 0; i < size; i++) {
+                        parent.set(i, i);
+                }
+        }
+
+        /**
+         * 
+         * @param i
+         * @return the representative of the set that contains i, which is its
+         * smallest value once all the unions are done
+         */
+        public int find(int i) {
+                while (true) {
+                        int p = parent.get(i);
+                        if (p == i) {
+                                return i;
+                        }
+                        int gp = parent.get(p);
+                        if (p != gp) {
+                                // path halving, it does not matter if another thread did it first
+                                parent.compareAndSet(i, p, gp);
+                        }
+                        i = gp;
+                }
+        }
+
+        /**
+         * Merge the sets that contain i and j.
+         * @param i
+         * @param j
+         * @return false if i and j were already in the same set
+         */
+        public boolean union(int i, int j) {
+                while (true) {
+                        int rootI = find(i);
+                        int rootJ = find(j);
+                        if (rootI == rootJ) {
+                                return false;
+                        }
+                        if (rootI < rootJ) {
+                                int tmp = rootI;
+                                rootI = rootJ;
+                                rootJ = tmp;
+                        }
+                        // fails if rootI has been linked by another thread meanwhile
+                        if (parent.compareAndSet(rootI, rootI, rootJ)) {
+                                return true;
+                        }
+                }
+        }
+
+        /**
+         * 
+         * @param i
+         * @param j
+         * @return true if i and j are in the same set
+         */
+        public boolean connected(int i, int j) {
+                while (true) {
+                        int rootI = find(i);
+                        int rootJ = find(j);
+                        if (rootI == rootJ) {
+                                return true;
+                        }
+                        // rootI is still a root, so the sets were not merged
+                        if (parent.get(rootI) == rootI) {
+                                return false;
+                        }
+                }
+        }
+
+        /**
+         * 
+         * @return the number of values
+         */
+        public int size() {
+                return parent.length();
+        }
+}
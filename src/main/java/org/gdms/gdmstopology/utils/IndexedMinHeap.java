@@ -0,0 +1,177 @@
+/**
+ * GDMS-Topology  is a library dedicated to graph analysis. It is based on the JGraphT
+ * library available at <http://www.jgrapht.org/>. It enables computing and processing
+ * large graphs using spatial and alphanumeric indexes.
+ *
+ * This version is developed at French IRSTV institut as part of the
+ * EvalPDU project, funded by the French Agence Nationale de la Recherche
+ * (ANR) under contract ANR-08-VILL-0005-01 and GEBD project
+ * funded by the French Ministery of Ecology and Sustainable Development.
+ *
+ * GDMS-Topology  is distributed under GPL 3 license. It is produced by the "Atelier SIG"
+ * team of the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2009-2012 IRSTV (FR CNRS 2488)
+ *
+ * GDMS-Topology is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * GDMS-Topology is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * GDMS-Topology. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://wwwc.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.gdms.gdmstopology.utils;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of the int values [0, capacity[ ordered by a double key.
+ * The position of each value in the heap is kept, so the key of a value can
+ * be decreased in place. Nothing is boxed and nothing is allocated once the
+ * heap is created, so it can be reused by many searches.
+ *
+ * @author Erwan Bocher
+ */
+public class IndexedMinHeap {
+
+        private final int[] heap;
+        private final int[] positions;
+        private final double[] keys;
+        private int size;
+
+        /**
+         * Create an empty heap for the values [0, capacity[.
+         * @param capacity 
+         */
+        public IndexedMinHeap(int capacity) {
+                heap = new int[capacity];
+                positions = new int[capacity];
+                keys = new double[capacity];
+                Arrays.fill(positions, -1);
+        }
+
+        /**
+         * Add a value or decrease its key if it is already in the heap.
+         * Nothing is done if the value has a smaller key.
+         * @param value
+         * @param key 
+         */
+        public void push(int value, double key) {
+                int position = positions[value];
+                if (position == -1) {
+                        position = size++;
+                        heap[position] = value;
+                        positions[value] = position;
+                } else if (key >= keys[value]) {
+                        return;
+                }
+                keys[value] = key;
+                siftUp(position);
+        }
+
+        /**
+         * Remove the value with the smallest key.
+         * @return the value
+         */
+        public int poll() {
+                int value = heap[0];
+                positions[value] = -1;
+                size--;
+                if (size > 0) {
+                        heap[0] = heap[size];
+                        positions[heap[0]] = 0;
+                        siftDown(0);
+                }
+                return value;
+        }
+
+        /**
+         * 
+         * @param value
+         * @return true if the value is in the heap
+         */
+        public boolean contains(int value) {
+                return positions[value] != -1;
+        }
+
+        /**
+         * 
+         * @param value
+         * @return the key of a value in the heap
+         */
+        public double getKey(int value) {
+                return keys[value];
+        }
+
+        /**
+         * 
+         * @return true if the heap is empty
+         */
+        public boolean isEmpty() {
+                return size == 0;
+        }
+
+        /**
+         * 
+         * @return the number of values in the heap
+         */
+        public int size() {
+                return size;
+        }
+
+        /**
+         * Remove all the values.
+         */
+        public void clear() {
+                for (int i = 0; i < size; i++) {
+                        positions[heap[i]] = -1;
+                }
+                size = 0;
+        }
+
+        private void siftUp(int position) {
+                int value = heap[position];
+                double key = keys[value];
+                while (position > 0) {
+                        int parent = (position - 1) >>> 1;
+                        int parentValue = heap[parent];
+                        if (keys[parentValue] <= key) {
+                                break;
+                        }
+                        heap[position] = parentValue;
+                        positions[parentValue] = position;
+                        position = parent;
+                }
+                heap[position] = value;
+                positions[value] = position;
+        }
+
+        private void siftDown(int position) {
+                int value = heap[position];
+                double key = keys[value];
+                int half = size >>> 1;
+                while (position < half) {
+                        int child = 2 * position + 1;
+                        int right = child + 1;
+                        if (right < size && keys[heap[right]] < keys[heap[child]]) {
+                                child = right;
+                        }
+                        if (key <= keys[heap[child]]) {
+                                break;
+                        }
+                        heap[position] = heap[child];
+                        positions[heap[child]] = position;
+                        position = child;
+                }
+                heap[position] = value;
+                positions[value] = position;
+        }
+}
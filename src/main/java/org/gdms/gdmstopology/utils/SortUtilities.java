@@ -0,0 +1,186 @@
+/**
+ * GDMS-Topology  is a library dedicated to graph analysis. It is based on the JGraphT
+ * library available at <http://www.jgrapht.org/>. It enables computing and processing
+ * large graphs using spatial and alphanumeric indexes.
+ *
+ * This version is developed at French IRSTV institut as part of the
+ * EvalPDU project, funded by the French Agence Nationale de la Recherche
+ * (ANR) under contract ANR-08-VILL-0005-01 and GEBD project
+ * funded by the French Ministery of Ecology and Sustainable Development.
+ *
+ * GDMS-Topology  is distributed under GPL 3 license. It is produced by the "Atelier SIG"
+ * team of the IRSTV Institute <http://www.irstv.fr/> CNRS FR 2488.
+ *
+ * Copyright (C) 2009-2012 IRSTV (FR CNRS 2488)
+ *
+ * GDMS-Topology is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * GDMS-Topology is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * GDMS-Topology. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://wwwc.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+package org.gdms.gdmstopology.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Some methods to sort large sets of row indexes on primitive keys without
+ * boxing them.
+ *
+ * @author Erwan Bocher
+ */
+public final class SortUtilities {
+
+        private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+        private SortUtilities() {
+        }
+
+        /**
+         * Build a long key used to order rows by two int values.
+         * The first value is the major key, the second one the minor key.
+         * @param major
+         * @param minor
+         * @return 
+         */
+        public static long pairKey(int major, int minor) {
+                return (((long) major) << 32) | (((long) minor) - Integer.MIN_VALUE);
+        }
+
+        /**
+         * Build a long key whose order is the order of the double value.
+         * NaN values are greater than all the other values.
+         * @param value
+         * @return 
+         */
+        public static long doubleKey(double value) {
+                long bits = Double.doubleToLongBits(value);
+                // the negative values are ordered by decreasing magnitude
+                return bits < 0 ? bits ^ Long.MAX_VALUE : bits;
+        }
+
+        /**
+         * Return the permutation of the indexes [0, keys.length[ that sorts the keys
+         * in ascending order. The sort is stable : rows with the same key keep their
+         * original order.
+         * The keys are not modified.
+         * @param keys
+         * @return 
+         */
+        public static int[] sortedOrder(long[] keys) {
+                int n = keys.length;
+                int[] order = new int[n];
+                for (int i = 0; i < n; i++) {
+                        order[i] = i;
+                }
+                int[] buffer = new int[n];
+                //Bottom-up merge sort, no recursion is used.
+                for (int width = 1; width < n; width *= 2) {
+                        for (int low = 0; low < n - width; low += 2 * width) {
+                                int middle = low + width;
+                                int high = Math.min(low + 2 * width, n);
+                                merge(keys, order, buffer, low, middle, high);
+                        }
+                }
+                return order;
+        }
+
+        /**
+         * Return the permutation of the indexes [0, keys.length[ that sorts the keys
+         * in ascending order, computed with several threads. The order is the
+         * same as the one of {@link #sortedOrder(long[])}.
+         * The ranges of a pass of the merge sort are independent, so they are
+         * merged in parallel when they are large enough.
+         * @param keys
+         * @param threadCount
+         * @return
+         * @throws InterruptedException
+         * @throws ExecutionException 
+         */
+        public static int[] sortedOrder(final long[] keys, int threadCount) throws InterruptedException, ExecutionException {
+                final int n = keys.length;
+                if (threadCount <= 1 || n < PARALLEL_THRESHOLD) {
+                        return sortedOrder(keys);
+                }
+                final int[] order = new int[n];
+                for (int i = 0; i < n; i++) {
+                        order[i] = i;
+                }
+                final int[] buffer = new int[n];
+                ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+                try {
+                        for (int width = 1; width < n; width *= 2) {
+                                final int passWidth = width;
+                                // the merges of a task cover at least PARALLEL_THRESHOLD / 4 values
+                                final int step = 2 * width * Math.max(1, PARALLEL_THRESHOLD / 4 / (2 * width));
+                                List<Future<Object>> futures = new ArrayList<Future<Object>>();
+                                for (int taskLow = 0; taskLow < n - width; taskLow += step) {
+                                        final int start = taskLow;
+                                        final int end = Math.min(taskLow + step, n);
+                                        futures.add(executor.submit(new Callable<Object>() {
+
+                                                @Override
+                                                public Object call() {
+                                                        for (int low = start; low < end - passWidth; low += 2 * passWidth) {
+                                                                int middle = low + passWidth;
+                                                                int high = Math.min(low + 2 * passWidth, n);
+                                                                merge(keys, order, buffer, low, middle, high);
+                                                        }
+                                                        return null;
+                                                }
+                                        }));
+                                }
+                                for (Future<Object> future : futures) {
+                                        future.get();
+                                }
+                        }
+                } finally {
+                        executor.shutdownNow();
+                }
+                return order;
+        }
+
+        /**
+         * Merge the two sorted ranges [low, middle[ and [middle, high[ of the order array.
+         * @param keys
+         * @param order
+         * @param buffer
+         * @param low
+         * @param middle
+         * @param high 
+         */
+        private static void merge(long[] keys, int[] order, int[] buffer, int low, int middle, int high) {
+                if (keys[order[middle - 1]] <= keys[order[middle]]) {
+                        //Already ordered
+                        return;
+                }
+                System.arraycopy(order, low, buffer, low, high - low);
+                int i = low;
+                int j = middle;
+                for (int k = low; k < high; k++) {
+                        if (i >= middle) {
+                                order[k] = buffer[j++];
+                        } else if (j >= high) {
+                                order[k] = buffer[i++];
+                        } else if (keys[buffer[j]] < keys[buffer[i]]) {
+                                order[k] = buffer[j++];
+                        } else {
+                                order[k] = buffer[i++];
+                        }
+                }
+        }
+}
@@ -30,6 +30,14 @@
  */
 package org.gdms.gdmstopology.function;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.gdms.driver.memory.MemoryDataSetDriver;
 import org.gdms.data.types.Type;
 import org.gdms.data.types.TypeFactory;
@@ -37,6 +45,7 @@ import org.gdms.data.values.Value;
 import org.gdms.data.values.ValueFactory;
 import org.gdms.driver.DataSet;
 import org.gdms.gdmstopology.TopologySetUpTest;
+import org.gdms.gdmstopology.utils.ConcurrentUnionFind;
 import org.junit.Test;
 import org.orbisgis.progress.NullProgressMonitor;
 
@@ -85,6 +94,126 @@ public class ConnectivityTest extends TopologySetUpTest {
                         }
                 }
                 assertTrue(maxBlockId == 3);
+                for (int i = 0; i < evaluate.getRowCount(); i++) {
+                        assertTrue(evaluate.getFieldValue(i, 2).getAsInt() == evaluate.getFieldValue(i, 3).getAsInt());
+                }
+
+        }
+
+        @Test
+        public void testST_BlockIdentityLongChain() throws Exception {
+                final MemoryDataSetDriver driver1 = new MemoryDataSetDriver(
+                        new String[]{"the_geom", "id"},
+                        new Type[]{TypeFactory.createType(Type.GEOMETRY),
+                                TypeFactory.createType(Type.INT)
+                        });
+                // a chain of touching squares, followed by an isolated one
+                int chainSize = 5000;
+                for (int i = 0; i < chainSize; i++) {
+                        driver1.addValues(new Value[]{ValueFactory.createValue(wktReader.read("POLYGON (( " + i + " 0, " + i + " 1, "
+                                        + (i + 1) + " 1, " + (i + 1) + " 0, " + i + " 0 ))")),
+                                        ValueFactory.createValue(i)});
+                }
+                driver1.addValues(new Value[]{ValueFactory.createValue(wktReader.read("POLYGON (( 0 10, 0 11, 1 11, 1 10, 0 10 ))")),
+                                ValueFactory.createValue(chainSize)});
 
+                ST_BlockIdentity blockIdentity = new ST_BlockIdentity();
+                DataSet[] tables = new DataSet[]{driver1};
+                DataSet evaluate = blockIdentity.evaluate(dsf, tables, new Value[]{ValueFactory.createValue("the_geom")}, new NullProgressMonitor());
+
+                assertTrue(evaluate.getRowCount() == driver1.getRowCount());
+                for (int i = 0; i < chainSize; i++) {
+                        assertTrue(evaluate.getFieldValue(i, 2).getAsInt() == 1);
+                }
+                assertTrue(evaluate.getFieldValue(chainSize, 2).getAsInt() == 2);
+        }
+
+        /**
+         * The block ids must not depend on the number of threads.
+         * @throws Exception 
+         */
+        @Test
+        public void testST_BlockIdentityThreadCount() throws Exception {
+                final MemoryDataSetDriver driver1 = new MemoryDataSetDriver(
+                        new String[]{"the_geom", "id"},
+                        new Type[]{TypeFactory.createType(Type.GEOMETRY),
+                                TypeFactory.createType(Type.INT)
+                        });
+                // squares at random positions, so the blocks span several ranges of rows
+                Random random = new Random(42);
+                for (int i = 0; i < 3000; i++) {
+                        int x = random.nextInt(200);
+                        int y = random.nextInt(200);
+                        driver1.addValues(new Value[]{ValueFactory.createValue(wktReader.read("POLYGON (( " + x + " " + y + ", " + x + " " + (y + 2) + ", "
+                                        + (x + 2) + " " + (y + 2) + ", " + (x + 2) + " " + y + ", " + x + " " + y + " ))")),
+                                        ValueFactory.createValue(i)});
+                }
+
+                DataSet[] tables = new DataSet[]{driver1};
+                ST_BlockIdentity sequential = new ST_BlockIdentity();
+                sequential.setThreadCount(1);
+                DataSet expected = sequential.evaluate(dsf, tables, new Value[]{ValueFactory.createValue("the_geom")}, new NullProgressMonitor());
+                ST_BlockIdentity parallel = new ST_BlockIdentity();
+                parallel.setThreadCount(4);
+                DataSet evaluate = parallel.evaluate(dsf, tables, new Value[]{ValueFactory.createValue("the_geom")}, new NullProgressMonitor());
+
+                assertTrue(evaluate.getRowCount() == expected.getRowCount());
+                for (int i = 0; i < evaluate.getRowCount(); i++) {
+                        assertTrue(evaluate.getFieldValue(i, 2).getAsInt() == expected.getFieldValue(i, 2).getAsInt());
+                }
+                sequential.workFinished();
+                parallel.workFinished();
+        }
+
+        /**
+         * Concurrent unions must give the same sets as sequential ones, with
+         * the smallest value as representative.
+         * @throws Exception 
+         */
+        @Test
+        public void testConcurrentUnionFind() throws Exception {
+                // blocks of 10 consecutive values, merged in a random order
+                final int size = 10000;
+                final List<int[]> pairs = new ArrayList<int[]>();
+                for (int i = 0; i < size - 1; i++) {
+                        if ((i + 1) % 10 != 0) {
+                                pairs.add(new int[]{i + 1, i});
+                        }
+                }
+                Collections.shuffle(pairs, new Random(42));
+                final ConcurrentUnionFind unionFind = new ConcurrentUnionFind(size);
+                int threadCount = 4;
+                ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+                try {
+                        List<Future<Object>> futures = new ArrayList<Future<Object>>();
+                        for (int t = 0; t < threadCount; t++) {
+                                final int start = t;
+                                final int step = threadCount;
+                                futures.add(executor.submit(new Callable<Object>() {
+
+                                        @Override
+                                        public Object call() {
+                                                for (int i = start; i < pairs.size(); i += step) {
+                                                        int[] pair = pairs.get(i);
+                                                        unionFind.union(pair[0], pair[1]);
+                                                }
+                                                return null;
+                                        }
+                                }));
+                        }
+                        for (Future<Object> future : futures) {
+                                future.get();
+                        }
+                } finally {
+                        executor.shutdownNow();
+                }
+
+                assertTrue(unionFind.size() == size);
+                for (int i = 0; i < size; i++) {
+                        assertTrue(unionFind.find(i) == i - i % 10);
+                }
+                assertTrue(unionFind.connected(11, 19));
+                assertFalse(unionFind.connected(9, 10));
+                assertFalse(unionFind.union(12, 18));
         }
 }
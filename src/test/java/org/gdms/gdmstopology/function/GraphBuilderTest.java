@@ -30,6 +30,12 @@
  */
 package org.gdms.gdmstopology.function;
 
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Polygon;
+import java.util.ArrayList;
+import java.util.List;
 import org.gdms.driver.DriverException;
 import org.gdms.driver.memory.MemoryDataSetDriver;
 import org.gdms.data.DataSource;
@@ -39,6 +45,12 @@ import org.gdms.data.values.Value;
 import org.gdms.data.values.ValueFactory;
 import org.gdms.driver.DataSet;
 import org.gdms.gdmstopology.TopologySetUpTest;
+import org.gdms.gdmstopology.process.LineNoder;
+import org.gdms.gdmstopology.process.NetworkGraphBuilder;
+import org.gdms.gdmstopology.process.ComponentPolygonizer;
+import org.gdms.gdmstopology.process.DiskTiledLineNoder;
+import org.gdms.gdmstopology.process.TiledLineNoder;
+import org.gdms.sql.function.FunctionException;
 import org.junit.Test;
 import org.orbisgis.progress.NullProgressMonitor;
 
@@ -129,6 +141,310 @@ public class GraphBuilderTest extends TopologySetUpTest {
                 dsResult_edges.close();
         }
 
+        /**
+         * A line inside a polygon has the polygon on both sides.
+         *
+         * @throws Exception
+         */
+        @Test
+        public void testST_PlanarGraphDangle() throws Exception {
+                final MemoryDataSetDriver driver_src = new MemoryDataSetDriver(
+                        new String[]{"the_geom", "id"},
+                        new Type[]{TypeFactory.createType(Type.GEOMETRY),
+                                TypeFactory.createType(Type.INT)
+                        });
+
+                driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("POLYGON( ( 69 152, 69 293, 221 293, 221 152, 69 152 ))")),
+                                ValueFactory.createValue(1)});
+                driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING( 100 200, 150 200)")),
+                                ValueFactory.createValue(2)});
+
+                ST_PlanarGraph st_PlanarGraph = new ST_PlanarGraph();
+                DataSet[] tables = new DataSet[]{driver_src};
+                st_PlanarGraph.evaluate(dsf, tables, new Value[]{ValueFactory.createValue("output")}, new NullProgressMonitor());
+
+                DataSource dsResult_polygons = dsf.getDataSource("output.polygons");
+                dsResult_polygons.open();
+                assertTrue(dsResult_polygons.getRowCount() == 1);
+                dsResult_polygons.close();
+
+                DataSource dsResult_edges = dsf.getDataSource("output.edges");
+                dsResult_edges.open();
+                assertTrue(dsResult_edges.getRowCount() == 2);
+                int rightIndex = dsResult_edges.getMetadata().getFieldIndex("right_polygon");
+                int leftIndex = dsResult_edges.getMetadata().getFieldIndex("left_polygon");
+                for (int i = 0; i < dsResult_edges.getRowCount(); i++) {
+                        if (((LineString) dsResult_edges.getGeometry(i)).isClosed()) {
+                                assertTrue(dsResult_edges.getInt(i, rightIndex) == 1);
+                                assertTrue(dsResult_edges.getInt(i, leftIndex) == -1);
+                        } else {
+                                assertTrue(dsResult_edges.getInt(i, rightIndex) == 1);
+                                assertTrue(dsResult_edges.getInt(i, leftIndex) == 1);
+                        }
+                }
+                dsResult_edges.close();
+        }
+
+        /**
+         * A polygon inside another polygon is a separate component of the graph.
+         * It must be a hole of the outer polygon.
+         *
+         * @throws Exception
+         */
+        @Test
+        public void testST_PlanarGraphIsland() throws Exception {
+                final MemoryDataSetDriver driver_src = new MemoryDataSetDriver(
+                        new String[]{"the_geom", "id"},
+                        new Type[]{TypeFactory.createType(Type.GEOMETRY),
+                                TypeFactory.createType(Type.INT)
+                        });
+
+                driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("POLYGON( ( 0 0, 0 100, 100 100, 100 0, 0 0 ))")),
+                                ValueFactory.createValue(1)});
+                driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("POLYGON( ( 40 40, 40 60, 60 60, 60 40, 40 40 ))")),
+                                ValueFactory.createValue(2)});
+
+                ST_PlanarGraph st_PlanarGraph = new ST_PlanarGraph();
+                DataSet[] tables = new DataSet[]{driver_src};
+                st_PlanarGraph.evaluate(dsf, tables, new Value[]{ValueFactory.createValue("output")}, new NullProgressMonitor());
+
+                DataSource dsResult_polygons = dsf.getDataSource("output.polygons");
+                dsResult_polygons.open();
+                assertTrue(dsResult_polygons.getRowCount() == 2);
+                int outerId = -1;
+                int innerId = -1;
+                int idIndex = dsResult_polygons.getMetadata().getFieldIndex("id");
+                for (int i = 0; i < dsResult_polygons.getRowCount(); i++) {
+                        Geometry geom = dsResult_polygons.getGeometry(i);
+                        if (geom.getArea() == 9600) {
+                                outerId = dsResult_polygons.getInt(i, idIndex);
+                        } else {
+                                assertEquals(400, geom.getArea(), 10E-9);
+                                innerId = dsResult_polygons.getInt(i, idIndex);
+                        }
+                }
+                assertTrue(outerId != -1 && innerId != -1);
+                dsResult_polygons.close();
+
+                DataSource dsResult_edges = dsf.getDataSource("output.edges");
+                dsResult_edges.open();
+                assertTrue(dsResult_edges.getRowCount() == 2);
+                int rightIndex = dsResult_edges.getMetadata().getFieldIndex("right_polygon");
+                int leftIndex = dsResult_edges.getMetadata().getFieldIndex("left_polygon");
+                for (int i = 0; i < dsResult_edges.getRowCount(); i++) {
+                        int right = dsResult_edges.getInt(i, rightIndex);
+                        int left = dsResult_edges.getInt(i, leftIndex);
+                        if (dsResult_edges.getGeometry(i).getLength() == 400) {
+                                assertTrue((right == outerId && left == -1) || (left == outerId && right == -1));
+                        } else {
+                                assertTrue((right == outerId && left == innerId) || (left == outerId && right == innerId));
+                        }
+                }
+                dsResult_edges.close();
+        }
+
+        /**
+         * A cut edge links the outer ring of a component to an inner ring, so
+         * the outer face has a hole. An island inside the inner ring must be a
+         * hole of the inner face, and the outer face must keep its hole.
+         *
+         * @throws Exception
+         */
+        @Test
+        public void testComponentPolygonizerFaceWithHole() throws Exception {
+                List<Geometry> edges = new ArrayList<Geometry>();
+                edges.add(wktReader.read("LINESTRING( 0 50, 0 100, 100 100, 100 0, 0 0, 0 50)"));
+                edges.add(wktReader.read("LINESTRING( 5 50, 5 95, 95 95, 95 5, 5 5, 5 50)"));
+                edges.add(wktReader.read("LINESTRING( 0 50, 5 50)"));
+                edges.add(wktReader.read("LINESTRING( 40 40, 40 60, 60 60, 60 40, 40 40)"));
+
+                List<Geometry> faces = new ComponentPolygonizer(edges, new NullProgressMonitor()).getPolygons();
+                assertTrue(faces.size() == 3);
+                boolean[] found = new boolean[3];
+                for (Geometry face : faces) {
+                        Polygon polygon = (Polygon) face;
+                        if (polygon.getArea() == 1900) {
+                                assertTrue(polygon.getNumInteriorRing() == 1);
+                                found[0] = true;
+                        } else if (polygon.getArea() == 7700) {
+                                assertTrue(polygon.getNumInteriorRing() == 1);
+                                found[1] = true;
+                        } else {
+                                assertEquals(400, polygon.getArea(), 10E-9);
+                                assertTrue(polygon.getNumInteriorRing() == 0);
+                                found[2] = true;
+                        }
+                }
+                assertTrue(found[0] && found[1] && found[2]);
+        }
+
+        /**
+         * The out of core build must keep the hole given by a cut edge and put
+         * an island inside the inner ring in the inner face.
+         *
+         * @throws Exception
+         */
+        @Test
+        public void testST_PlanarGraphOutOfCoreFaceWithHole() throws Exception {
+                final MemoryDataSetDriver driver_src = new MemoryDataSetDriver(
+                        new String[]{"the_geom", "id"},
+                        new Type[]{TypeFactory.createType(Type.GEOMETRY),
+                                TypeFactory.createType(Type.INT)
+                        });
+                driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING( 0 50, 0 100, 100 100, 100 0, 0 0, 0 50)")),
+                                ValueFactory.createValue(1)});
+                driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING( 5 50, 5 95, 95 95, 95 5, 5 5, 5 50)")),
+                                ValueFactory.createValue(2)});
+                driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING( 0 50, 5 50)")),
+                                ValueFactory.createValue(3)});
+                driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING( 40 40, 40 60, 60 60, 60 40, 40 40)")),
+                                ValueFactory.createValue(4)});
+
+                ST_PlanarGraph st_PlanarGraph = new ST_PlanarGraph();
+                DataSet[] tables = new DataSet[]{driver_src};
+                st_PlanarGraph.evaluate(dsf, tables, new Value[]{ValueFactory.createValue("output"), ValueFactory.createValue(false),
+                                ValueFactory.createValue(true)}, new NullProgressMonitor());
+
+                DataSource dsResult_polygons = dsf.getDataSource("output.polygons");
+                dsResult_polygons.open();
+                assertTrue(dsResult_polygons.getRowCount() == 3);
+                boolean[] found = new boolean[3];
+                for (int i = 0; i < dsResult_polygons.getRowCount(); i++) {
+                        Polygon polygon = (Polygon) dsResult_polygons.getGeometry(i);
+                        if (polygon.getArea() == 1900) {
+                                assertTrue(polygon.getNumInteriorRing() == 1);
+                                found[0] = true;
+                        } else if (polygon.getArea() == 7700) {
+                                assertTrue(polygon.getNumInteriorRing() == 1);
+                                found[1] = true;
+                        } else {
+                                assertEquals(400, polygon.getArea(), 10E-9);
+                                assertTrue(polygon.getNumInteriorRing() == 0);
+                                found[2] = true;
+                        }
+                }
+                assertTrue(found[0] && found[1] && found[2]);
+                dsResult_polygons.close();
+        }
+
+        /**
+         * The out of core build must find the same faces, islands included.
+         *
+         * @throws Exception
+         */
+        @Test
+        public void testST_PlanarGraphOutOfCore() throws Exception {
+                final MemoryDataSetDriver driver_src = new MemoryDataSetDriver(
+                        new String[]{"the_geom", "id"},
+                        new Type[]{TypeFactory.createType(Type.GEOMETRY),
+                                TypeFactory.createType(Type.INT)
+                        });
+
+                driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("POLYGON( ( 0 0, 0 100, 100 100, 100 0, 0 0 ))")),
+                                ValueFactory.createValue(1)});
+                driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("POLYGON( ( 40 40, 40 60, 60 60, 60 40, 40 40 ))")),
+                                ValueFactory.createValue(2)});
+                driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING( 10 10, 20 10)")),
+                                ValueFactory.createValue(3)});
+
+                ST_PlanarGraph st_PlanarGraph = new ST_PlanarGraph();
+                DataSet[] tables = new DataSet[]{driver_src};
+                st_PlanarGraph.evaluate(dsf, tables, new Value[]{ValueFactory.createValue("output"), ValueFactory.createValue(false),
+                                ValueFactory.createValue(true)}, new NullProgressMonitor());
+
+                DataSource dsResult_polygons = dsf.getDataSource("output.polygons");
+                dsResult_polygons.open();
+                assertTrue(dsResult_polygons.getRowCount() == 2);
+                int outerId = -1;
+                int idIndex = dsResult_polygons.getMetadata().getFieldIndex("id");
+                for (int i = 0; i < dsResult_polygons.getRowCount(); i++) {
+                        Geometry geom = dsResult_polygons.getGeometry(i);
+                        if (geom.getArea() == 9600) {
+                                outerId = dsResult_polygons.getInt(i, idIndex);
+                        }
+                }
+                assertTrue(outerId != -1);
+                dsResult_polygons.close();
+
+                DataSource dsResult_nodes = dsf.getDataSource("output.nodes");
+                dsResult_nodes.open();
+                assertTrue(dsResult_nodes.getRowCount() == 4);
+                dsResult_nodes.close();
+
+                DataSource dsResult_edges = dsf.getDataSource("output.edges");
+                dsResult_edges.open();
+                assertTrue(dsResult_edges.getRowCount() == 3);
+                int rightIndex = dsResult_edges.getMetadata().getFieldIndex("right_polygon");
+                int leftIndex = dsResult_edges.getMetadata().getFieldIndex("left_polygon");
+                for (int i = 0; i < dsResult_edges.getRowCount(); i++) {
+                        int right = dsResult_edges.getInt(i, rightIndex);
+                        int left = dsResult_edges.getInt(i, leftIndex);
+                        double length = dsResult_edges.getGeometry(i).getLength();
+                        if (length == 400) {
+                                assertTrue(right == outerId || left == outerId);
+                                assertTrue(right == -1 || left == -1);
+                        } else if (length == 80) {
+                                assertTrue(right == outerId || left == outerId);
+                                assertTrue(right != -1 && left != -1 && right != left);
+                        } else {
+                                assertTrue(right == outerId && left == outerId);
+                        }
+                }
+                dsResult_edges.close();
+        }
+
+        /**
+         * Test the source rows kept by the planar graph, in memory and out of core.
+         * @throws Exception 
+         */
+        @Test
+        public void testST_PlanarGraphSourceRows() throws Exception {
+                final MemoryDataSetDriver driver_src = new MemoryDataSetDriver(
+                        new String[]{"the_geom", "id"},
+                        new Type[]{TypeFactory.createType(Type.GEOMETRY),
+                                TypeFactory.createType(Type.INT)
+                        });
+
+                driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING( 0 0, 10 0)")),
+                                ValueFactory.createValue(1)});
+                driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING( 5 0, 10 0)")),
+                                ValueFactory.createValue(2)});
+                driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING( 20 20, 30 30)")),
+                                ValueFactory.createValue(3)});
+
+                ST_PlanarGraph st_PlanarGraph = new ST_PlanarGraph();
+                DataSet[] tables = new DataSet[]{driver_src};
+                String[] outputs = new String[]{"output", "output_ooc"};
+                for (int k = 0; k < outputs.length; k++) {
+                        st_PlanarGraph.evaluate(dsf, tables, new Value[]{ValueFactory.createValue(outputs[k]), ValueFactory.createValue(false),
+                                        ValueFactory.createValue(k == 1), ValueFactory.createValue(true)}, new NullProgressMonitor());
+
+                        DataSource dsResult_edges = dsf.getDataSource(outputs[k] + ".edges");
+                        dsResult_edges.open();
+                        assertTrue(dsResult_edges.getRowCount() == 2);
+                        int idIndex = dsResult_edges.getMetadata().getFieldIndex("id");
+                        int lineId = -1;
+                        for (int i = 0; i < dsResult_edges.getRowCount(); i++) {
+                                if (dsResult_edges.getGeometry(i).getLength() == 10) {
+                                        lineId = dsResult_edges.getInt(i, idIndex);
+                                }
+                        }
+                        assertTrue(lineId != -1);
+                        dsResult_edges.close();
+
+                        DataSource dsResult_sources = dsf.getDataSource(outputs[k] + ".sources");
+                        dsResult_sources.open();
+                        assertTrue(dsResult_sources.getRowCount() == 3);
+                        int edgeIndex = dsResult_sources.getMetadata().getFieldIndex("edge_id");
+                        int rowIndex = dsResult_sources.getMetadata().getFieldIndex("row_id");
+                        for (int i = 0; i < dsResult_sources.getRowCount(); i++) {
+                                int row = dsResult_sources.getInt(i, rowIndex);
+                                assertTrue((dsResult_sources.getInt(i, edgeIndex) == lineId) == (row != 2));
+                        }
+                        dsResult_sources.close();
+                }
+        }
+
         /**
          * A test to validate the network graph method
          * @throws Exception
@@ -171,6 +487,303 @@ public class GraphBuilderTest extends TopologySetUpTest {
 
         }
 
+        /**
+         * An unknown option of ST_Graph must be refused.
+         * @throws Exception
+         */
+        @Test
+        public void testST_GraphUnknownOption() throws Exception {
+                DataSource srcDS = dsf.getDataSource(GRAPH2D);
+                srcDS.open();
+                ST_Graph st_Graph = new ST_Graph();
+                DataSource[] tables = new DataSource[]{srcDS};
+                try {
+                        st_Graph.evaluate(dsf, tables, new Value[]{ValueFactory.createValue(0), ValueFactory.createValue(false),
+                                        ValueFactory.createValue("output"), ValueFactory.createValue("sort,unknown")},
+                                new NullProgressMonitor());
+                        fail();
+                } catch (FunctionException e) {
+                }
+                srcDS.close();
+        }
+
+        /**
+         * A test to validate the network graph method when the edges are sorted.
+         * @throws Exception
+         */
+        @Test
+        public void testST_GraphSortedEdges() throws Exception {
+                DataSource srcDS = dsf.getDataSource(GRAPH2D);
+                srcDS.open();
+
+                ST_Graph st_Graph = new ST_Graph();
+                DataSource[] tables = new DataSource[]{srcDS};
+                st_Graph.evaluate(dsf, tables, new Value[]{ValueFactory.createValue(0), ValueFactory.createValue(false),
+                                ValueFactory.createValue("output"), ValueFactory.createValue("sort")}, new NullProgressMonitor());
+
+                assertTrue(dsf.getIndexManager().isIndexed("output.edges", "start_node"));
+                assertTrue(dsf.getIndexManager().isIndexed("output.edges", "end_node"));
+
+                DataSource dsResult_edges = dsf.getDataSource("output.edges");
+                dsResult_edges.open();
+                assertTrue(dsResult_edges.getRowCount() == 6);
+                int startIndex = dsResult_edges.getMetadata().getFieldIndex("start_node");
+                int endIndex = dsResult_edges.getMetadata().getFieldIndex("end_node");
+                for (int i = 1; i < dsResult_edges.getRowCount(); i++) {
+                        int previousStart = dsResult_edges.getInt(i - 1, startIndex);
+                        int start = dsResult_edges.getInt(i, startIndex);
+                        assertTrue(previousStart <= start);
+                        if (previousStart == start) {
+                                assertTrue(dsResult_edges.getInt(i - 1, endIndex) <= dsResult_edges.getInt(i, endIndex));
+                        }
+                }
+                dsResult_edges.close();
+                srcDS.close();
+        }
+
+        /**
+         * A test to validate the network graph method when the nodes are renumbered
+         * following a Hilbert curve.
+         * @throws Exception
+         */
+        @Test
+        public void testST_GraphHilbertOrder() throws Exception {
+                DataSource srcDS = dsf.getDataSource(GRAPH2D);
+                srcDS.open();
+
+                ST_Graph st_Graph = new ST_Graph();
+                DataSource[] tables = new DataSource[]{srcDS};
+                st_Graph.evaluate(dsf, tables, new Value[]{ValueFactory.createValue(0), ValueFactory.createValue(false),
+                                ValueFactory.createValue("output"), ValueFactory.createValue("hilbert")},
+                        new NullProgressMonitor());
+
+                DataSource dsResult_nodes = dsf.getDataSource("output.nodes");
+                dsResult_nodes.open();
+                assertTrue(dsResult_nodes.getRowCount() == 6);
+                for (int i = 0; i < dsResult_nodes.getRowCount(); i++) {
+                        assertTrue(dsResult_nodes.getInt(i, 1) == i + 1);
+                }
+
+                DataSource dsResult_edges = dsf.getDataSource("output.edges");
+                dsResult_edges.open();
+                assertTrue(dsResult_edges.getRowCount() == 6);
+                int startIndex = dsResult_edges.getMetadata().getFieldIndex("start_node");
+                int endIndex = dsResult_edges.getMetadata().getFieldIndex("end_node");
+                for (int i = 0; i < dsResult_edges.getRowCount(); i++) {
+                        Geometry geom = dsResult_edges.getGeometry(i);
+                        Coordinate[] cc = geom.getCoordinates();
+                        int start = dsResult_edges.getInt(i, startIndex);
+                        int end = dsResult_edges.getInt(i, endIndex);
+                        assertTrue(dsResult_nodes.getGeometry(start - 1).getCoordinate().equals2D(cc[0]));
+                        assertTrue(dsResult_nodes.getGeometry(end - 1).getCoordinate().equals2D(cc[cc.length - 1]));
+                }
+                dsResult_edges.close();
+                dsResult_nodes.close();
+                srcDS.close();
+        }
+
+        /**
+         * A test to validate the network graph method when the input fields are not kept.
+         * @throws Exception
+         */
+        @Test
+        public void testST_GraphWithoutAttributes() throws Exception {
+                DataSource srcDS = dsf.getDataSource(GRAPH2D);
+                srcDS.open();
+
+                ST_Graph st_Graph = new ST_Graph();
+                DataSource[] tables = new DataSource[]{srcDS};
+                st_Graph.evaluate(dsf, tables, new Value[]{ValueFactory.createValue(0), ValueFactory.createValue(false),
+                                ValueFactory.createValue("output"), ValueFactory.createValue("noattributes")}, new NullProgressMonitor());
+
+                DataSource dsResult_edges = dsf.getDataSource("output.edges");
+                dsResult_edges.open();
+                assertTrue(dsResult_edges.getMetadata().getFieldCount() == 4);
+                assertTrue(dsResult_edges.getRowCount() == 6);
+                int idIndex = dsResult_edges.getMetadata().getFieldIndex("id");
+                for (int i = 0; i < dsResult_edges.getRowCount(); i++) {
+                        int id = dsResult_edges.getInt(i, idIndex);
+                        assertTrue(dsResult_edges.getGeometry(i).equals(srcDS.getGeometry(id - 1)));
+                }
+                dsResult_edges.close();
+                srcDS.close();
+        }
+
+        @Test
+        public void testST_GraphCleanEdges() throws Exception {
+                final MemoryDataSetDriver driver_src = new MemoryDataSetDriver(
+                        new String[]{"the_geom", "gid"},
+                        new Type[]{TypeFactory.createType(Type.GEOMETRY),
+                                TypeFactory.createType(Type.INT)
+                        });
+                driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING( 0 0, 10 0)")),
+                                ValueFactory.createValue(1)});
+                driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING( 0 0, 10 0)")),
+                                ValueFactory.createValue(2)});
+                driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING( 10 0, 10 10, 0 0)")),
+                                ValueFactory.createValue(3)});
+                driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING( 10 0, 15 5, 10 0)")),
+                                ValueFactory.createValue(4)});
+                driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING( 20 20, 20 20)")),
+                                ValueFactory.createValue(5)});
+
+                ST_Graph st_Graph = new ST_Graph();
+                DataSet[] tables = new DataSet[]{driver_src};
+                st_Graph.evaluate(dsf, tables, new Value[]{ValueFactory.createValue(0), ValueFactory.createValue(false),
+                                ValueFactory.createValue("output"), ValueFactory.createValue("sort, clean")},
+                        new NullProgressMonitor());
+
+                DataSource dsResult_edges = dsf.getDataSource("output.edges");
+                dsResult_edges.open();
+                assertTrue(dsResult_edges.getRowCount() == 2);
+                int gidField = dsResult_edges.getMetadata().getFieldIndex("gid");
+                assertTrue(dsResult_edges.getInt(0, gidField) == 1);
+                assertTrue(dsResult_edges.getInt(1, gidField) == 3);
+                dsResult_edges.close();
+
+                DataSource dsResult_nodes = dsf.getDataSource("output.nodes");
+                dsResult_nodes.open();
+                assertTrue(dsResult_nodes.getRowCount() == 2);
+                dsResult_nodes.close();
+
+                DataSource dsResult_removed = dsf.getDataSource("output.removed");
+                dsResult_removed.open();
+                assertTrue(dsResult_removed.getRowCount() == 3);
+                int idField = dsResult_removed.getMetadata().getFieldIndex("id");
+                int typeField = dsResult_removed.getMetadata().getFieldIndex("type");
+                for (int i = 0; i < dsResult_removed.getRowCount(); i++) {
+                        int id = dsResult_removed.getInt(i, idField);
+                        String type = dsResult_removed.getString(i, typeField);
+                        if (id == 2) {
+                                assertTrue(type.equals(NetworkGraphBuilder.DUPLICATE));
+                        } else if (id == 4) {
+                                assertTrue(type.equals(NetworkGraphBuilder.SELF_LOOP));
+                        } else {
+                                assertTrue(id == 5);
+                                assertTrue(type.equals(NetworkGraphBuilder.ZERO_LENGTH));
+                        }
+                }
+                dsResult_removed.close();
+        }
+
+        /**
+         * In 3D a vertical edge has a length and must not be removed.
+         * @throws Exception 
+         */
+        @Test
+        public void testST_GraphCleanEdges3D() throws Exception {
+                final MemoryDataSetDriver driver_src = new MemoryDataSetDriver(
+                        new String[]{"the_geom", "gid"},
+                        new Type[]{TypeFactory.createType(Type.GEOMETRY),
+                                TypeFactory.createType(Type.INT)
+                        });
+                driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING( 0 0 0, 10 0 0)")),
+                                ValueFactory.createValue(1)});
+                driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING( 10 0 0, 10 0 10)")),
+                                ValueFactory.createValue(2)});
+                driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING( 20 20 5, 20 20 5)")),
+                                ValueFactory.createValue(3)});
+
+                ST_Graph st_Graph = new ST_Graph();
+                DataSet[] tables = new DataSet[]{driver_src};
+                st_Graph.evaluate(dsf, tables, new Value[]{ValueFactory.createValue(0), ValueFactory.createValue(false),
+                                ValueFactory.createValue("output"), ValueFactory.createValue("3d,clean")},
+                        new NullProgressMonitor());
+
+                DataSource dsResult_edges = dsf.getDataSource("output.edges");
+                dsResult_edges.open();
+                assertTrue(dsResult_edges.getRowCount() == 2);
+                dsResult_edges.close();
+
+                DataSource dsResult_removed = dsf.getDataSource("output.removed");
+                dsResult_removed.open();
+                assertTrue(dsResult_removed.getRowCount() == 1);
+                int idField = dsResult_removed.getMetadata().getFieldIndex("id");
+                assertTrue(dsResult_removed.getInt(0, idField) == 3);
+                dsResult_removed.close();
+        }
+
+        /**
+         * The tiled noder must return the same lines as the union.
+         * @throws Exception 
+         */
+        @Test
+        public void testST_ToLineNoderTiled() throws Exception {
+                final MemoryDataSetDriver driver_src = new MemoryDataSetDriver(
+                        new String[]{"the_geom", "gid"},
+                        new Type[]{TypeFactory.createType(Type.GEOMETRY),
+                                TypeFactory.createType(Type.INT)
+                        });
+                //A grid of 3 x 3 lines and a duplicate line
+                for (int i = 0; i < 3; i++) {
+                        driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING( 0 " + (10 * i + 5) + ", 30 " + (10 * i + 5) + ")")),
+                                        ValueFactory.createValue(2 * i)});
+                        driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING( " + (10 * i + 5) + " 0, " + (10 * i + 5) + " 30)")),
+                                        ValueFactory.createValue(2 * i + 1)});
+                }
+                driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING( 30 5, 0 5)")),
+                                ValueFactory.createValue(6)});
+
+                ST_ToLineNoder st_ToLineNoder = new ST_ToLineNoder();
+                DataSet[] tables = new DataSet[]{driver_src};
+                DataSet union = st_ToLineNoder.evaluate(dsf, tables, new Value[]{}, new NullProgressMonitor());
+                DataSet tiled = st_ToLineNoder.evaluate(dsf, tables, new Value[]{ValueFactory.createValue(0)}, new NullProgressMonitor());
+                assertTrue(union.getRowCount() == 24);
+                assertTrue(tiled.getRowCount() == 24);
+                for (int i = 0; i < union.getRowCount(); i++) {
+                        Geometry geom = union.getGeometry(i, 1);
+                        boolean found = false;
+                        for (int j = 0; j < tiled.getRowCount(); j++) {
+                                if (tiled.getGeometry(j, 1).equals(geom)) {
+                                        found = true;
+                                        break;
+                                }
+                        }
+                        assertTrue(found);
+                }
+
+                //One line by tile
+                LineNoder lineNoder = new LineNoder(driver_src);
+                List<LineString> lines = new ArrayList<LineString>(lineNoder.getLines());
+                TiledLineNoder tiledLineNoder = new TiledLineNoder(lines, new NullProgressMonitor());
+                tiledLineNoder.setLinesPerTile(1);
+                tiledLineNoder.setThreadCount(3);
+                List<Geometry> nodedLines = tiledLineNoder.getNodedLines();
+                assertTrue(nodedLines.size() == 24);
+                double length = 0;
+                for (Geometry geom : nodedLines) {
+                        length += geom.getLength();
+                }
+                assertEquals(180, length, 10E-9);
+
+                //One line by tile, read back from the disk
+                DiskTiledLineNoder diskTiledLineNoder = new DiskTiledLineNoder(dsf, new NullProgressMonitor());
+                for (int i = 0; i < lines.size(); i++) {
+                        diskTiledLineNoder.add(lines.get(i), i);
+                }
+                diskTiledLineNoder.setLinesPerTile(1);
+                diskTiledLineNoder.setThreadCount(3);
+                final List<Geometry> diskNodedLines = new ArrayList<Geometry>();
+                diskTiledLineNoder.node(new TiledLineNoder.LineSink() {
+
+                        @Override
+                        public void add(Geometry line) {
+                                diskNodedLines.add(line);
+                        }
+                });
+                assertTrue(diskNodedLines.size() == 24);
+                for (Geometry geom : nodedLines) {
+                        boolean found = false;
+                        for (Geometry diskGeom : diskNodedLines) {
+                                if (diskGeom.equalsExact(geom)) {
+                                        found = true;
+                                        break;
+                                }
+                        }
+                        assertTrue(found);
+                }
+        }
+
         @Test
         public void testZGraph() throws Exception {
 
@@ -273,7 +886,30 @@ public class GraphBuilderTest extends TopologySetUpTest {
                 driver_src.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING( 600 300 0, 400 300 0)")),
                                 ValueFactory.createValue(2)});
 
+                ST_Graph st_Graph = new ST_Graph();
+                DataSet[] tables = new DataSet[]{driver_src};
+                st_Graph.evaluate(dsf, tables, new Value[]{ValueFactory.createValue(0), ValueFactory.createValue(false),
+                                ValueFactory.createValue("output"), ValueFactory.createValue("3d")}, new NullProgressMonitor());
 
+                //The nodes (600 300 10) and (600 300 0) are not merged
+                DataSource dsResult_nodes = dsf.getDataSource("output.nodes");
+                dsResult_nodes.open();
+                assertTrue(dsResult_nodes.getRowCount() == 5);
+                dsResult_nodes.close();
+
+                DataSource dsResult_edges = dsf.getDataSource("output.edges");
+                dsResult_edges.open();
+                int startIndex = dsResult_edges.getMetadata().getFieldIndex("start_node");
+                int endIndex = dsResult_edges.getMetadata().getFieldIndex("end_node");
+                int slopeIndex = dsResult_edges.getMetadata().getFieldIndex("slope");
+                int length3DIndex = dsResult_edges.getMetadata().getFieldIndex("length_3d");
+                assertTrue(dsResult_edges.getInt(1, endIndex) == dsResult_edges.getInt(3, endIndex));
+                assertTrue(dsResult_edges.getInt(1, startIndex) == dsResult_edges.getInt(2, startIndex));
+                assertTrue(dsResult_edges.getInt(1, startIndex) != dsResult_edges.getInt(3, startIndex));
+                assertEquals(0, dsResult_edges.getDouble(0, slopeIndex), 1e-12);
+                assertEquals(0.05, dsResult_edges.getDouble(1, slopeIndex), 1e-12);
+                assertEquals(Math.sqrt(200 * 200 + 10 * 10), dsResult_edges.getDouble(1, length3DIndex), 1e-9);
+                dsResult_edges.close();
         }
 
         /**
@@ -30,6 +30,7 @@
  */
 package org.gdms.gdmstopology.function;
 
+import java.io.File;
 import org.gdms.data.DataSource;
 import com.vividsolutions.jts.geom.Geometry;
 import org.gdms.data.types.Type;
@@ -37,8 +38,12 @@ import org.gdms.data.types.TypeFactory;
 import org.gdms.data.values.Value;
 import org.gdms.data.values.ValueFactory;
 import org.gdms.driver.DataSet;
+import org.gdms.driver.DriverException;
 import org.gdms.driver.memory.MemoryDataSetDriver;
 import org.gdms.gdmstopology.TopologySetUpTest;
+import org.gdms.gdmstopology.model.ArrayGraph;
+import org.gdms.gdmstopology.process.AllPairsDistances;
+import org.gdms.sql.function.FunctionException;
 import org.orbisgis.progress.NullProgressMonitor;
 import org.junit.Test;
 
@@ -180,6 +185,437 @@ public class GraphUtilitiesTest extends TopologySetUpTest {
         }
         
         
+        @Test
+        public void testST_SubGraphStatisticsComponents() throws Exception {
+                MemoryDataSetDriver mdsd = new MemoryDataSetDriver(new String[]{"geom", "start_node", "end_node", "weigth"},
+                        new Type[]{
+                                TypeFactory.createType(Type.GEOMETRY),
+                                TypeFactory.createType(Type.INT), TypeFactory.createType(Type.INT), TypeFactory.createType(Type.DOUBLE)});
+
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(0 0, 5 0)")),
+                                ValueFactory.createValue(1), ValueFactory.createValue(2), ValueFactory.createValue(1)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(20 0, 30 0)")),
+                                ValueFactory.createValue(5), ValueFactory.createValue(6), ValueFactory.createValue(4)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(7 0, 5 0)")),
+                                ValueFactory.createValue(3), ValueFactory.createValue(2), ValueFactory.createValue(2)});
+
+                DataSet[] tables = new DataSet[]{mdsd};
+                ST_SubGraphStatistics sT_SubGraphStatistics = new ST_SubGraphStatistics();
+                DataSet result = sT_SubGraphStatistics.evaluate(dsf, tables, new Value[]{
+                                ValueFactory.createValue("weigth")}, new NullProgressMonitor());
+                assertTrue(result.getRowCount() == 2);
+                assertTrue(result.getFieldValue(0, 0).getAsInt() == 1);
+                assertTrue(result.getFieldValue(0, 1).getAsInt() == 2);
+                assertTrue(result.getFieldValue(0, 2).getAsDouble() == 3);
+                assertTrue(result.getFieldValue(1, 0).getAsInt() == 2);
+                assertTrue(result.getFieldValue(1, 1).getAsInt() == 1);
+                assertTrue(result.getFieldValue(1, 2).getAsDouble() == 4);
+        }
+
+        @Test
+        public void testST_StronglyConnectedComponents() throws Exception {
+                MemoryDataSetDriver mdsd = new MemoryDataSetDriver(new String[]{"geom", "start_node", "end_node", "weigth"},
+                        new Type[]{
+                                TypeFactory.createType(Type.GEOMETRY),
+                                TypeFactory.createType(Type.INT), TypeFactory.createType(Type.INT), TypeFactory.createType(Type.DOUBLE)});
+
+                // a cycle 1 -> 2 -> 3 -> 1 and a one-way edge 3 -> 4
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(0 0, 5 0)")),
+                                ValueFactory.createValue(1), ValueFactory.createValue(2), ValueFactory.createValue(1)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(5 0, 5 5)")),
+                                ValueFactory.createValue(2), ValueFactory.createValue(3), ValueFactory.createValue(1)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(5 5, 0 0)")),
+                                ValueFactory.createValue(3), ValueFactory.createValue(1), ValueFactory.createValue(1)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(5 5, 10 10)")),
+                                ValueFactory.createValue(3), ValueFactory.createValue(4), ValueFactory.createValue(1)});
+
+                DataSet[] tables = new DataSet[]{mdsd};
+                ST_StronglyConnectedComponents st_StronglyConnectedComponents = new ST_StronglyConnectedComponents();
+                DataSet result = st_StronglyConnectedComponents.evaluate(dsf, tables, new Value[]{}, new NullProgressMonitor());
+                assertTrue(result.getRowCount() == 4);
+                for (int i = 0; i < 3; i++) {
+                        assertTrue(result.getFieldValue(i, 0).getAsInt() == i + 1);
+                        assertTrue(result.getFieldValue(i, 1).getAsInt() == result.getFieldValue(0, 1).getAsInt());
+                        assertTrue(result.getFieldValue(i, 2).getAsInt() == 3);
+                        assertTrue(result.getFieldValue(i, 3).getAsInt() == 3);
+                }
+                assertTrue(result.getFieldValue(3, 1).getAsInt() != result.getFieldValue(0, 1).getAsInt());
+                assertTrue(result.getFieldValue(3, 2).getAsInt() == 1);
+
+                result = st_StronglyConnectedComponents.evaluate(dsf, tables, new Value[]{ValueFactory.createValue(3)}, new NullProgressMonitor());
+                for (int i = 0; i < 4; i++) {
+                        assertTrue(result.getFieldValue(i, 2).getAsInt() == 4);
+                }
+        }
+
+        @Test
+        public void testST_StronglyConnectedComponentsLongChain() throws Exception {
+                MemoryDataSetDriver mdsd = new MemoryDataSetDriver(new String[]{"geom", "start_node", "end_node"},
+                        new Type[]{
+                                TypeFactory.createType(Type.GEOMETRY),
+                                TypeFactory.createType(Type.INT), TypeFactory.createType(Type.INT)});
+                // a one-way ring of 100000 nodes, far deeper than a recursive search could go
+                int nodeCount = 100000;
+                for (int i = 0; i < nodeCount; i++) {
+                        mdsd.addValues(new Value[]{ValueFactory.createNullValue(),
+                                        ValueFactory.createValue(i), ValueFactory.createValue((i + 1) % nodeCount)});
+                }
+
+                DataSet[] tables = new DataSet[]{mdsd};
+                ST_StronglyConnectedComponents st_StronglyConnectedComponents = new ST_StronglyConnectedComponents();
+                DataSet result = st_StronglyConnectedComponents.evaluate(dsf, tables, new Value[]{}, new NullProgressMonitor());
+                assertTrue(result.getRowCount() == nodeCount);
+                assertTrue(result.getFieldValue(0, 2).getAsInt() == nodeCount);
+        }
+
+        @Test
+        public void testST_ConnectedComponents() throws Exception {
+                MemoryDataSetDriver mdsd = new MemoryDataSetDriver(new String[]{"geom", "id", "start_node", "end_node", "weigth"},
+                        new Type[]{
+                                TypeFactory.createType(Type.GEOMETRY), TypeFactory.createType(Type.INT),
+                                TypeFactory.createType(Type.INT), TypeFactory.createType(Type.INT), TypeFactory.createType(Type.DOUBLE)});
+
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(0 0, 5 0)")), ValueFactory.createValue(1),
+                                ValueFactory.createValue(1), ValueFactory.createValue(2), ValueFactory.createValue(1)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(20 0, 30 0)")), ValueFactory.createValue(2),
+                                ValueFactory.createValue(5), ValueFactory.createValue(6), ValueFactory.createValue(4)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(7 0, 5 0)")), ValueFactory.createValue(3),
+                                ValueFactory.createValue(3), ValueFactory.createValue(2), ValueFactory.createValue(2)});
+
+                DataSet[] tables = new DataSet[]{mdsd};
+                ST_ConnectedComponents st_ConnectedComponents = new ST_ConnectedComponents();
+                DataSet result = st_ConnectedComponents.evaluate(dsf, tables, new Value[]{}, new NullProgressMonitor());
+                assertTrue(result.getRowCount() == 3);
+                int[] components = new int[]{1, 2, 1};
+                int[] sizes = new int[]{2, 1, 2};
+                for (int i = 0; i < 3; i++) {
+                        assertTrue(result.getFieldValue(i, 0).getAsInt() == i + 1);
+                        assertTrue(result.getFieldValue(i, 1).getAsInt() == components[i]);
+                        assertTrue(result.getFieldValue(i, 2).getAsInt() == sizes[i]);
+                }
+        }
+
+        @Test
+        public void testST_BridgesAndArticulationPoints() throws Exception {
+                MemoryDataSetDriver mdsd = new MemoryDataSetDriver(new String[]{"geom", "start_node", "end_node", "weigth"},
+                        new Type[]{
+                                TypeFactory.createType(Type.GEOMETRY),
+                                TypeFactory.createType(Type.INT), TypeFactory.createType(Type.INT), TypeFactory.createType(Type.DOUBLE)});
+
+                // a triangle 1 - 2 - 3, a chain 3 - 4 - 5 and two parallel edges between 5 and 6
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(0 0, 5 0)")),
+                                ValueFactory.createValue(1), ValueFactory.createValue(2), ValueFactory.createValue(1)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(5 0, 5 5)")),
+                                ValueFactory.createValue(2), ValueFactory.createValue(3), ValueFactory.createValue(1)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(5 5, 0 0)")),
+                                ValueFactory.createValue(3), ValueFactory.createValue(1), ValueFactory.createValue(1)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(5 5, 10 5)")),
+                                ValueFactory.createValue(3), ValueFactory.createValue(4), ValueFactory.createValue(1)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(10 5, 15 5)")),
+                                ValueFactory.createValue(4), ValueFactory.createValue(5), ValueFactory.createValue(1)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(15 5, 20 5)")),
+                                ValueFactory.createValue(5), ValueFactory.createValue(6), ValueFactory.createValue(1)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(20 5, 15 5)")),
+                                ValueFactory.createValue(6), ValueFactory.createValue(5), ValueFactory.createValue(1)});
+
+                DataSet[] tables = new DataSet[]{mdsd};
+                ST_Bridges st_Bridges = new ST_Bridges();
+                DataSet result = st_Bridges.evaluate(dsf, tables, new Value[]{}, new NullProgressMonitor());
+                assertTrue(result.getRowCount() == 2);
+                assertTrue(result.getFieldValue(0, 1).getAsInt() == 3);
+                assertTrue(result.getFieldValue(1, 1).getAsInt() == 4);
+
+                ST_ArticulationPoints st_ArticulationPoints = new ST_ArticulationPoints();
+                result = st_ArticulationPoints.evaluate(dsf, tables, new Value[]{}, new NullProgressMonitor());
+                assertTrue(result.getRowCount() == 3);
+                for (int i = 0; i < 3; i++) {
+                        assertTrue(result.getFieldValue(i, 0).getAsInt() == i + 3);
+                }
+        }
+
+        @Test
+        public void testST_GraphStatistics() throws Exception {
+                MemoryDataSetDriver mdsd = new MemoryDataSetDriver(new String[]{"geom", "start_node", "end_node", "weigth"},
+                        new Type[]{
+                                TypeFactory.createType(Type.GEOMETRY),
+                                TypeFactory.createType(Type.INT), TypeFactory.createType(Type.INT), TypeFactory.createType(Type.DOUBLE)});
+
+                // a triangle 1 - 2 - 3 with an edge 3 - 4, and a chain 5 - 6 - 7
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(0 0, 5 0)")),
+                                ValueFactory.createValue(1), ValueFactory.createValue(2), ValueFactory.createValue(1)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(5 0, 5 5)")),
+                                ValueFactory.createValue(2), ValueFactory.createValue(3), ValueFactory.createValue(1)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(5 5, 0 0)")),
+                                ValueFactory.createValue(3), ValueFactory.createValue(1), ValueFactory.createValue(1)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(5 5, 10 5)")),
+                                ValueFactory.createValue(3), ValueFactory.createValue(4), ValueFactory.createValue(1)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(20 0, 25 0)")),
+                                ValueFactory.createValue(5), ValueFactory.createValue(6), ValueFactory.createValue(1)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(25 0, 30 0)")),
+                                ValueFactory.createValue(6), ValueFactory.createValue(7), ValueFactory.createValue(1)});
+
+                DataSet[] tables = new DataSet[]{mdsd};
+                ST_GraphStatistics st_GraphStatistics = new ST_GraphStatistics();
+                st_GraphStatistics.evaluate(dsf, tables, new Value[]{ValueFactory.createValue("statistics")}, new NullProgressMonitor());
+
+                DataSource components = dsf.getDataSource("statistics.components");
+                components.open();
+                assertTrue(components.getRowCount() == 2);
+                assertTrue(components.getInt(0, 1) == 4);
+                assertTrue(components.getInt(0, 2) == 4);
+                assertEquals(4d / 6, components.getDouble(0, 3), 1e-9);
+                assertTrue(components.getInt(0, 4) == 2);
+                assertTrue(components.getInt(0, 5) == 2);
+                assertEquals("1:1;2:2;3:1", components.getString(0, 6));
+                assertTrue(components.getInt(1, 1) == 3);
+                assertTrue(components.getInt(1, 2) == 2);
+                assertEquals(2d / 3, components.getDouble(1, 3), 1e-9);
+                assertTrue(components.getInt(1, 4) == 2);
+                assertTrue(components.getInt(1, 5) == 1);
+                assertEquals("1:2;2:1", components.getString(1, 6));
+                components.close();
+
+                DataSource nodes = dsf.getDataSource("statistics.nodes");
+                nodes.open();
+                assertTrue(nodes.getRowCount() == 7);
+                int[] degrees = new int[]{2, 2, 3, 1, 1, 2, 1};
+                int[] cores = new int[]{2, 2, 2, 1, 1, 1, 1};
+                for (int i = 0; i < 7; i++) {
+                        assertTrue(nodes.getInt(i, 0) == i + 1);
+                        assertTrue(nodes.getInt(i, 1) == (i < 4 ? 1 : 2));
+                        assertTrue(nodes.getInt(i, 2) == degrees[i]);
+                        assertTrue(nodes.getInt(i, 3) == cores[i]);
+                }
+                nodes.close();
+        }
+
+        @Test
+        public void testST_MaxFlow() throws Exception {
+                MemoryDataSetDriver mdsd = new MemoryDataSetDriver(new String[]{"geom", "start_node", "end_node", "capacity"},
+                        new Type[]{
+                                TypeFactory.createType(Type.GEOMETRY),
+                                TypeFactory.createType(Type.INT), TypeFactory.createType(Type.INT), TypeFactory.createType(Type.DOUBLE)});
+
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(0 0, 5 5)")),
+                                ValueFactory.createValue(1), ValueFactory.createValue(2), ValueFactory.createValue(3)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(0 0, 5 -5)")),
+                                ValueFactory.createValue(1), ValueFactory.createValue(3), ValueFactory.createValue(2)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(5 5, 5 -5)")),
+                                ValueFactory.createValue(2), ValueFactory.createValue(3), ValueFactory.createValue(5)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(5 5, 10 0)")),
+                                ValueFactory.createValue(2), ValueFactory.createValue(4), ValueFactory.createValue(2)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(5 -5, 10 0)")),
+                                ValueFactory.createValue(3), ValueFactory.createValue(4), ValueFactory.createValue(3)});
+
+                DataSet[] tables = new DataSet[]{mdsd};
+                ST_MaxFlow st_MaxFlow = new ST_MaxFlow();
+                DataSet result = st_MaxFlow.evaluate(dsf, tables, new Value[]{ValueFactory.createValue("capacity"),
+                                ValueFactory.createValue(1), ValueFactory.createValue(4)}, new NullProgressMonitor());
+                assertTrue(result.getRowCount() == 5);
+                // the flow leaving the source and entering the sink is 5
+                assertEquals(5, result.getFieldValue(0, 3).getAsDouble() + result.getFieldValue(1, 3).getAsDouble(), 1e-9);
+                assertEquals(5, result.getFieldValue(3, 3).getAsDouble() + result.getFieldValue(4, 3).getAsDouble(), 1e-9);
+                // the edges leaving the source are saturated and form the minimum cut
+                boolean[] cut = new boolean[]{true, true, false, false, false};
+                for (int i = 0; i < 5; i++) {
+                        assertTrue(result.getFieldValue(i, 3).getAsDouble() <= result.getFieldValue(i, 2).getAsDouble());
+                        assertTrue(result.getFieldValue(i, 4).getAsBoolean() == cut[i]);
+                }
+
+                // an undirected graph gives the same flow
+                result = st_MaxFlow.evaluate(dsf, tables, new Value[]{ValueFactory.createValue("capacity"),
+                                ValueFactory.createValue(4), ValueFactory.createValue(1), ValueFactory.createValue(3)}, new NullProgressMonitor());
+                assertEquals(-5, result.getFieldValue(0, 3).getAsDouble() + result.getFieldValue(1, 3).getAsDouble(), 1e-9);
+        }
+
+        @Test
+        public void testST_Betweenness() throws Exception {
+                MemoryDataSetDriver mdsd = new MemoryDataSetDriver(new String[]{"geom", "id", "start_node", "end_node", "weigth"},
+                        new Type[]{
+                                TypeFactory.createType(Type.GEOMETRY), TypeFactory.createType(Type.INT),
+                                TypeFactory.createType(Type.INT), TypeFactory.createType(Type.INT), TypeFactory.createType(Type.DOUBLE)});
+
+                // a chain 1 - 2 - 3 - 4
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(0 0, 5 0)")), ValueFactory.createValue(10),
+                                ValueFactory.createValue(1), ValueFactory.createValue(2), ValueFactory.createValue(1)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(5 0, 10 0)")), ValueFactory.createValue(20),
+                                ValueFactory.createValue(2), ValueFactory.createValue(3), ValueFactory.createValue(1)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(10 0, 15 0)")), ValueFactory.createValue(30),
+                                ValueFactory.createValue(3), ValueFactory.createValue(4), ValueFactory.createValue(1)});
+
+                DataSet[] tables = new DataSet[]{mdsd};
+                ST_Betweenness st_Betweenness = new ST_Betweenness();
+                st_Betweenness.evaluate(dsf, tables, new Value[]{ValueFactory.createValue("weigth"), ValueFactory.createValue(3),
+                                ValueFactory.createValue(-1), ValueFactory.createValue("betweenness")}, new NullProgressMonitor());
+
+                DataSource nodes = dsf.getDataSource("betweenness.nodes");
+                nodes.open();
+                assertTrue(nodes.getRowCount() == 4);
+                double[] expectedNodes = new double[]{0, 2, 2, 0};
+                for (int i = 0; i < 4; i++) {
+                        assertTrue(nodes.getInt(i, 0) == i + 1);
+                        assertEquals(expectedNodes[i], nodes.getDouble(i, 1), 1e-9);
+                }
+                nodes.close();
+
+                DataSource edges = dsf.getDataSource("betweenness.edges");
+                edges.open();
+                assertTrue(edges.getRowCount() == 3);
+                double[] expectedEdges = new double[]{3, 4, 3};
+                for (int i = 0; i < 3; i++) {
+                        assertTrue(edges.getInt(i, 0) == (i + 1) * 10);
+                        assertEquals(expectedEdges[i], edges.getDouble(i, 1), 1e-9);
+                }
+                edges.close();
+
+                // directed : only the paths from 1 to 3 and 4 and from 2 to 4 go through a node
+                st_Betweenness.evaluate(dsf, tables, new Value[]{ValueFactory.createValue("weigth"), ValueFactory.createValue(1),
+                                ValueFactory.createValue(-1), ValueFactory.createValue("betweenness_directed")}, new NullProgressMonitor());
+                nodes = dsf.getDataSource("betweenness_directed.nodes");
+                nodes.open();
+                for (int i = 0; i < 4; i++) {
+                        assertEquals(expectedNodes[i], nodes.getDouble(i, 1), 1e-9);
+                }
+                nodes.close();
+        }
+
+        @Test
+        public void testST_Closeness() throws Exception {
+                MemoryDataSetDriver mdsd = new MemoryDataSetDriver(new String[]{"geom", "start_node", "end_node", "weigth"},
+                        new Type[]{
+                                TypeFactory.createType(Type.GEOMETRY),
+                                TypeFactory.createType(Type.INT), TypeFactory.createType(Type.INT), TypeFactory.createType(Type.DOUBLE)});
+
+                // a chain 1 - 2 - 3 - 4
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(0 0, 5 0)")),
+                                ValueFactory.createValue(1), ValueFactory.createValue(2), ValueFactory.createValue(1)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(5 0, 10 0)")),
+                                ValueFactory.createValue(2), ValueFactory.createValue(3), ValueFactory.createValue(1)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(10 0, 15 0)")),
+                                ValueFactory.createValue(3), ValueFactory.createValue(4), ValueFactory.createValue(1)});
+
+                DataSet[] tables = new DataSet[]{mdsd};
+                ST_Closeness st_Closeness = new ST_Closeness();
+                DataSet result = st_Closeness.evaluate(dsf, tables, new Value[]{ValueFactory.createValue("weigth"),
+                                ValueFactory.createValue(2), ValueFactory.createValue(3)}, new NullProgressMonitor());
+                assertTrue(result.getRowCount() == 4);
+                // node 1 reaches 2 and 3 within the radius
+                assertTrue(result.getFieldValue(0, 1).getAsInt() == 2);
+                assertEquals(2d / 3, result.getFieldValue(0, 2).getAsDouble(), 1e-9);
+                assertEquals(1.5, result.getFieldValue(0, 3).getAsDouble(), 1e-9);
+                // node 2 reaches 1, 3 and 4
+                assertTrue(result.getFieldValue(1, 1).getAsInt() == 3);
+                assertEquals(0.75, result.getFieldValue(1, 2).getAsDouble(), 1e-9);
+                assertEquals(2.5, result.getFieldValue(1, 3).getAsDouble(), 1e-9);
+        }
+
+        @Test
+        public void testST_AllPairsDistances() throws Exception {
+                MemoryDataSetDriver mdsd = new MemoryDataSetDriver(new String[]{"geom", "start_node", "end_node", "weigth"},
+                        new Type[]{
+                                TypeFactory.createType(Type.GEOMETRY),
+                                TypeFactory.createType(Type.INT), TypeFactory.createType(Type.INT), TypeFactory.createType(Type.DOUBLE)});
+
+                // a chain 1 - 2 - 3 - 4
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(0 0, 5 0)")),
+                                ValueFactory.createValue(1), ValueFactory.createValue(2), ValueFactory.createValue(1)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(5 0, 10 0)")),
+                                ValueFactory.createValue(2), ValueFactory.createValue(3), ValueFactory.createValue(2)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(10 0, 15 0)")),
+                                ValueFactory.createValue(3), ValueFactory.createValue(4), ValueFactory.createValue(4)});
+
+                File directory = new File(backupDir, "distances");
+                DataSet[] tables = new DataSet[]{mdsd};
+                ST_AllPairsDistances st_AllPairsDistances = new ST_AllPairsDistances();
+                st_AllPairsDistances.evaluate(dsf, tables, new Value[]{ValueFactory.createValue("weigth"),
+                                ValueFactory.createValue(directory.getAbsolutePath()), ValueFactory.createValue(3),
+                                ValueFactory.createValue(2)}, new NullProgressMonitor());
+
+                ArrayGraph graph = new ArrayGraph(mdsd, "weigth", new NullProgressMonitor());
+                graph.buildAdjacency(3);
+                AllPairsDistances allPairsDistances = new AllPairsDistances(graph, new NullProgressMonitor());
+                allPairsDistances.setTileSize(2);
+                assertTrue(allPairsDistances.getTileCount() == 2);
+                // the tiles are complete, nothing is computed again
+                assertTrue(allPairsDistances.compute(directory) == 0);
+
+                dsf.getSourceManager().register("distances_tile0", allPairsDistances.getTileFile(directory, 0));
+                DataSource tile = dsf.getDataSource("distances_tile0");
+                tile.open();
+                assertTrue(tile.getRowCount() == 6);
+                for (int i = 0; i < tile.getRowCount(); i++) {
+                        if (tile.getInt(i, 0) == 1 && tile.getInt(i, 1) == 4) {
+                                assertEquals(7, tile.getDouble(i, 2), 1e-9);
+                        }
+                }
+                tile.close();
+
+                // a missing tile is computed when the job is resumed
+                assertTrue(allPairsDistances.getTileFile(directory, 1).delete());
+                assertTrue(allPairsDistances.compute(directory) == 1);
+                assertTrue(allPairsDistances.getTileFile(directory, 1).exists());
+
+                // the tiles of another type of graph are not mixed with these ones
+                ArrayGraph directGraph = new ArrayGraph(mdsd, "weigth", new NullProgressMonitor());
+                directGraph.buildAdjacency(1);
+                AllPairsDistances directDistances = new AllPairsDistances(directGraph, new NullProgressMonitor());
+                directDistances.setTileSize(2);
+                try {
+                        directDistances.compute(directory);
+                        fail();
+                } catch (DriverException e) {
+                }
+
+                // an empty tile is refused
+                try {
+                        allPairsDistances.setTileSize(0);
+                        fail();
+                } catch (IllegalArgumentException e) {
+                }
+                try {
+                        st_AllPairsDistances.evaluate(dsf, tables, new Value[]{ValueFactory.createValue("weigth"),
+                                        ValueFactory.createValue(directory.getAbsolutePath()), ValueFactory.createValue(3),
+                                        ValueFactory.createValue(0)}, new NullProgressMonitor());
+                        fail();
+                } catch (FunctionException e) {
+                }
+        }
+
+        @Test
+        public void testST_MinimumSpanningTree() throws Exception {
+                MemoryDataSetDriver mdsd = new MemoryDataSetDriver(new String[]{"geom", "start_node", "end_node", "weigth"},
+                        new Type[]{
+                                TypeFactory.createType(Type.GEOMETRY),
+                                TypeFactory.createType(Type.INT), TypeFactory.createType(Type.INT), TypeFactory.createType(Type.DOUBLE)});
+
+                // a square 1 - 2 - 3 - 4 with a diagonal, and a separate edge 5 - 6
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(0 0, 10 0)")),
+                                ValueFactory.createValue(1), ValueFactory.createValue(2), ValueFactory.createValue(1)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(10 0, 10 10)")),
+                                ValueFactory.createValue(2), ValueFactory.createValue(3), ValueFactory.createValue(5)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(10 10, 0 10)")),
+                                ValueFactory.createValue(3), ValueFactory.createValue(4), ValueFactory.createValue(1)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(0 10, 0 0)")),
+                                ValueFactory.createValue(4), ValueFactory.createValue(1), ValueFactory.createValue(4)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(0 0, 10 10)")),
+                                ValueFactory.createValue(1), ValueFactory.createValue(3), ValueFactory.createValue(2)});
+                mdsd.addValues(new Value[]{ValueFactory.createValue(wktReader.read("LINESTRING(20 0, 30 0)")),
+                                ValueFactory.createValue(5), ValueFactory.createValue(6), ValueFactory.createValue(3)});
+
+                DataSet[] tables = new DataSet[]{mdsd};
+                ST_MinimumSpanningTree st_MinimumSpanningTree = new ST_MinimumSpanningTree();
+                DataSet result = st_MinimumSpanningTree.evaluate(dsf, tables, new Value[]{ValueFactory.createValue("weigth")}, new NullProgressMonitor());
+                assertTrue(result.getRowCount() == 4);
+                int[] expectedRows = new int[]{0, 2, 4, 5};
+                double sum = 0;
+                for (int i = 0; i < 4; i++) {
+                        assertTrue(result.getFieldValue(i, 1).getAsInt() == expectedRows[i]);
+                        assertTrue(result.getGeometry(i, 0).equalsExact(mdsd.getGeometry(expectedRows[i], 0)));
+                        sum += result.getFieldValue(i, 2).getAsDouble();
+                }
+                assertEquals(7, sum, 1e-9);
+        }
+
         @Test
         public void testMySubGraph(){
                 